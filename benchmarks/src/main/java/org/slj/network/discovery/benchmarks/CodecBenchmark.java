@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.slj.network.discovery.codec.BinaryMessageCodec;
+import org.slj.network.discovery.codec.MessageCodec;
+import org.slj.network.discovery.codec.SerializationMessageCodec;
+import org.slj.network.discovery.model.BroadcastMessage;
+import org.slj.network.discovery.model.NetworkDiscoveryOptions;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of broadcast messages at several peer list sizes, for each of the codecs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    @Param({"0", "8", "64", "256"})
+    int peers;
+
+    @Param({"binary", "serialization"})
+    String codecName;
+
+    private MessageCodec codec;
+    private BroadcastMessage message;
+    private ByteBuffer encodeBuffer;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        codec = "binary".equals(codecName) ? new BinaryMessageCodec() : new SerializationMessageCodec();
+        message = Fixtures.message(peers);
+        //-- sized as the agent sizes its write buffer, starting from the default and doubled until the message fits,
+        //-- so the serialization codec is not handed a far larger buffer than it would be in use
+        encodeBuffer = ByteBuffer.allocate(NetworkDiscoveryOptions.DEFAULT_WRITE_BUFFER_SIZE);
+        while(true){
+            try {
+                codec.encode(message, encodeBuffer);
+                break;
+            } catch(BufferOverflowException e){
+                encodeBuffer = ByteBuffer.allocate(encodeBuffer.capacity() * 2);
+            }
+        }
+        encodeBuffer.flip();
+        encoded = encodeBuffer.duplicate();
+        encodeBuffer.clear();
+    }
+
+    @Benchmark
+    public ByteBuffer encode() throws Exception {
+        encodeBuffer.clear();
+        codec.encode(message, encodeBuffer);
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public BroadcastMessage decode() throws Exception {
+        return codec.decode(encoded.duplicate());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.slj.network.discovery.EncryptionMode;
+import org.slj.network.discovery.NetworkDiscoveryAgentUtils;
+import org.slj.network.discovery.PayloadCipher;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The legacy array based AES helpers against the buffer based payload cipher used by the agent.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CryptoBenchmark {
+
+    @Param({"128", "1024", "8192"})
+    int size;
+
+    private byte[] plain;
+    private byte[] encrypted;
+
+    private PayloadCipher ecb;
+    private PayloadCipher gcm;
+    private ByteBuffer input;
+    private ByteBuffer output;
+    private ByteBuffer ecbEncrypted;
+    private ByteBuffer gcmEncrypted;
+    private ByteBuffer scratch;
+
+    @Setup
+    public void setup() throws Exception {
+        plain = new byte[size];
+        ThreadLocalRandom.current().nextBytes(plain);
+        encrypted = NetworkDiscoveryAgentUtils.AES_encrypt(Fixtures.SECRET, plain);
+
+        ecb = new PayloadCipher(EncryptionMode.AES_ECB, Fixtures.SECRET);
+        gcm = new PayloadCipher(EncryptionMode.AES_GCM, Fixtures.SECRET);
+        int capacity = size + Math.max(ecb.getMaxOverhead(), gcm.getMaxOverhead());
+        input = ByteBuffer.allocateDirect(size);
+        input.put(plain).flip();
+        output = ByteBuffer.allocateDirect(capacity);
+        scratch = ByteBuffer.allocateDirect(capacity);
+        ecbEncrypted = encrypt(ecb);
+        gcmEncrypted = encrypt(gcm);
+    }
+
+    private ByteBuffer encrypt(PayloadCipher cipher) throws Exception {
+        ByteBuffer out = ByteBuffer.allocateDirect(output.capacity());
+        cipher.encrypt(input.duplicate(), out);
+        out.flip();
+        return out;
+    }
+
+    @Benchmark
+    public byte[] legacyEncrypt() throws Exception {
+        return NetworkDiscoveryAgentUtils.AES_encrypt(Fixtures.SECRET, plain);
+    }
+
+    @Benchmark
+    public byte[] legacyDecrypt() throws Exception {
+        return NetworkDiscoveryAgentUtils.AES_decrypt(Fixtures.SECRET, encrypted);
+    }
+
+    @Benchmark
+    public ByteBuffer ecbEncrypt() throws Exception {
+        output.clear();
+        ecb.encrypt(input.duplicate(), output);
+        return output;
+    }
+
+    @Benchmark
+    public ByteBuffer ecbDecrypt() throws Exception {
+        return decrypt(ecb, ecbEncrypted);
+    }
+
+    @Benchmark
+    public ByteBuffer gcmEncrypt() throws Exception {
+        output.clear();
+        gcm.encrypt(input.duplicate(), output);
+        return output;
+    }
+
+    @Benchmark
+    public ByteBuffer gcmDecrypt() throws Exception {
+        return decrypt(gcm, gcmEncrypted);
+    }
+
+    private ByteBuffer decrypt(PayloadCipher cipher, ByteBuffer encrypted) throws Exception {
+        //-- decryption is in place, so work on a copy of the ciphertext
+        scratch.clear();
+        scratch.put(encrypted.duplicate()).flip();
+        cipher.decrypt(scratch);
+        return scratch;
+    }
+}
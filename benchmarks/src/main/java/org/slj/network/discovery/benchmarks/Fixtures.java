@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.benchmarks;
+
+import org.slj.network.discovery.model.BroadcastMessage;
+import org.slj.network.discovery.model.NetworkNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the messages shared by the benchmark suites.
+ */
+final class Fixtures {
+
+    static final String TRAFFIC_GROUP = "benchmarkTrafficGroup";
+    static final String SECRET = "benchmarkSecret";
+
+    private Fixtures(){
+    }
+
+    static NetworkNode node(int index, String group, int status){
+        NetworkNode node = new NetworkNode();
+        node.setName("node-" + index);
+        node.setGroup(group);
+        node.setStatus(status);
+        node.setAddress("10.0." + ((index >> 8) & 0xFF) + "." + (index & 0xFF));
+        node.setPort(5000 + (index % 1000));
+        node.setEventTime(System.currentTimeMillis());
+        return node;
+    }
+
+    static BroadcastMessage message(int peers){
+        BroadcastMessage message = new BroadcastMessage(node(0, "group-0", NetworkNode.HEALTHY));
+        message.setStatus(BroadcastMessage.PING);
+        List<NetworkNode> list = new ArrayList<>(peers);
+        for (int i = 1; i <= peers; i++){
+            list.add(node(i, "group-" + (i % 4), NetworkNode.HEALTHY));
+        }
+        message.setPeers(list);
+        return message;
+    }
+}
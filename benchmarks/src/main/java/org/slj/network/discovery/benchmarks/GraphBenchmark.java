@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slj.network.discovery.model.BroadcastMessage;
+import org.slj.network.discovery.model.NetworkGraph;
+import org.slj.network.discovery.model.NetworkNode;
+import org.slj.network.discovery.model.NodeSelector;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Graph updates from a single writer, as the receive path applies them, against concurrent readers querying the
+ * graph. Vary the number of readers with -tg 1,N.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class GraphBenchmark {
+
+    @Param({"16", "256", "4096"})
+    int nodes;
+
+    @Param({"false", "true"})
+    boolean compact;
+
+    private NetworkGraph graph;
+    private NodeSelector selector;
+
+    @Setup
+    public void setup(){
+        graph = new NetworkGraph("node-0", compact);
+        for (int i = 0; i < nodes; i++){
+            graph.receiveMessage(message(i, System.currentTimeMillis()), false);
+        }
+        selector = graph.newRoundRobinSelector("group-0", false);
+    }
+
+    private static BroadcastMessage message(int index, long eventTime){
+        NetworkNode node = Fixtures.node(index, "group-" + (index % 4), NetworkNode.HEALTHY);
+        node.setEventTime(eventTime);
+        BroadcastMessage message = new BroadcastMessage(node);
+        message.setStatus(BroadcastMessage.PING);
+        return message;
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+
+        private BroadcastMessage[] messages;
+        private long eventTime;
+        private int next;
+
+        @Setup
+        public void setup(GraphBenchmark benchmark){
+            messages = new BroadcastMessage[benchmark.nodes];
+            eventTime = System.currentTimeMillis();
+            for (int i = 0; i < messages.length; i++){
+                messages[i] = message(i, eventTime);
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public boolean update(Writer writer){
+        BroadcastMessage message = writer.messages[writer.next];
+        if(++writer.next == writer.messages.length){
+            writer.next = 0;
+        }
+        message.getNode().setEventTime(++writer.eventTime);
+        return graph.receiveMessage(message, false);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public void query(Blackhole blackhole){
+        List<NetworkNode> healthy = graph.getAllHealthyNodes("group-1", false);
+        blackhole.consume(healthy.size());
+        blackhole.consume(graph.getNode("node-1"));
+        blackhole.consume(selector.select());
+    }
+}
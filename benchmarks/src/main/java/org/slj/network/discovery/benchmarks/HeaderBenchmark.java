@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.slj.network.discovery.transport.TrafficGroupHeader;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recognising and stripping the traffic group header, the first thing done to every datagram received.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeaderBenchmark {
+
+    @Param({"true", "false"})
+    boolean direct;
+
+    private TrafficGroupHeader header;
+    private ByteBuffer matching;
+    private ByteBuffer foreign;
+
+    @Setup
+    public void setup(){
+        header = new TrafficGroupHeader(Fixtures.TRAFFIC_GROUP);
+        matching = datagram(header);
+        foreign = datagram(new TrafficGroupHeader(Fixtures.TRAFFIC_GROUP.toUpperCase()));
+    }
+
+    private ByteBuffer datagram(TrafficGroupHeader header){
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(512) : ByteBuffer.allocate(512);
+        header.write(buffer);
+        while(buffer.hasRemaining()) buffer.put((byte) buffer.position());
+        buffer.flip();
+        return buffer;
+    }
+
+    @Benchmark
+    public int validAndRemove(){
+        matching.rewind();
+        if(header.matches(matching)){
+            header.skip(matching);
+        }
+        return matching.position();
+    }
+
+    @Benchmark
+    public boolean rejectForeign(){
+        return header.matches(foreign);
+    }
+}
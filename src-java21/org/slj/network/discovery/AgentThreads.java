@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads of an agent. This is the java 21 version, packaged under META-INF/versions/21 of the
+ * multi-release jar, which creates virtual threads when they are requested.
+ */
+final class AgentThreads {
+
+    private AgentThreads(){
+    }
+
+    static boolean isVirtualThreadSupported(){
+        return true;
+    }
+
+    /**
+     * @return - a new, unstarted thread, which is virtual when requested and otherwise a daemon platform thread
+     */
+    static Thread newThread(String name, boolean virtual, Runnable runnable){
+        if(virtual){
+            return Thread.ofVirtual().name(name).unstarted(runnable);
+        }
+        return Thread.ofPlatform().name(name).daemon(true).unstarted(runnable);
+    }
+
+    static ThreadFactory newThreadFactory(String name, boolean virtual){
+        return runnable -> newThread(name, virtual, runnable);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how long the broadcast agent waits between rounds. Each delay is the interval with a random jitter
+ * applied, so agents started together drift out of phase rather than hitting every receiver in the same instant.
+ *
+ * When a packets per second budget is set, the interval is stretched as the cluster grows so the traffic of the
+ * whole cluster stays within the budget; a cluster of N agents each sending P datagrams per round sends
+ * N * P / interval datagrams per second. Every agent derives the interval from its own view of the cluster, so
+ * agents converge on the same interval as their graphs converge.
+ *
+ * State changes are not subject to the schedule, the broadcast agent is woken to send them immediately.
+ */
+public class BroadcastScheduler {
+
+    private final long baseIntervalMillis;
+    private final int jitterPercent;
+    private final int packetsPerSecondBudget;
+    private final int packetsPerRound;
+    private final Random random;
+    private volatile long intervalMillis;
+
+    /**
+     * @param baseIntervalMillis - the interval used when the cluster is within budget
+     * @param jitterPercent - the amount by which each delay may vary either side of the interval
+     * @param packetsPerSecondBudget - the datagrams per second the whole cluster may send, or 0 for no budget
+     * @param packetsPerRound - the datagrams each agent sends per round
+     */
+    public BroadcastScheduler(long baseIntervalMillis, int jitterPercent, int packetsPerSecondBudget, int packetsPerRound){
+        this(baseIntervalMillis, jitterPercent, packetsPerSecondBudget, packetsPerRound, null);
+    }
+
+    /**
+     * @param random - the source of the jitter, or <null> for {@link ThreadLocalRandom}
+     */
+    public BroadcastScheduler(long baseIntervalMillis, int jitterPercent, int packetsPerSecondBudget, int packetsPerRound,
+                              Random random){
+        if(jitterPercent < 0 || jitterPercent >= 100){
+            throw new IllegalArgumentException("jitter must be at least 0 and less than 100 percent");
+        }
+        this.baseIntervalMillis = baseIntervalMillis;
+        this.jitterPercent = jitterPercent;
+        this.packetsPerSecondBudget = packetsPerSecondBudget;
+        this.packetsPerRound = Math.max(1, packetsPerRound);
+        this.intervalMillis = baseIntervalMillis;
+        this.random = random;
+    }
+
+    /**
+     * Recalculate the interval for the supplied cluster size.
+     * @return - the interval
+     */
+    public long update(int clusterSize){
+        long interval = baseIntervalMillis;
+        if(packetsPerSecondBudget > 0){
+            long packetsPerSecond = (long) Math.max(1, clusterSize) * packetsPerRound * 1000;
+            interval = Math.max(interval, (packetsPerSecond + packetsPerSecondBudget - 1) / packetsPerSecondBudget);
+        }
+        intervalMillis = interval;
+        return interval;
+    }
+
+    /**
+     * @return - the interval between rounds, before jitter
+     */
+    public long getIntervalMillis(){
+        return intervalMillis;
+    }
+
+    /**
+     * @return - the longest delay the schedule may produce at the current interval
+     */
+    public long getMaxIntervalMillis(){
+        long interval = intervalMillis;
+        return interval + interval * jitterPercent / 100;
+    }
+
+    /**
+     * @return - the delay before the next round, chosen uniformly within the jitter either side of the interval
+     */
+    public long nextDelayMillis(){
+        long interval = intervalMillis;
+        long jitter = interval * jitterPercent / 100;
+        if(jitter == 0) return interval;
+        long bound = 2 * jitter + 1;
+        if(random == null) return interval - jitter + ThreadLocalRandom.current().nextLong(bound);
+        //-- Random has no bounded nextLong on java 8, the jitter of any sensible interval fits an int
+        return interval - jitter + random.nextInt((int) Math.min(bound, Integer.MAX_VALUE));
+    }
+}
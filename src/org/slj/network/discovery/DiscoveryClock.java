@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The source of time of an agent. Agents read the system clock unless started with a {@link DiscoveryScheduler},
+ * whose clock may be virtual.
+ */
+public interface DiscoveryClock {
+
+    /**
+     * Event times are read from the system clock and periods are measured with {@link System#nanoTime()}, so a
+     * step of the system clock neither evicts nor stops suspecting the nodes of the graph
+     */
+    DiscoveryClock SYSTEM = new DiscoveryClock() {
+
+        private final long origin = System.nanoTime();
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long monotonicTimeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin);
+        }
+    };
+
+    /**
+     * @return - the current time in milliseconds since the epoch, as seen by the agent
+     */
+    long currentTimeMillis();
+
+    /**
+     * @return - a time in milliseconds from an arbitrary origin which never goes backwards, against which
+     * periods such as failure detection deadlines are measured. By default the current time, which suits a
+     * virtual clock.
+     */
+    default long monotonicTimeMillis() {
+        return currentTimeMillis();
+    }
+}
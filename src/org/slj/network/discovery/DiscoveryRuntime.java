@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery;
+
+import org.slj.network.discovery.model.NetworkDiscoveryOptions;
+import org.slj.network.discovery.transport.BufferPool;
+import org.slj.network.discovery.transport.DatagramHandler;
+import org.slj.network.discovery.transport.DatagramReceiver;
+import org.slj.network.discovery.transport.TrafficGroupHeader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shares sockets between the agents of a process. Agents started with the same runtime (see
+ * {@link NetworkDiscoveryOptions#withDiscoveryRuntime(DiscoveryRuntime)}) share one receive socket, one listener
+ * thread and one send socket per port, rather than each binding its own. Each datagram received is routed to the
+ * agents of its traffic group by its header, which is parsed once per datagram regardless of how many traffic
+ * groups are registered.
+ *
+ * The first agent to use a port decides the transport and receive settings (buffer sizes, selector, thread mode)
+ * of that port; later agents must use the same transport mode and multicast group. The sockets of a port are
+ * closed when the last agent using it is stopped.
+ */
+public class DiscoveryRuntime implements Closeable {
+
+    private final Logger logger = Logger.getLogger(DiscoveryRuntime.class.getName());
+    private final Map<Integer, Endpoint> endpoints = new HashMap<>();
+    private boolean closed = false;
+
+    /**
+     * @return - the number of ports the runtime currently has open
+     */
+    public int getEndpointCount(){
+        synchronized (endpoints){
+            return endpoints.size();
+        }
+    }
+
+    /**
+     * @return - the number of datagrams received across all ports which matched no registered traffic group
+     */
+    public long getUnroutedCount(){
+        long count = 0;
+        synchronized (endpoints){
+            for (Endpoint endpoint : endpoints.values()){
+                count += endpoint.unrouted.sum();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Close every port of the runtime. Agents still using the runtime stop receiving.
+     */
+    @Override
+    public void close() {
+        synchronized (endpoints){
+            closed = true;
+            for (Endpoint endpoint : endpoints.values()){
+                endpoint.close();
+            }
+            endpoints.clear();
+        }
+    }
+
+    /**
+     * Open (or share) the endpoint for the port of the agent. The channels of a new endpoint are opened by the agent
+     * so they are configured exactly as an agent without a runtime would configure its own.
+     */
+    Endpoint open(NetworkDiscoveryAgent agent, NetworkDiscoveryOptions options) throws IOException, NetworkDiscoveryException {
+        synchronized (endpoints){
+            if(closed){
+                throw new NetworkDiscoveryException("discovery runtime is closed");
+            }
+            int port = options.getBroadcastPort();
+            Endpoint endpoint = endpoints.get(port);
+            if(endpoint == null){
+                DatagramChannel receiveChannel = agent.openReceiveChannel();
+                DatagramChannel sendChannel = null;
+                try {
+                    sendChannel = agent.openSendChannel();
+                    endpoint = new Endpoint(port, options, receiveChannel, sendChannel);
+                    endpoint.start();
+                } catch(IOException | NetworkDiscoveryException | RuntimeException e){
+                    close(receiveChannel);
+                    close(sendChannel);
+                    throw e;
+                }
+                endpoints.put(port, endpoint);
+            } else if(endpoint.transportMode != options.getTransportMode() ||
+                    (endpoint.transportMode == TransportMode.MULTICAST &&
+                            !endpoint.multicastGroup.equals(options.getMulticastGroup()))){
+                throw new NetworkDiscoveryException(String.format("port [%s] is in use by the runtime with transport [%s]",
+                        port, endpoint.transportMode));
+            }
+            endpoint.references++;
+            return endpoint;
+        }
+    }
+
+    /**
+     * Release an endpoint opened by {@link #open}, closing it when no agent is using it.
+     */
+    void release(Endpoint endpoint){
+        synchronized (endpoints){
+            if(--endpoint.references == 0){
+                endpoints.remove(endpoint.port, endpoint);
+                endpoint.close();
+            }
+        }
+    }
+
+    private void close(DatagramChannel channel){
+        if(channel != null){
+            try {
+                channel.close();
+            } catch(IOException e){
+                logger.log(Level.WARNING, "error closing channel;", e);
+            }
+        }
+    }
+
+    /**
+     * The sockets of one port, and the traffic groups routed from it.
+     */
+    final class Endpoint implements DatagramHandler {
+
+        private final int port;
+        private final TransportMode transportMode;
+        private final String multicastGroup;
+        private final DatagramChannel receiveChannel;
+        private final DatagramChannel sendChannel;
+        private final DatagramReceiver receiver;
+        private final BufferPool pool;
+        private final Thread thread;
+        private final Map<String, Route> routesByGroup = new HashMap<>();
+        private final LongAdder unrouted = new LongAdder();
+        //-- an open addressed table of the routes, replaced whenever a route changes so lookups take no lock
+        private volatile Route[] routes = new Route[0];
+        private int references = 0;
+
+        private Endpoint(int port, NetworkDiscoveryOptions options, DatagramChannel receiveChannel,
+                         DatagramChannel sendChannel) throws IOException {
+            this.port = port;
+            this.transportMode = options.getTransportMode();
+            this.multicastGroup = options.getMulticastGroup();
+            this.receiveChannel = receiveChannel;
+            this.sendChannel = sendChannel;
+            //-- sized for the pipeline of the first agent, those of further agents overflow to heap buffers
+            this.pool = new BufferPool(NetworkDiscoveryAgent.getReceiveBufferPoolSize(options),
+                    options.getReadBufferSize());
+            this.receiver = new DatagramReceiver(pool, options.isReceiveSelectorEnabled());
+            this.receiver.register(receiveChannel, this);
+            this.thread = AgentThreads.newThread("network-discovery-runtime-" + port,
+                    options.isVirtualThreadsEnabled(), receiver);
+        }
+
+        private void start(){
+            thread.start();
+        }
+
+        /**
+         * @return - the port the receive socket is bound to
+         */
+        int getLocalPort() throws IOException {
+            return ((InetSocketAddress) receiveChannel.getLocalAddress()).getPort();
+        }
+
+        DatagramChannel getSendChannel(){
+            return sendChannel;
+        }
+
+        /**
+         * The pool of the receive buffers, into which handlers retaining a buffer must release it.
+         */
+        BufferPool getBufferPool(){
+            return pool;
+        }
+
+        /**
+         * Route datagrams of the traffic group to the handler, which receives each with its position past the header,
+         * the header itself immediately preceding the position.
+         */
+        void addRoute(TrafficGroupHeader header, DatagramHandler handler){
+            synchronized (routesByGroup){
+                Route route = routesByGroup.get(header.getTrafficGroup());
+                DatagramHandler[] handlers;
+                if(route == null){
+                    handlers = new DatagramHandler[]{handler};
+                } else {
+                    handlers = Arrays.copyOf(route.handlers, route.handlers.length + 1);
+                    handlers[handlers.length - 1] = handler;
+                }
+                routesByGroup.put(header.getTrafficGroup(), new Route(header, handlers));
+                routes = build(routesByGroup.values());
+            }
+        }
+
+        void removeRoute(TrafficGroupHeader header, DatagramHandler handler){
+            synchronized (routesByGroup){
+                Route route = routesByGroup.get(header.getTrafficGroup());
+                if(route == null) return;
+                List<DatagramHandler> handlers = new ArrayList<>(Arrays.asList(route.handlers));
+                handlers.remove(handler);
+                if(handlers.isEmpty()){
+                    routesByGroup.remove(header.getTrafficGroup());
+                } else {
+                    routesByGroup.put(header.getTrafficGroup(),
+                            new Route(header, handlers.toArray(new DatagramHandler[0])));
+                }
+                routes = build(routesByGroup.values());
+            }
+        }
+
+        @Override
+        public boolean receive(ByteBuffer buffer, SocketAddress source) {
+            int length = TrafficGroupHeader.parseLength(buffer);
+            Route route = length < 0 ? null : find(buffer, length);
+            if(route == null){
+                unrouted.increment();
+                return false;
+            }
+            DatagramHandler[] handlers = route.handlers;
+            int last = handlers.length - 1;
+            //-- every agent of the group but the last is given its own copy, as any of them may retain its buffer,
+            //-- the copy carries the header too as the form of the header tells whether frame flags follow
+            for (int i = 0; i < last; i++){
+                ByteBuffer copy = pool.acquire();
+                copy.put(buffer.duplicate());
+                copy.flip();
+                copy.position(length);
+                if(!handlers[i].receive(copy, source)){
+                    pool.release(copy);
+                }
+            }
+            buffer.position(buffer.position() + length);
+            return handlers[last].receive(buffer, source);
+        }
+
+        private Route find(ByteBuffer buffer, int length){
+            Route[] table = routes;
+            if(table.length == 0) return null;
+            int hash = TrafficGroupHeader.hash(buffer, length);
+            int mask = table.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask){
+                Route route = table[i];
+                if(route == null) return null;
+                if(route.header.hash() == hash && route.header.length() == length && route.header.matches(buffer)){
+                    return route;
+                }
+            }
+        }
+
+        private void close(){
+            receiver.close();
+            DiscoveryRuntime.this.close(receiveChannel);
+            DiscoveryRuntime.this.close(sendChannel);
+        }
+    }
+
+    /**
+     * Build a table of at most half occupancy, so a probe always reaches an empty slot.
+     */
+    static Route[] build(Collection<Route> routes){
+        int size = 1;
+        while(size < routes.size() * 2) size <<= 1;
+        Route[] table = new Route[routes.isEmpty() ? 0 : size];
+        int mask = size - 1;
+        for (Route route : routes){
+            int i = route.header.hash() & mask;
+            while(table[i] != null) i = (i + 1) & mask;
+            table[i] = route;
+        }
+        return table;
+    }
+
+    static final class Route {
+
+        private final TrafficGroupHeader header;
+        private final DatagramHandler[] handlers;
+
+        private Route(TrafficGroupHeader header, DatagramHandler[] handlers) {
+            this.header = header;
+            this.handlers = handlers;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery;
+
+import java.util.Random;
+
+/**
+ * Runs the periodic work of agents in place of their own threads. An agent started with a scheduler
+ * (see {@link org.slj.network.discovery.model.NetworkDiscoveryOptions#withDiscoveryScheduler(DiscoveryScheduler)})
+ * starts no threads, its broadcasts, failure detection and checkpoints are scheduled as tasks, and its time and
+ * randomness are taken from the scheduler. A scheduler running its tasks on a single thread against a virtual
+ * clock, with a seeded source of randomness, makes a run of many agents reproducible.
+ *
+ * Tasks must be run one at a time.
+ */
+public interface DiscoveryScheduler extends DiscoveryClock {
+
+    /**
+     * Run the task once the delay has elapsed on the clock of the scheduler.
+     */
+    void schedule(Runnable task, long delayMillis);
+
+    /**
+     * @return - the source of randomness of the agents scheduled, used from the tasks of the scheduler only
+     */
+    Random getRandom();
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery;
+
+/**
+ * The cipher used to encrypt message bodies when encryption is enabled.
+ */
+public enum EncryptionMode {
+
+    /**
+     * AES in ECB mode with PKCS5 padding, the original mode. Identical payloads produce identical
+     * ciphertext and there is no integrity protection; retained for interoperability with older agents.
+     */
+    AES_ECB,
+
+    /**
+     * AES in GCM mode with a unique 96 bit nonce per packet and a 128 bit authentication tag. Tampered or
+     * foreign payloads are rejected during decryption.
+     */
+    AES_GCM
+}
@@ -24,13 +24,31 @@
 
 package org.slj.network.discovery;
 
+import org.slj.network.discovery.codec.BinaryMessageCodec;
+import org.slj.network.discovery.codec.MessageCodec;
+import org.slj.network.discovery.codec.SerializationMessageCodec;
+import org.slj.network.discovery.metrics.AgentMetrics;
 import org.slj.network.discovery.model.*;
+import org.slj.network.discovery.transport.*;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.*;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,23 +75,66 @@ import java.util.logging.Logger;
  */
 public class NetworkDiscoveryAgent {
 
+    private static final MessageCodec SERIALIZATION_CODEC = new SerializationMessageCodec();
+    private static final MessageCodec BINARY_CODEC = new BinaryMessageCodec();
+
     private Logger logger = Logger.getLogger(NetworkDiscoveryAgent.class.getName());
 
-    private static final String HEADER = "$-%s-$";
     private NetworkDiscoveryOptions options;
-    private Object monitor = new Object();
     private volatile boolean running = false;
     private Thread networkThread = null;
     private Thread broadcastThread = null;
-    private DatagramSocket networkSocket;
+    private Thread detectorThread = null;
+    private Thread checkpointThread = null;
+    private DatagramChannel networkChannel;
+    private DatagramReceiver receiver;
+    private ReceivePipeline pipeline;
+    private DiscoveryRuntime.Endpoint endpoint;
+    private DatagramHandler route;
+    private Transport transport;
+    private DiscoveryScheduler discoveryScheduler;
+    private DiscoveryClock clock = DiscoveryClock.SYSTEM;
 
     private final String trafficGroup, groupName, nodeName;
+    private final TrafficGroupHeader header;
     private volatile int currentStatus;
+    private volatile NodeAttributes localAttributes = NodeAttributes.EMPTY;
     private volatile int port;
+    private volatile int discoveryPort;
+    private List<InetSocketAddress> seeds = Collections.emptyList();
     private volatile String hostAddress;
     private Level level;
 
+    //-- only accessed by the broadcast thread once started
+    private long peerGeneration = -1;
+    private int peerBroadcastCount = 0;
+    private boolean peerDigestsDue;
+    //-- set on receipt; the agents heard asked for the full peer profiles, or this agent should ask for them
+    private volatile boolean peerRefreshRequested;
+    private volatile boolean requestPeerRefresh;
+    private List<DatagramPacket> broadcastPackets = Collections.emptyList();
+    private long broadcastPacketsExpiry = 0;
+    private List<NetworkInterface> multicastInterfaces = Collections.emptyList();
+    private InetSocketAddress multicastTarget;
+    private int fragmentedMessageId = ThreadLocalRandom.current().nextInt();
+    private ReassemblyTable reassembly;
+    //-- only used when the agent runs on a discovery scheduler
+    private BroadcastBuffers broadcastBuffers;
+    private volatile long broadcastSequence;
+
     private NetworkGraph graph;
+    private PayloadCipher cipher;
+    private PayloadCompressor compressor;
+    private GraphCheckpoint checkpoint;
+    //-- a lock rather than a monitor, as writing the checkpoint would otherwise pin a virtual thread to its carrier
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    private BroadcastScheduler scheduler;
+    private FailureDetector detector;
+    private long detectorInterval;
+    private ExecutorService listenerExecutor;
+    private final List<NetworkGraphListener> listeners = new CopyOnWriteArrayList<>();
+    private final AgentMetrics metrics = new AgentMetrics(this);
+    private ObjectName metricsName;
 
     /**
      * Construct a new agent specifying the group name within which, the current host resides and
@@ -91,6 +152,7 @@ public class NetworkDiscoveryAgent {
         if(!validTrafficGroup(trafficGroup)) {
             throw new IllegalArgumentException("trafficGroup must non null and alpha numeric");
         }
+        this.header = new TrafficGroupHeader(trafficGroup);
         this.nodeName = nodeName;
         if(nodeName == null){
             throw new IllegalArgumentException("unable to start agent with <null> nodeName");
@@ -128,17 +190,72 @@ public class NetworkDiscoveryAgent {
         try {
             this.options = options;
             level = options.isVerboseLoggingEnabled() ? Level.INFO : Level.FINE;
-            graph = new NetworkGraph(nodeName);
+            if(options.isVirtualThreadsEnabled() && !AgentThreads.isVirtualThreadSupported()){
+                logger.log(Level.WARNING, "virtual threads require java 21 or later, using platform threads");
+            }
+            discoveryScheduler = options.getDiscoveryScheduler();
+            clock = discoveryScheduler == null ? DiscoveryClock.SYSTEM : discoveryScheduler;
+            transport = options.getTransport();
+            graph = new NetworkGraph(nodeName, options.isCompactGraphEnabled());
+            graph.setClock(clock);
+            initListeners();
+            if(options.getCheckpointFile() != null){
+                restoreCheckpoint();
+            }
+            cipher = options.isEncryptedEnabled() ?
+                    new PayloadCipher(options.getEncryptionMode(), options.getEncryptionSecret()) : null;
+            seeds = parseSeeds(options);
+            scheduler = new BroadcastScheduler(options.getBroadcastIntervalMillis(), options.getBroadcastJitterPercent(),
+                    options.getBroadcastPacketsPerSecondBudget(),
+                    options.getTransportMode() == TransportMode.GOSSIP ? options.getGossipFanout() : 1,
+                    discoveryScheduler == null ? null : discoveryScheduler.getRandom());
+            fragmentedMessageId = random().nextInt();
+            //-- at least the evict period at the longest interval, the failure detector keeps it in step when it runs
+            graph.setTombstoneRetentionMillis(Math.max(options.getTombstoneRetentionMillis(),
+                    scheduler.getMaxIntervalMillis() * options.getEvictAfterMissedIntervals()));
+            compressor = new PayloadCompressor(trafficGroup,
+                    options.getCompressionDictionary(), options.getCompressionLevel());
+            reassembly = new ReassemblyTable(options.getReassemblyCapacity(),
+                    options.getMaxMessageSize(), options.getReassemblyTimeoutMillis());
+            peerGeneration = -1;
+            peerBroadcastCount = 0;
+            peerDigestsDue = false;
+            peerRefreshRequested = false;
+            requestPeerRefresh = false;
+            broadcastPackets = Collections.emptyList();
+            broadcastPacketsExpiry = 0;
             if(hostAddress == null){
-                deriveLocalAddress();
+                if(transport != null){
+                    hostAddress = transport.getLocalAddress().getHostString();
+                } else {
+                    deriveLocalAddress();
+                }
             }
             running = true;
+            if(options.isMetricsMBeanEnabled()){
+                registerMetrics();
+            }
+            if(options.isNetworkEnabled() || options.isBroadcastEnabled()){
+                if(transport != null){
+                    openTransport();
+                } else if(options.getDiscoveryRuntime() != null){
+                    openEndpoint();
+                }
+            }
             if(options.isNetworkEnabled()){
+                if(options.isFailureDetectionEnabled()){
+                    startFailureDetector();
+                }
                 startNetworkAgent();
             }
+            if(checkpoint != null){
+                startCheckpointAgent();
+            }
             if(options.isBroadcastEnabled()){
                 startBroadcastAgent();
-                Thread.sleep(100); // ensure the monitor is in wait on the birth
+                if(discoveryScheduler == null){
+                    Thread.sleep(100); // ensure the broadcast agent is parked awaiting the birth
+                }
                 setLocalNodeStatusInternal(NetworkNode.SCALING_IN);
             }
             return graph;
@@ -165,16 +282,87 @@ public class NetworkDiscoveryAgent {
      * broadcast mode.
      */
     public void stop() {
-        //-- ensure we send the death certificate, the monitor is waiting within the running loop,
+        //-- ensure we send the death certificate, the broadcast agent is parked within the running loop,
         //-- so death should be the last iteration assuming no interrupts
         currentStatus = NetworkNode.SCALING_OUT;
-        synchronized (monitor){
-            monitor.notifyAll();
+        if(discoveryScheduler != null){
+            running = false;
+            //-- there is no broadcast thread to send the death certificate, so it is sent before returning
+            if(broadcastBuffers != null){
+                try {
+                    broadcast(broadcastBuffers, null);
+                } catch(Throwable e){
+                    metrics.broadcastFailed();
+                    logger.log(Level.SEVERE, "encountered an error sending broadcast traffic;", e);
+                }
+                broadcastBuffers = null;
+            }
+        } else {
+            wakeBroadcastAgent();
+            running = false;
+        }
+        //-- give the broadcast thread the chance to send the death certificate before the graph is released
+        Thread broadcastThread = this.broadcastThread;
+        if(broadcastThread != null && broadcastThread != Thread.currentThread()){
+            try {
+                broadcastThread.join(Math.max(1000, options.getBroadcastIntervalMillis()));
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        Thread checkpointThread = this.checkpointThread;
+        if(checkpointThread != null){
+            checkpointThread.interrupt();
+        }
+        GraphCheckpoint checkpoint = this.checkpoint;
+        if(checkpoint != null){
+            writeCheckpoint(checkpoint);
+            this.checkpoint = null;
+        }
+        //-- datagrams may still arrive until the receiver is closed below, their changes are no longer reported
+        NetworkGraph graph = this.graph;
+        if(graph != null){
+            graph.closeListeners();
+        }
+        if(listenerExecutor != null){
+            listenerExecutor.shutdown();
+            listenerExecutor = null;
+        }
+        if(receiver != null){
+            receiver.close();
+            receiver = null;
+        }
+        DiscoveryRuntime.Endpoint endpoint = this.endpoint;
+        if(endpoint != null){
+            if(route != null){
+                endpoint.removeRoute(header, route);
+                route = null;
+            }
+            options.getDiscoveryRuntime().release(endpoint);
+            this.endpoint = null;
+        }
+        if(pipeline != null){
+            pipeline.close();
+            pipeline = null;
+        }
+        if(transport != null){
+            transport.close();
+            transport = null;
+        }
+        if(networkChannel != null){
+            try {
+                networkChannel.close();
+            } catch(IOException e){
+                logger.log(Level.WARNING, "error closing network channel;", e);
+            }
+            networkChannel = null;
         }
-        running = false;
-        networkSocket = null;
+        unregisterMetrics();
         networkThread = null;
         broadcastThread = null;
+        detectorThread = null;
+        detector = null;
+        this.checkpointThread = null;
         graph = null;
     }
 
@@ -197,6 +385,67 @@ public class NetworkDiscoveryAgent {
         setLocalNodeStatusInternal(NetworkNode.UNHEALTHY);
     }
 
+    /**
+     * Set the attributes broadcast with the local node, for example its capacity, zone or version. When the agent
+     * is running the change is broadcast immediately.
+     */
+    public void setLocalNodeAttributes(NodeAttributes attributes){
+        localAttributes = attributes == null ? NodeAttributes.EMPTY : attributes;
+        wakeBroadcastAgent();
+    }
+
+    public NodeAttributes getLocalNodeAttributes(){
+        return localAttributes;
+    }
+
+    /**
+     * Register a listener to be notified of membership changes. Listeners added before the agent is started are
+     * registered with the graph before any traffic is received, so no changes are missed.
+     */
+    public void addGraphListener(NetworkGraphListener listener){
+        listeners.add(listener);
+        NetworkGraph graph = this.graph;
+        if(graph != null){
+            graph.addListener(listener);
+        }
+    }
+
+    public void removeGraphListener(NetworkGraphListener listener){
+        listeners.remove(listener);
+        NetworkGraph graph = this.graph;
+        if(graph != null){
+            graph.removeListener(listener);
+        }
+    }
+
+    /**
+     * Return the receive pipeline, or <null> if the agent is not running with receive workers.
+     */
+    public ReceivePipeline getReceivePipeline(){
+        return pipeline;
+    }
+
+    /**
+     * Return the table in which fragmented messages are reassembled, or <null> if the agent has not been started.
+     */
+    public ReassemblyTable getReassemblyTable(){
+        return reassembly;
+    }
+
+    /**
+     * Return the scheduler deciding the interval between broadcasts, or <null> if the agent has not been started.
+     */
+    public BroadcastScheduler getBroadcastScheduler(){
+        return scheduler;
+    }
+
+    /**
+     * Return the metrics of the agent, which are cumulative across restarts.
+     */
+    public AgentMetrics getMetrics(){
+        return metrics;
+    }
+
     /**
      * Return the current tracked instance associated with the agent.
      */
@@ -206,127 +455,855 @@ public class NetworkDiscoveryAgent {
 
     private final void setLocalNodeStatusInternal(int status){
         currentStatus = status;
-        synchronized (monitor){
-            monitor.notifyAll();
+        wakeBroadcastAgent();
+    }
+
+    /**
+     * Wake the broadcast agent to send immediately. The agent parks rather than waiting on a monitor, so a
+     * virtual broadcast thread does not pin its carrier between broadcasts.
+     */
+    private void wakeBroadcastAgent(){
+        if(discoveryScheduler != null){
+            if(running && broadcastBuffers != null){
+                scheduleBroadcast(0);
+            }
+            return;
+        }
+        Thread broadcastThread = this.broadcastThread;
+        if(broadcastThread != null){
+            LockSupport.unpark(broadcastThread);
         }
     }
 
-    protected void startNetworkAgent() throws SocketException{
-        if(networkThread == null){
+    protected void initListeners(){
+        Executor executor = options.getListenerExecutor();
+        //-- on a discovery scheduler, events are delivered on the thread applying the change
+        if(executor == null && options.getDiscoveryScheduler() == null){
+            final String threadName = options.getListenerEventThreadName();
+            listenerExecutor = Executors.newSingleThreadExecutor(
+                    AgentThreads.newThreadFactory(threadName, options.isVirtualThreadsEnabled()));
+            executor = listenerExecutor;
+        }
+        graph.setListenerExecutor(executor);
+        for (NetworkGraphListener listener : listeners){
+            graph.addListener(listener);
+        }
+    }
+
+    protected void registerMetrics(){
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(String.format("org.slj.network.discovery:type=AgentMetrics,trafficGroup=%s,name=%s",
+                    trafficGroup, ObjectName.quote(nodeName)));
+            if(!server.isRegistered(name)){
+                server.registerMBean(metrics, name);
+                metricsName = name;
+            } else {
+                logger.log(Level.WARNING, String.format("agent metrics already registered as [%s], skipping", name));
+            }
+        } catch(Exception e){
+            logger.log(Level.WARNING, "unable to register agent metrics;", e);
+        }
+    }
+
+    protected void unregisterMetrics(){
+        ObjectName name = metricsName;
+        if(name != null){
+            metricsName = null;
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch(Exception e){
+                logger.log(Level.WARNING, "unable to unregister agent metrics;", e);
+            }
+        }
+    }
+
+    protected void startFailureDetector() {
+        if(detector == null){
             synchronized (this){
-                if(networkThread == null){
-                    initSocket();
-                    final String threadName = options.getBroadcastListenerThreadName();
-                    int readBufferSize = options.getReadBufferSize();
-                    networkThread = new Thread(() -> {
+                if(detector == null){
+                    final String threadName = options.getDetectorThreadName();
+                    detectorInterval = scheduler.getMaxIntervalMillis();
+                    detector = new FailureDetector(graph, detectorInterval * options.getSuspectAfterMissedIntervals(),
+                            detectorInterval * options.getEvictAfterMissedIntervals(), options.getFailureDetectorTickMillis(),
+                            clock.monotonicTimeMillis());
+                    final FailureDetector detector = this.detector;
+                    if(discoveryScheduler != null){
+                        scheduleFailureDetector(detector);
+                        return;
+                    }
+                    detectorThread = AgentThreads.newThread(threadName, options.isVirtualThreadsEnabled(), () -> {
                         if(logger.isLoggable(level)){
-                            logger.log(level, String.format("creating broadcast listener [%s] bound to socket [%s] with buffer size [%s], running ? [%s]",
-                                    threadName, networkSocket.getLocalPort(), readBufferSize, running));
+                            logger.log(level, String.format("creating failure detector [%s] with tick [%s], running ? [%s]",
+                                    threadName, detector.getTickMillis(), running));
                         }
+                        while(running){
+                            try {
+                                Thread.sleep(detector.getTickMillis());
+                                tickFailureDetector(detector);
+                            } catch(InterruptedException e){
+                                Thread.currentThread().interrupt();
+                                break;
+                            } catch(Throwable e){
+                                logger.log(Level.SEVERE, "encountered an error running failure detection;", e);
+                            }
+                        }
+                    });
+                    detectorThread.start();
+                }
+            }
+        }
+    }
+
+    private void scheduleFailureDetector(final FailureDetector detector){
+        discoveryScheduler.schedule(() -> {
+            if(!running) return;
+            try {
+                tickFailureDetector(detector);
+            } catch(Throwable e){
+                logger.log(Level.SEVERE, "encountered an error running failure detection;", e);
+            }
+            scheduleFailureDetector(detector);
+        }, detector.getTickMillis());
+    }
+
+    /**
+     * Advance the failure detector to the current time, first following the broadcast interval as it adapts to
+     * the size of the cluster.
+     */
+    protected void tickFailureDetector(FailureDetector detector){
+        NetworkGraph graph = this.graph;
+        if(graph == null) return;
+        scheduler.update(graph.getSnapshot().size());
+        long maxInterval = scheduler.getMaxIntervalMillis();
+        if(maxInterval != detectorInterval){
+            detector.setPeriods(maxInterval * options.getSuspectAfterMissedIntervals(),
+                    maxInterval * options.getEvictAfterMissedIntervals());
+            detectorInterval = maxInterval;
+            if(logger.isLoggable(Level.FINE)){
+                logger.log(Level.FINE, String.format("broadcast interval is now [%s], suspecting after [%s]",
+                        scheduler.getIntervalMillis(), detector.getSuspectAfterMillis()));
+            }
+        }
+        detector.tick(clock.monotonicTimeMillis());
+    }
+
+    protected void restoreCheckpoint(){
+        long provisionalMillis = (long) options.getBroadcastIntervalMillis() * options.getProvisionalExpiryIntervals();
+        checkpoint = new GraphCheckpoint(graph, Paths.get(options.getCheckpointFile()), provisionalMillis);
+        try {
+            int restored = checkpoint.restore(clock.monotonicTimeMillis());
+            if(logger.isLoggable(level)){
+                logger.log(level, String.format("restored [%s] nodes from checkpoint [%s]", restored, checkpoint.getFile()));
+            }
+        } catch(NetworkDiscoveryException e){
+            //-- a missing or damaged checkpoint only costs the warm start, it is replaced on the next write
+            logger.log(Level.WARNING, "unable to restore checkpoint, starting with an empty graph;", e);
+        }
+    }
 
-                        byte[] buff = new byte[readBufferSize];
+    protected void startCheckpointAgent() {
+        if(checkpointThread == null){
+            synchronized (this){
+                if(checkpointThread == null){
+                    final String threadName = options.getCheckpointThreadName();
+                    final GraphCheckpoint checkpoint = this.checkpoint;
+                    final long interval = options.getCheckpointIntervalMillis();
+                    if(discoveryScheduler != null){
+                        scheduleCheckpoint(checkpoint, interval);
+                        return;
+                    }
+                    checkpointThread = AgentThreads.newThread(threadName, options.isVirtualThreadsEnabled(), () -> {
+                        if(logger.isLoggable(level)){
+                            logger.log(level, String.format("creating checkpoint agent [%s] writing to [%s] every [%s], running ? [%s]",
+                                    threadName, checkpoint.getFile(), interval, running));
+                        }
                         while(running){
                             try {
-                                DatagramPacket p = new DatagramPacket(buff, buff.length);
-                                networkSocket.receive(p);
-                                int length = p.getLength();
-                                if(validApplicationTraffic(buff)){
-                                    if(logger.isLoggable(level)){
-                                        logger.log(level, String.format("receiving [%s] bytes on traffic group [%s] from [%s]",
-                                                length, trafficGroup, p.getAddress().getHostAddress()));
-                                    }
-                                    byte[] arr = removeHeader(buff, length);
-                                    if(options.isEncryptedEnabled()){
-                                        arr = NetworkDiscoveryAgentUtils.AES_decrypt(options.getEncryptionSecret(), arr);
-                                    }
-                                    receiveFromTransport(NetworkDiscoveryAgentUtils.wrap(arr, arr.length));
-                                } else {
-                                    if(logger.isLoggable(level)){
-                                        logger.log(level, String.format("received [%s] bytes of NON valid traffic from [%s]",
-                                                length, p.getAddress().getHostAddress()));
-                                    }
+                                Thread.sleep(interval);
+                                //-- the final checkpoint is written by stop
+                                if(!running) break;
+                                checkpointLock.lock();
+                                try {
+                                    checkpoint.tick(clock.monotonicTimeMillis());
+                                } finally {
+                                    checkpointLock.unlock();
                                 }
-
+                            } catch(InterruptedException e){
+                                Thread.currentThread().interrupt();
+                                break;
                             } catch(Throwable e){
-                                logger.log(Level.SEVERE, "encountered an error listening for broadcast traffic;", e);
-                            } finally {
-                                buff = new byte[readBufferSize];
+                                logger.log(Level.WARNING, "encountered an error writing checkpoint;", e);
                             }
                         }
-                    }, threadName);
-                    networkThread.setDaemon(true);
-                    networkThread.setPriority(Thread.MIN_PRIORITY);
+                    });
+                    checkpointThread.start();
+                }
+            }
+        }
+    }
+
+    private void scheduleCheckpoint(final GraphCheckpoint checkpoint, final long interval){
+        discoveryScheduler.schedule(() -> {
+            //-- the final checkpoint is written by stop
+            if(!running) return;
+            try {
+                checkpointLock.lock();
+                try {
+                    checkpoint.tick(clock.monotonicTimeMillis());
+                } finally {
+                    checkpointLock.unlock();
+                }
+            } catch(Throwable e){
+                logger.log(Level.WARNING, "encountered an error writing checkpoint;", e);
+            }
+            scheduleCheckpoint(checkpoint, interval);
+        }, interval);
+    }
+
+    private void writeCheckpoint(GraphCheckpoint checkpoint){
+        try {
+            checkpointLock.lock();
+            try {
+                checkpoint.write();
+            } finally {
+                checkpointLock.unlock();
+            }
+        } catch(NetworkDiscoveryException e){
+            logger.log(Level.WARNING, "unable to write final checkpoint;", e);
+        }
+    }
+
+    /**
+     * Open the shared endpoint of the discovery runtime for the port of this agent.
+     */
+    protected void openEndpoint() throws IOException, NetworkDiscoveryException {
+        endpoint = options.getDiscoveryRuntime().open(this, options);
+        discoveryPort = options.getTransportMode() == TransportMode.GOSSIP ? endpoint.getLocalPort() : 0;
+    }
+
+    /**
+     * Open the transport of the agent, receiving through it when the network mode is enabled.
+     */
+    protected void openTransport() throws IOException {
+        transport.open(options.isNetworkEnabled() ? this::receiveDatagram : null);
+        discoveryPort = options.getTransportMode() == TransportMode.GOSSIP ? transport.getLocalAddress().getPort() : 0;
+        if(logger.isLoggable(level)){
+            logger.log(level, String.format("opened transport at [%s] for traffic group [%s]",
+                    transport.getLocalAddress(), trafficGroup));
+        }
+    }
+
+    protected void startNetworkAgent() throws IOException, NetworkDiscoveryException {
+        if(transport != null){
+            //-- the transport delivers to the agent on its own thread, no listener thread or workers are started
+            return;
+        }
+        if(endpoint != null){
+            startRoutedAgent();
+            return;
+        }
+        if(networkThread == null){
+            synchronized (this){
+                if(networkThread == null){
+                    initChannel();
+                    final String threadName = options.getBroadcastListenerThreadName();
+                    final int readBufferSize = options.getReadBufferSize();
+                    BufferPool pool = new BufferPool(getReceiveBufferPoolSize(options), readBufferSize);
+                    receiver = new DatagramReceiver(pool, options.isReceiveSelectorEnabled());
+                    DatagramHandler handler = this::receiveDatagram;
+                    //-- with workers configured, the listener thread only drains the socket, decrypting, decoding
+                    //-- and applying updates happens on the pipeline workers
+                    if(options.getReceiveWorkerThreads() > 0){
+                        pipeline = new ReceivePipeline(threadName, options.getReceiveWorkerThreads(),
+                                options.getReceiveQueueCapacity(), options.isReceiveQueueBlockingEnabled(), pool, handler);
+                        pipeline.start();
+                        handler = pipeline;
+                    }
+                    receiver.register(networkChannel, handler);
+                    networkThread = AgentThreads.newThread(threadName, options.isVirtualThreadsEnabled(), () -> {
+                        if(logger.isLoggable(level)){
+                            logger.log(level, String.format("creating broadcast listener [%s] bound to [%s] with buffer size [%s], selector ? [%s], running ? [%s]",
+                                    threadName, options.getBroadcastPort(), readBufferSize, receiver.isSelectorEnabled(), running));
+                        }
+                        receiver.run();
+                    });
                     networkThread.start();
                 }
             }
         }
     }
 
+    /**
+     * @return - the configured receive buffer pool size, raised to cover the receive pipeline when workers are
+     * configured so a burst the worker rings absorb does not exhaust the pool
+     */
+    static int getReceiveBufferPoolSize(NetworkDiscoveryOptions options){
+        int size = options.getReceiveBufferPoolSize();
+        if(options.getReceiveWorkerThreads() > 0){
+            size = Math.max(size, ReceivePipeline.getBufferCount(
+                    options.getReceiveWorkerThreads(), options.getReceiveQueueCapacity()));
+        }
+        return size;
+    }
+
+    /**
+     * Receive through the endpoint of the discovery runtime, which routes the datagrams of this traffic group to
+     * the agent. No listener thread is started, the listener of the endpoint is shared.
+     */
+    protected void startRoutedAgent() {
+        if(route == null){
+            synchronized (this){
+                if(route == null){
+                    DatagramHandler handler = this::receiveRoutedDatagram;
+                    if(options.getReceiveWorkerThreads() > 0){
+                        //-- workers release buffers into the pool of the endpoint, which the buffers came from
+                        pipeline = new ReceivePipeline(options.getBroadcastListenerThreadName(), options.getReceiveWorkerThreads(),
+                                options.getReceiveQueueCapacity(), options.isReceiveQueueBlockingEnabled(),
+                                endpoint.getBufferPool(), handler);
+                        pipeline.start();
+                        handler = pipeline;
+                    }
+                    if(logger.isLoggable(level)){
+                        logger.log(level, String.format("routing traffic group [%s] from shared port [%s], running ? [%s]",
+                                trafficGroup, options.getBroadcastPort(), running));
+                    }
+                    route = handler;
+                    endpoint.addRoute(header, handler);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invoked for each datagram read from the network channel, either on the listener thread or on a pipeline
+     * worker. The buffer is only valid for the duration of the call.
+     */
+    protected boolean receiveDatagram(ByteBuffer buffer, SocketAddress source){
+        long start = System.nanoTime();
+        int length = buffer.remaining();
+        metrics.packetReceived(length);
+        try {
+            if(validApplicationTraffic(buffer)){
+                boolean framed = TrafficGroupHeader.isFramed(buffer, buffer.position());
+                removeHeader(buffer);
+                receiveFrame(buffer, framed, source, length, start);
+            } else {
+                metrics.packetRejected();
+                if(logger.isLoggable(level)){
+                    logger.log(level, String.format("received [%s] bytes of NON valid traffic from [%s]",
+                            length, source));
+                }
+            }
+        } catch(Throwable e){
+            logger.log(Level.SEVERE, "encountered an error listening for broadcast traffic;", e);
+        }
+        return false;
+    }
+
+    /**
+     * Invoked for each datagram the discovery runtime routes to this agent, the runtime having matched the header
+     * and advanced the position past it. The buffer is only valid for the duration of the call.
+     */
+    protected boolean receiveRoutedDatagram(ByteBuffer buffer, SocketAddress source){
+        long start = System.nanoTime();
+        int length = header.length() + buffer.remaining();
+        metrics.packetReceived(length);
+        try {
+            receiveFrame(buffer, TrafficGroupHeader.isFramed(buffer, buffer.position() - header.length()),
+                    source, length, start);
+        } catch(Throwable e){
+            logger.log(Level.SEVERE, "encountered an error listening for broadcast traffic;", e);
+        }
+        return false;
+    }
+
+    /**
+     * Reassemble, decrypt, decompress, decode and apply a frame, the position of the buffer being past the header.
+     * @param framed - true if the datagram carried the framed form of the header, and so begins with frame flags
+     */
+    protected void receiveFrame(ByteBuffer buffer, boolean framed, SocketAddress source, int length, long start) throws NetworkDiscoveryException {
+        if(logger.isLoggable(level)){
+            logger.log(level, String.format("receiving [%s] bytes on traffic group [%s] from [%s]",
+                    length, trafficGroup, source));
+        }
+        if(framed && !buffer.hasRemaining()){
+            throw new NetworkDiscoveryException("datagram has no frame flags");
+        }
+        byte flags = framed ? buffer.get() : 0;
+        if(!Frame.isSupported(flags)){
+            metrics.packetRejected();
+            if(logger.isLoggable(level)){
+                logger.log(level, String.format("received unsupported frame flags [%s] from [%s]",
+                        toBinary(flags), source));
+            }
+            return;
+        }
+        if(Frame.isFragment(flags)){
+            buffer = reassembly.offer(source, buffer, clock.monotonicTimeMillis());
+            if(buffer == null){
+                return;
+            }
+        }
+        if(cipher != null){
+            long decryptStart = System.nanoTime();
+            try {
+                cipher.decrypt(buffer);
+            } catch(NetworkDiscoveryException e){
+                metrics.decryptFailed();
+                throw e;
+            }
+            metrics.getDecryptLatency().record(System.nanoTime() - decryptStart);
+        }
+        if(Frame.isCompressed(flags)){
+            try {
+                buffer = compressor.decompress(buffer, options.getMaxMessageSize());
+            } catch(NetworkDiscoveryException e){
+                metrics.decodeFailed();
+                throw e;
+            }
+        }
+        receiveFromTransport(buffer);
+        metrics.getReceiveLatency().record(System.nanoTime() - start);
+    }
+
     protected void startBroadcastAgent() {
-        if(broadcastThread == null){
+        if(broadcastThread == null && broadcastBuffers == null){
             synchronized (this){
-                if(broadcastThread == null){
+                if(broadcastThread == null && broadcastBuffers == null){
                     final String threadName = options.getBroadcastAgentThreadName();
                     final int writeBufferSize = options.getWriteBufferSize();
-                    final int interval = options.getBroadcastIntervalMillis();
-                    broadcastThread = new Thread(() -> {
+                    final BroadcastScheduler scheduler = this.scheduler;
+                    if(discoveryScheduler != null){
+                        //-- rounds are scheduled once the birth wakes the agent
+                        broadcastBuffers = new BroadcastBuffers(writeBufferSize, getMaxDatagramSize());
+                        return;
+                    }
+                    broadcastThread = AgentThreads.newThread(threadName, options.isVirtualThreadsEnabled(), () -> {
                         if(logger.isLoggable(level)){
                             logger.log(level, String.format("creating broadcast agent [%s] with buffer size [%s], running ? [%s] on interval [%s]",
-                                    threadName, writeBufferSize, running, interval));
+                                    threadName, writeBufferSize, running, scheduler.getIntervalMillis()));
                         }
-                        while(running){
-                            try {
-                                synchronized (monitor){
-                                    monitor.wait(interval);
-                                }
-                                BroadcastMessage message = generateBroadcastMessage();
-                                List<InetAddress> broadcastAddresses = getAllBroadcastAddresses();
-                                try (DatagramSocket socket = new DatagramSocket()){
-                                    socket.setBroadcast(true);
-                                    try (ByteArrayOutputStream baos
-                                                 = new ByteArrayOutputStream(writeBufferSize)) {
-                                        ObjectOutputStream oos = new ObjectOutputStream(baos);
-                                        oos.writeObject(message);
-                                        oos.flush();
-                                        byte[] header = generateHeader();
-                                        byte[] data = baos.toByteArray();
-                                        if(options.isEncryptedEnabled()){
-                                            data = NetworkDiscoveryAgentUtils.AES_encrypt(options.getEncryptionSecret(), data);
-                                        }
-                                        byte[] all = new byte[data.length + header.length];
-                                        System.arraycopy(header, 0, all, 0, header.length);
-                                        System.arraycopy(data, 0, all, header.length, data.length);
-                                        for(InetAddress address : broadcastAddresses) {
-                                            if(logger.isLoggable(level)){
-                                                logger.log(level, String.format("broadcasting [%s] bytes to network interface [%s] -> [%s]",
-                                                        data.length, address, options.getBroadcastPort()));
-                                            }
-                                            DatagramPacket packet
-                                                    = new DatagramPacket(all, all.length, address, options.getBroadcastPort());
-                                            socket.send(packet);
-                                        }
+                        //-- the buffers are reused for the lifetime of the thread, growing if a message outgrows them
+                        BroadcastBuffers buffers = new BroadcastBuffers(writeBufferSize, getMaxDatagramSize());
+                        //-- the send channel is held open for the lifetime of the thread, when the agent shares the
+                        //-- sockets of a discovery runtime the channel belongs to the runtime and is not closed here,
+                        //-- and when it sends through a transport there is no channel
+                        DatagramChannel shared = endpoint == null ? null : endpoint.getSendChannel();
+                        try (DatagramChannel owned = shared == null && transport == null ? openSendChannel() : null){
+                            DatagramChannel channel = shared == null ? owned : shared;
+                            if(transport == null && options.getTransportMode() == TransportMode.MULTICAST){
+                                multicastInterfaces = getMulticastInterfaces();
+                                multicastTarget = new InetSocketAddress(getMulticastGroup(), options.getBroadcastPort());
+                            }
+                            while(running){
+                                try {
+                                    NetworkGraph graph = this.graph;
+                                    if(graph != null){
+                                        scheduler.update(graph.getSnapshot().size());
                                     }
-                                } finally {
-                                    //-- if this was the birth certificate, we need to flip to ping mode
-                                    if(options.isNodeMarkedHealthyAfterBirth()){
-                                        if(currentStatus == NetworkNode.SCALING_IN){
-                                            currentStatus = NetworkNode.HEALTHY;
-                                        }
+                                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(scheduler.nextDelayMillis()));
+                                    if(Thread.interrupted()){
+                                        throw new InterruptedException();
                                     }
+                                    broadcast(buffers, channel);
+                                } catch(InterruptedException e){
+                                    Thread.currentThread().interrupt();
+                                    break;
+                                } catch(Throwable e){
+                                    metrics.broadcastFailed();
+                                    logger.log(Level.SEVERE, "encountered an error sending broadcast traffic;", e);
                                 }
-                            } catch(Throwable e){
-                                logger.log(Level.SEVERE, "encountered an error sending broadcast traffic;", e);
                             }
+                        } catch(IOException | NetworkDiscoveryException e){
+                            logger.log(Level.SEVERE, "unable to open broadcast channel;", e);
                         }
-                    }, threadName);
-                    broadcastThread.setDaemon(true);
-                    broadcastThread.setPriority(Thread.MIN_PRIORITY);
+                    });
+                    //-- the priority of a virtual thread cannot be changed
+                    if(!options.isVirtualThreadsEnabled() || !AgentThreads.isVirtualThreadSupported()){
+                        broadcastThread.setPriority(Thread.MIN_PRIORITY);
+                    }
                     broadcastThread.start();
                 }
             }
         }
     }
 
+    /**
+     * Schedule the next broadcast round on the discovery scheduler, superseding any round already scheduled.
+     */
+    private synchronized void scheduleBroadcast(long delayMillis){
+        final long sequence = ++broadcastSequence;
+        discoveryScheduler.schedule(() -> {
+            if(sequence != broadcastSequence || !running) return;
+            BroadcastBuffers buffers = broadcastBuffers;
+            if(buffers == null) return;
+            try {
+                broadcast(buffers, null);
+            } catch(Throwable e){
+                metrics.broadcastFailed();
+                logger.log(Level.SEVERE, "encountered an error sending broadcast traffic;", e);
+            }
+            NetworkGraph graph = this.graph;
+            if(graph != null){
+                scheduler.update(graph.getSnapshot().size());
+            }
+            scheduleBroadcast(scheduler.nextDelayMillis());
+        }, delayMillis);
+    }
+
+    /**
+     * Encode the current state of the local node, compress and encrypt it as configured and send it, as
+     * fragments should it exceed the maximum datagram size.
+     * @param channel - the channel to send on, <null> when sending through a transport
+     */
+    private void broadcast(BroadcastBuffers buffers, DatagramChannel channel) throws NetworkDiscoveryException {
+        long start = System.nanoTime();
+        BroadcastMessage message = generateBroadcastMessage();
+        try {
+            buffers.buffer = writeMessage(message, buffers.buffer);
+            ByteBuffer out = buffers.buffer;
+            if(options.isCompressionEnabled() &&
+                    out.limit() - header.length() >= options.getCompressionThreshold()){
+                if(buffers.compressed.capacity() < out.limit()){
+                    buffers.compressed = ByteBuffer.allocate(out.capacity());
+                }
+                if(compressMessage(out, buffers.compressed)){
+                    out = buffers.compressed;
+                }
+            }
+            if(cipher != null){
+                int required = out.limit() + cipher.getMaxOverhead();
+                if(buffers.encrypted.capacity() < required){
+                    buffers.encrypted = ByteBuffer.allocate(required * 2);
+                }
+                ByteBuffer encrypted = buffers.encrypted;
+                encrypted.clear();
+                if(TrafficGroupHeader.isFramed(out, 0)){
+                    header.writeFramed(encrypted);
+                    removeHeader(out);
+                    encrypted.put(out.get());
+                } else {
+                    header.write(encrypted);
+                    removeHeader(out);
+                }
+                cipher.encrypt(out, encrypted);
+                encrypted.flip();
+                out = encrypted;
+            }
+            //-- gossip targets are chosen once per message, so every fragment reaches the same agents
+            List<InetSocketAddress> targets = options.getTransportMode() == TransportMode.GOSSIP ?
+                    selectGossipTargets(message.getStatus() == BroadcastMessage.DEATH ?
+                            Integer.MAX_VALUE : options.getGossipFanout()) : null;
+            if(out.limit() <= getMaxDatagramSize()){
+                sendDatagram(channel, out, targets);
+            } else {
+                sendFragmented(channel, out, buffers.fragment, targets);
+            }
+            metrics.getBroadcastLatency().record(System.nanoTime() - start);
+        } finally {
+            //-- if this was the birth certificate, we need to flip to ping mode
+            if(options.isNodeMarkedHealthyAfterBirth()){
+                if(currentStatus == NetworkNode.SCALING_IN){
+                    currentStatus = NetworkNode.HEALTHY;
+                }
+            }
+        }
+    }
+
+    /**
+     * Open the channel on which datagrams are sent, configured for the transport mode.
+     */
+    protected DatagramChannel openSendChannel() throws IOException, NetworkDiscoveryException {
+        DatagramChannel channel;
+        if(options.getTransportMode() == TransportMode.MULTICAST){
+            channel = DatagramChannel.open(protocolFamily(getMulticastGroup()));
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, options.getMulticastTimeToLive());
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, options.isMulticastLoopbackEnabled());
+        } else {
+            channel = DatagramChannel.open();
+            if(options.getTransportMode() == TransportMode.BROADCAST){
+                channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Deflate the payload of the plain datagram into the compressed buffer, as a frame flagged as compressed.
+     * @return - true if the compressed buffer now holds the frame, flipped ready for reading; false if compression
+     * did not make the payload smaller, in which case the datagram is unchanged
+     */
+    protected boolean compressMessage(ByteBuffer frame, ByteBuffer compressed){
+        int offset = header.length();
+        int length = frame.limit() - offset;
+        compressed.clear();
+        header.writeFramed(compressed);
+        compressed.put(Frame.COMPRESSED);
+        ByteBuffer payload = frame.duplicate();
+        payload.position(offset);
+        if(!compressor.compress(payload, compressed)){
+            metrics.compressionSkipped();
+            return false;
+        }
+        compressed.flip();
+        metrics.messageCompressed(length, compressed.limit() - offset);
+        return true;
+    }
+
+    /**
+     * Send a single datagram using the transport mode of the agent.
+     * @param targets - the agents to send to when gossiping
+     */
+    protected void sendDatagram(DatagramChannel channel, ByteBuffer out, List<InetSocketAddress> targets)
+            throws NetworkDiscoveryException {
+        if(transport != null){
+            sendTransport(out, targets);
+            return;
+        }
+        switch(options.getTransportMode()){
+            case MULTICAST:
+                sendMulticast(channel, multicastInterfaces, multicastTarget, out);
+                break;
+            case GOSSIP:
+                sendGossip(channel, targets, out);
+                break;
+            default:
+                sendBroadcast(channel.socket(), out.array(), out.limit());
+        }
+    }
+
+    /**
+     * Split the datagram into fragments no larger than the maximum datagram size, each carrying the flags of the
+     * frame (none for a plain datagram) with FRAGMENT set, and send them in order.
+     * @param fragment - a buffer of the maximum datagram size, reused for each fragment
+     */
+    protected void sendFragmented(DatagramChannel channel, ByteBuffer out, ByteBuffer fragment,
+                                  List<InetSocketAddress> targets) throws NetworkDiscoveryException {
+        boolean framed = TrafficGroupHeader.isFramed(out, 0);
+        int offset = header.length() + (framed ? Frame.FLAGS_LENGTH : 0);
+        //-- every fragment is framed, whether or not the datagram was
+        int chunk = getMaxDatagramSize() - header.length() - Frame.FLAGS_LENGTH - Frame.FRAGMENT_HEADER_LENGTH;
+        int length = out.limit() - offset;
+        int count = (length + chunk - 1) / chunk;
+        if(count > Frame.MAX_FRAGMENTS){
+            throw new NetworkDiscoveryException("message of ["+length+"] bytes requires too many fragments");
+        }
+        byte flags = (byte) ((framed ? out.get(header.length()) : 0) | Frame.FRAGMENT);
+        int messageId = ++fragmentedMessageId;
+        ByteBuffer part = out.duplicate();
+        for (int i = 0; i < count; i++){
+            int from = offset + i * chunk;
+            part.limit(Math.min(from + chunk, out.limit()));
+            part.position(from);
+            fragment.clear();
+            header.writeFramed(fragment);
+            fragment.put(flags);
+            fragment.putInt(messageId);
+            fragment.putShort((short) i);
+            fragment.putShort((short) count);
+            fragment.put(part);
+            fragment.flip();
+            sendDatagram(channel, fragment, targets);
+        }
+        metrics.messageFragmented(count);
+        if(logger.isLoggable(level)){
+            logger.log(level, String.format("sent message [%s] of [%s] bytes as [%s] fragments", messageId, length, count));
+        }
+    }
+
+    /**
+     * Send the datagram to each of the gossip targets. Failing to reach one target does not prevent the
+     * others from being sent to.
+     */
+    protected void sendGossip(DatagramChannel channel, List<InetSocketAddress> targets, ByteBuffer out) {
+        int length = out.remaining();
+        for (int i = 0; i < targets.size(); i++){
+            InetSocketAddress target = targets.get(i);
+            if(logger.isLoggable(level)){
+                logger.log(level, String.format("gossiping [%s] bytes to [%s]", length, target));
+            }
+            try {
+                out.position(0);
+                channel.send(out, target);
+                metrics.packetSent(length);
+            } catch(IOException e){
+                metrics.broadcastFailed();
+                logger.log(Level.WARNING, String.format("error sending gossip to [%s]; %s", target, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Send the datagram through the transport, to each of the gossip targets or, in the broadcast and multicast
+     * modes, to every agent reachable. Failing to reach one gossip target does not prevent the others from being
+     * sent to.
+     */
+    protected void sendTransport(ByteBuffer out, List<InetSocketAddress> targets) throws NetworkDiscoveryException {
+        int length = out.remaining();
+        if(targets == null){
+            try {
+                out.position(0);
+                transport.send(out, null);
+                metrics.packetSent(length);
+            } catch(IOException e){
+                throw new NetworkDiscoveryException("error sending through transport", e);
+            }
+            return;
+        }
+        for (int i = 0; i < targets.size(); i++){
+            InetSocketAddress target = targets.get(i);
+            try {
+                out.position(0);
+                transport.send(out, target);
+                metrics.packetSent(length);
+            } catch(IOException e){
+                metrics.broadcastFailed();
+                logger.log(Level.WARNING, String.format("error sending gossip to [%s]; %s", target, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * @return - the source of randomness of the agent, that of the discovery scheduler when it has one
+     */
+    protected Random random(){
+        return discoveryScheduler == null ? ThreadLocalRandom.current() : discoveryScheduler.getRandom();
+    }
+
+    /**
+     * Choose up to fanout agents at random from those known to the graph (excluding suspects and agents which do not
+     * gossip), making up any shortfall from the seeds.
+     */
+    protected List<InetSocketAddress> selectGossipTargets(int fanout){
+        NetworkGraph graph = this.graph;
+        List<NetworkNode> nodes = graph == null ?
+                Collections.emptyList() : graph.getAllNodesByGroupName(null, false);
+        Random random = random();
+        //-- reservoir sample, so a round costs one pass over the graph regardless of its size
+        List<NetworkNode> chosen = new ArrayList<>(Math.min(fanout, nodes.size()));
+        int seen = 0;
+        for (int i = 0; i < nodes.size(); i++){
+            NetworkNode node = nodes.get(i);
+            if(node.getDiscoveryPort() <= 0 || node.getAddress() == null ||
+                    node.getStatus() == NetworkNode.SUSPECT) continue;
+            if(chosen.size() < fanout){
+                chosen.add(node);
+            } else {
+                int j = random.nextInt(seen + 1);
+                if(j < fanout) chosen.set(j, node);
+            }
+            seen++;
+        }
+        List<InetSocketAddress> targets = new ArrayList<>(Math.min(fanout, chosen.size() + seeds.size()));
+        for (NetworkNode node : chosen){
+            targets.add(new InetSocketAddress(node.getAddress(), node.getDiscoveryPort()));
+        }
+        int remaining = Math.min(fanout - targets.size(), seeds.size());
+        if(remaining > 0){
+            int offset = random.nextInt(seeds.size());
+            for (int i = 0; i < seeds.size() && remaining > 0; i++){
+                InetSocketAddress seed = seeds.get((offset + i) % seeds.size());
+                if(!targets.contains(seed)){
+                    targets.add(seed);
+                    remaining--;
+                }
+            }
+        }
+        return targets;
+    }
+
+    protected List<InetSocketAddress> parseSeeds(NetworkDiscoveryOptions options){
+        List<InetSocketAddress> l = new ArrayList<>(options.getSeeds().size());
+        for (String seed : options.getSeeds()){
+            int idx = seed == null ? -1 : seed.lastIndexOf(':');
+            if(idx <= 0 || idx == seed.length() - 1){
+                throw new IllegalArgumentException("seed must be in the form host:port ["+seed+"]");
+            }
+            String host = seed.substring(0, idx).trim();
+            if(host.startsWith("[") && host.endsWith("]")){
+                host = host.substring(1, host.length() - 1);
+            }
+            try {
+                l.add(new InetSocketAddress(host, Integer.parseInt(seed.substring(idx + 1).trim())));
+            } catch(IllegalArgumentException e){
+                throw new IllegalArgumentException("invalid seed ["+seed+"]", e);
+            }
+        }
+        return Collections.unmodifiableList(l);
+    }
+
+    /**
+     * Send the datagram to the multicast group out of each of the interfaces.
+     */
+    protected void sendMulticast(DatagramChannel channel, List<NetworkInterface> interfaces,
+                                 InetSocketAddress group, ByteBuffer out) throws NetworkDiscoveryException {
+        int length = out.remaining();
+        for (int i = 0; i < interfaces.size(); i++){
+            NetworkInterface networkInterface = interfaces.get(i);
+            if(logger.isLoggable(level)){
+                logger.log(level, String.format("multicasting [%s] bytes on network interface [%s] -> [%s]",
+                        length, networkInterface.getName(), group));
+            }
+            try {
+                //-- agents of a discovery runtime share the send channel, the interface must not change between
+                //-- selecting it and sending
+                synchronized (channel){
+                    channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+                    out.position(0);
+                    channel.send(out, group);
+                }
+                metrics.packetSent(length);
+            } catch(IOException e){
+                throw new NetworkDiscoveryException("error sending multicast on " + networkInterface.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Send the datagram to each of the broadcast addresses, reusing the packets addressed on the previous
+     * broadcast. Should any send fail, the addresses are rediscovered on the next broadcast.
+     */
+    protected void sendBroadcast(DatagramSocket socket, byte[] data, int length) throws NetworkDiscoveryException {
+        List<DatagramPacket> packets = getBroadcastPackets();
+        for (int i = 0; i < packets.size(); i++){
+            DatagramPacket packet = packets.get(i);
+            if(logger.isLoggable(level)){
+                logger.log(level, String.format("broadcasting [%s] bytes to network interface [%s] -> [%s]",
+                        length, packet.getAddress(), packet.getPort()));
+            }
+            packet.setData(data, 0, length);
+            try {
+                socket.send(packet);
+                metrics.packetSent(length);
+            } catch(IOException e){
+                broadcastPacketsExpiry = 0;
+                throw new NetworkDiscoveryException("error sending broadcast to " + packet.getAddress(), e);
+            }
+        }
+    }
+
+    /**
+     * Return a packet addressed to each broadcast address, enumerating the network interfaces only when the
+     * addresses cached from the previous enumeration have expired.
+     */
+    protected List<DatagramPacket> getBroadcastPackets() throws NetworkDiscoveryException {
+        long now = clock.monotonicTimeMillis();
+        if(now >= broadcastPacketsExpiry){
+            List<InetAddress> addresses = getAllBroadcastAddresses();
+            List<DatagramPacket> packets = new ArrayList<>(addresses.size());
+            for (InetAddress address : addresses){
+                packets.add(new DatagramPacket(new byte[0], 0, address, options.getBroadcastPort()));
+            }
+            broadcastPackets = packets;
+            broadcastPacketsExpiry = now + options.getBroadcastAddressCacheMillis();
+            if(logger.isLoggable(level)){
+                logger.log(level, String.format("discovered broadcast addresses %s", addresses));
+            }
+        }
+        return broadcastPackets;
+    }
+
     protected List<InetAddress> getAllBroadcastAddresses() throws NetworkDiscoveryException {
         try {
             List<InetAddress> l = new ArrayList<>();
@@ -349,20 +1326,152 @@ public class NetworkDiscoveryAgent {
         }
     }
 
-    protected void initSocket() throws SocketException {
-        if(networkSocket == null){
-            networkSocket = options.getBroadcastPort() > 0 ?
-                    new DatagramSocket(options.getBroadcastPort()) : new DatagramSocket();
-            networkSocket.setBroadcast(true);
+    protected void initChannel() throws IOException, NetworkDiscoveryException {
+        if(networkChannel == null){
+            networkChannel = openReceiveChannel();
+            discoveryPort = options.getTransportMode() == TransportMode.GOSSIP ?
+                    ((InetSocketAddress) networkChannel.getLocalAddress()).getPort() : 0;
+        }
+    }
+
+    /**
+     * Open the channel on which datagrams are received, bound to the broadcast port and configured for the
+     * transport mode.
+     */
+    protected DatagramChannel openReceiveChannel() throws IOException, NetworkDiscoveryException {
+        boolean multicast = options.getTransportMode() == TransportMode.MULTICAST;
+        InetAddress group = multicast ? getMulticastGroup() : null;
+        DatagramChannel channel;
+        if(multicast){
+            channel = DatagramChannel.open(protocolFamily(group));
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        } else {
+            channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+        }
+        try {
+            if(options.getSocketReceiveBufferSize() > 0){
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, options.getSocketReceiveBufferSize());
+            }
+            channel.bind(options.getBroadcastPort() > 0 ?
+                    new InetSocketAddress(options.getBroadcastPort()) : null);
+            if(multicast){
+                for (NetworkInterface networkInterface : getMulticastInterfaces()){
+                    if(logger.isLoggable(level)){
+                        logger.log(level, String.format("joining multicast group [%s] on network interface [%s]",
+                                group, networkInterface.getName()));
+                    }
+                    channel.join(group, networkInterface);
+                }
+            }
+            return channel;
+        } catch(IOException | NetworkDiscoveryException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    protected InetAddress getMulticastGroup() throws NetworkDiscoveryException {
+        try {
+            InetAddress group = InetAddress.getByName(options.getMulticastGroup());
+            if(!group.isMulticastAddress()){
+                throw new NetworkDiscoveryException("["+options.getMulticastGroup()+"] is not a multicast address");
+            }
+            return group;
+        } catch(UnknownHostException e){
+            throw new NetworkDiscoveryException(e);
+        }
+    }
+
+    /**
+     * Return the configured multicast interfaces, or when none are configured every interface which is up,
+     * supports multicast and has an address of the same family as the group. Loopback interfaces are used
+     * only when there are no others.
+     */
+    protected List<NetworkInterface> getMulticastInterfaces() throws NetworkDiscoveryException {
+        try {
+            List<NetworkInterface> l = new ArrayList<>();
+            List<String> names = options.getMulticastInterfaces();
+            if(!names.isEmpty()){
+                for (String name : names){
+                    NetworkInterface networkInterface = NetworkInterface.getByName(name);
+                    if(networkInterface == null){
+                        networkInterface = NetworkInterface.getByInetAddress(InetAddress.getByName(name));
+                    }
+                    if(networkInterface == null){
+                        throw new NetworkDiscoveryException("unknown network interface ["+name+"]");
+                    }
+                    l.add(networkInterface);
+                }
+                return l;
+            }
+            Class<? extends InetAddress> family = getMulticastGroup().getClass();
+            List<NetworkInterface> loopback = new ArrayList<>();
+            Enumeration<NetworkInterface> interfaces
+                    = NetworkInterface.getNetworkInterfaces();
+            while (interfaces.hasMoreElements()) {
+                NetworkInterface networkInterface = interfaces.nextElement();
+                if (!networkInterface.isUp() || !networkInterface.supportsMulticast() ||
+                        Collections.list(networkInterface.getInetAddresses()).stream().noneMatch(family::isInstance)) {
+                    continue;
+                }
+                (networkInterface.isLoopback() ? loopback : l).add(networkInterface);
+            }
+            return l.isEmpty() ? loopback : l;
+        } catch(IOException e){
+            throw new NetworkDiscoveryException(e);
         }
     }
 
-    protected void receiveFromTransport(ByteBuffer buffer)
-            throws IOException, ClassNotFoundException {
-        try (ByteArrayInputStream in =
-                     new ByteArrayInputStream(NetworkDiscoveryAgentUtils.drain(buffer))) {
-            ObjectInputStream is = new ObjectInputStream(in);
-            receiveMessage((BroadcastMessage) is.readObject());
+    private static ProtocolFamily protocolFamily(InetAddress address){
+        return address instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET;
+    }
+
+    protected void receiveFromTransport(ByteBuffer buffer) throws NetworkDiscoveryException {
+        long start = System.nanoTime();
+        BroadcastMessage message;
+        try {
+            message = decoderFor(buffer).decode(buffer);
+        } catch(NetworkDiscoveryException | RuntimeException e){
+            metrics.decodeFailed();
+            throw e;
+        }
+        long decoded = System.nanoTime();
+        metrics.getDecodeLatency().record(decoded - start);
+        receiveMessage(message);
+        metrics.getApplyLatency().record(System.nanoTime() - decoded);
+    }
+
+    /**
+     * @return - the codec with which to decode the message. Both built in formats are read whichever this agent
+     * writes, so agents can move from one to the other without a flag day
+     */
+    protected MessageCodec decoderFor(ByteBuffer buffer){
+        MessageCodec codec = options.getMessageCodec();
+        if(codec instanceof SerializationMessageCodec || codec instanceof BinaryMessageCodec){
+            return SerializationMessageCodec.isSerialized(buffer) ? SERIALIZATION_CODEC : BINARY_CODEC;
+        }
+        return codec;
+    }
+
+    /**
+     * Encode the header followed by the message into the supplied buffer using the configured codec. Should the
+     * message not fit, a larger buffer is allocated and returned which the caller should retain for subsequent writes.
+     * @return - the buffer containing the header and message, flipped ready for reading
+     */
+    protected ByteBuffer writeMessage(BroadcastMessage message, ByteBuffer buffer) throws NetworkDiscoveryException {
+        MessageCodec codec = options.getMessageCodec();
+        while(true){
+            try {
+                buffer.clear();
+                header.write(buffer);
+                codec.encode(message, buffer);
+                buffer.flip();
+                return buffer;
+            } catch(BufferOverflowException e){
+                //-- a write buffer size of 0 must still grow
+                buffer = ByteBuffer.allocate(Math.max(1, buffer.capacity()) * 2);
+            }
         }
     }
 
@@ -378,7 +1487,15 @@ public class NetworkDiscoveryAgent {
         }
         message.setHost(generateCurrentHostState());
         if(options.isBroadcastPeerProfiles()){
-            message.setPeers(graph.getAllNodesByGroupName(null, false));
+            List<NetworkNode> peers = selectPeers();
+            message.setPeers(peers);
+            if(peerDigestsDue){
+                message.setDigests(selectDigests(peers));
+            }
+        }
+        if(requestPeerRefresh){
+            requestPeerRefresh = false;
+            message.setRefreshRequested(true);
         }
         if(logger.isLoggable(level)){
             logger.log(level, String.format("sending message [%s]", message));
@@ -386,14 +1503,98 @@ public class NetworkDiscoveryAgent {
         return message;
     }
 
+    /**
+     * When delta peer profiles are enabled, only the peers which have changed since the last broadcast are sent.
+     * The full set is sent only when a new node has joined (so it learns about the rest of the network promptly)
+     * or when an agent heard from asks for it, having received a digest it could not reconcile.
+     *
+     * A delta does not carry heartbeats, so a node known only through peers would not be heard from between
+     * changes. Every {@link NetworkDiscoveryOptions#getPeerProfileFullRefreshInterval()} broadcasts the remaining
+     * peers are therefore sent as liveness digests, see {@link #selectDigests(List)}. With failure detection
+     * enabled the digests are sent within the suspect period, however long the interval, so such nodes are not
+     * suspected between them.
+     */
+    protected List<NetworkNode> selectPeers(){
+        NetworkGraph graph = this.graph;
+        peerDigestsDue = false;
+        if(graph == null) return Collections.emptyList();
+        //-- read the generation before the query, so changes racing the query are resent next time
+        long generation = graph.getGeneration();
+        List<NetworkNode> peers;
+        //-- gossip relays heartbeats through the peer profiles, which deltas do not carry, so always send them all
+        if(!options.isDeltaPeerProfiles() || options.getTransportMode() == TransportMode.GOSSIP || peerGeneration < 0 ||
+                graph.getJoinGeneration() > peerGeneration || peerRefreshRequested){
+            peerRefreshRequested = false;
+            peers = graph.getAllNodesByGroupName(null, false);
+            peerBroadcastCount = 0;
+        } else {
+            peers = graph.getNodesChangedSince(peerGeneration, false);
+            if(++peerBroadcastCount >= getPeerProfileFullRefreshInterval()){
+                peerDigestsDue = true;
+                peerBroadcastCount = 0;
+            }
+        }
+        peerGeneration = generation;
+        //-- suspicion is local to this agent, it is not gossiped, and neither are nodes restored from a checkpoint
+        //-- which have not yet been confirmed, so stale state is not passed on as though it were live
+        for (int i = 0; i < peers.size(); i++){
+            if(!shareable(peers.get(i))){
+                List<NetworkNode> l = new ArrayList<>(peers.size());
+                for (NetworkNode peer : peers){
+                    if(shareable(peer)) l.add(peer);
+                }
+                return l;
+            }
+        }
+        return peers;
+    }
+
+    /**
+     * @return - the liveness digests of the shareable peers not in the delta, a name, event time and version each,
+     * which a receiver holding the same version of a peer takes as its heartbeat
+     */
+    protected List<NodeDigest> selectDigests(List<NetworkNode> delta){
+        NetworkGraph graph = this.graph;
+        if(graph == null) return Collections.emptyList();
+        Set<String> sent = null;
+        if(!delta.isEmpty()){
+            sent = new HashSet<>(delta.size() * 2);
+            for (NetworkNode peer : delta){
+                sent.add(peer.getName());
+            }
+        }
+        List<NetworkNode> nodes = graph.getAllNodesByGroupName(null, false);
+        List<NodeDigest> digests = new ArrayList<>(nodes.size());
+        for (NetworkNode node : nodes){
+            if(shareable(node) && (sent == null || !sent.contains(node.getName()))){
+                digests.add(NodeDigest.of(node));
+            }
+        }
+        return digests;
+    }
+
+    private int getPeerProfileFullRefreshInterval(){
+        int interval = options.getPeerProfileFullRefreshInterval();
+        if(options.isFailureDetectionEnabled()){
+            interval = Math.min(interval, Math.max(1, options.getSuspectAfterMissedIntervals() - 1));
+        }
+        return interval;
+    }
+
+    private static boolean shareable(NetworkNode node){
+        return node.getStatus() != NetworkNode.SUSPECT && !node.isProvisional();
+    }
+
     protected NetworkNode generateCurrentHostState(){
         NetworkNode node = new NetworkNode();
         node.setName(nodeName);
         node.setAddress(hostAddress);
         node.setPort(port);
         node.setGroup(groupName);
-        node.setEventTime(System.currentTimeMillis());
+        node.setEventTime(clock.currentTimeMillis());
         node.setStatus(currentStatus);
+        node.setDiscoveryPort(discoveryPort);
+        node.setAttributes(localAttributes);
         return node;
     }
 
@@ -422,7 +1623,18 @@ public class NetworkDiscoveryAgent {
         if(logger.isLoggable(level)){
             logger.log(level, String.format("received message was [%s]", message));
         }
-        graph.receiveMessage(message, options.isConsiderPeerProfiles());
+        //-- a datagram already in flight when the agent is stopped is discarded
+        NetworkGraph graph = this.graph;
+        if(graph != null){
+            graph.receiveMessage(message, options.isConsiderPeerProfiles());
+            if(options.isConsiderPeerProfiles() && message.getDigests() != null &&
+                    graph.receiveDigests(message.getDigests())){
+                requestPeerRefresh = true;
+            }
+            if(message.isRefreshRequested()){
+                peerRefreshRequested = true;
+            }
+        }
     }
 
     protected void validateOptions(NetworkDiscoveryOptions options){
@@ -431,44 +1643,56 @@ public class NetworkDiscoveryAgent {
                 throw new IllegalArgumentException("when using encryption a secret must be set");
             }
         }
+        if(options.getBroadcastJitterPercent() < 0 || options.getBroadcastJitterPercent() >= 100){
+            throw new IllegalArgumentException("broadcast jitter must be at least 0 and less than 100 percent");
+        }
+        if(options.getBroadcastPacketsPerSecondBudget() < 0){
+            throw new IllegalArgumentException("broadcast packets per second budget must not be negative");
+        }
+        if(options.getTombstoneRetentionMillis() < 0){
+            throw new IllegalArgumentException("tombstone retention must not be negative");
+        }
+        if(options.getTransport() != null && options.getDiscoveryRuntime() != null){
+            throw new IllegalArgumentException("an agent sending through a transport cannot share a discovery runtime");
+        }
+        if(options.getMaxDatagramSize() < getMinDatagramSize()){
+            throw new IllegalArgumentException("max datagram size is too small to carry a fragment");
+        }
+        if(options.getTransportMode() == TransportMode.GOSSIP){
+            if(options.getGossipFanout() <= 0){
+                throw new IllegalArgumentException("when using gossip the fanout must be greater than 0");
+            }
+            if(!options.isBroadcastPeerProfiles() || !options.isConsiderPeerProfiles()){
+                throw new IllegalArgumentException("gossip relies on peer profiles being broadcast and considered");
+            }
+        }
     }
 
-    protected boolean validApplicationTraffic(byte[] arr){
-        if(arr.length < 5) return false;
-        if(arr[0] != '$') return false;
-        if(arr[1] != '-') return false;
-        String trafficGroup = readTrafficGroup(arr);
-        return this.trafficGroup.equals(trafficGroup);
+    /**
+     * @return - the largest datagram sent; the configured maximum, reduced to the read buffer size so the agent
+     * reads what it sends, though never below the size of the smallest fragment
+     */
+    private int getMaxDatagramSize(){
+        return Math.max(getMinDatagramSize(), Math.min(options.getMaxDatagramSize(), options.getReadBufferSize()));
     }
 
-    protected byte[] generateHeader(){
-        return String.format(HEADER, trafficGroup).getBytes(StandardCharsets.UTF_8);
+    private int getMinDatagramSize(){
+        return header.length() + Frame.FLAGS_LENGTH + Frame.FRAGMENT_HEADER_LENGTH + Frame.MIN_FRAGMENT_PAYLOAD;
     }
 
-    protected byte[] removeHeader(byte[] arr, int length){
-        int i = 2;
-        for (; i < length; i++){
-            byte b = arr[i];
-            if((b == '-') && (arr[i+1] == '$')){
-                i++;
-                break;
-            }
-        }
-        byte[] data = new byte[length - (i + 1)];
-        System.arraycopy(arr, i+1, data, 0, data.length);
-        return data;
+    protected boolean validApplicationTraffic(ByteBuffer buffer){
+        return header.matches(buffer);
     }
 
-    protected String readTrafficGroup(byte[] arr){
-        StringBuilder sb = new StringBuilder();
-        for (int i = 2; i < arr.length; i++){
-            byte b = arr[i];
-            if((b == '-')){
-                break;
-            }
-            sb.append((char) arr[i]);
-        }
-        return sb.toString();
+    protected byte[] generateHeader(){
+        return header.toByteArray();
+    }
+
+    /**
+     * Advance the position of the buffer beyond the header, leaving the payload between the position and limit.
+     */
+    protected void removeHeader(ByteBuffer buffer){
+        header.skip(buffer);
     }
 
     public static String toBinary(byte... b) {
@@ -490,4 +1714,23 @@ public class NetworkDiscoveryAgent {
         }
         return true;
     }
+
+    /**
+     * The buffers a broadcast is encoded, compressed, encrypted and fragmented into, reused from round to round
+     * and replaced by larger buffers when a message outgrows them.
+     */
+    private static final class BroadcastBuffers {
+
+        private ByteBuffer buffer;
+        private ByteBuffer encrypted;
+        private ByteBuffer compressed;
+        private final ByteBuffer fragment;
+
+        private BroadcastBuffers(int writeBufferSize, int maxDatagramSize){
+            this.buffer = ByteBuffer.allocate(writeBufferSize);
+            this.encrypted = ByteBuffer.allocate(writeBufferSize * 2);
+            this.compressed = ByteBuffer.allocate(writeBufferSize);
+            this.fragment = ByteBuffer.allocate(maxDatagramSize);
+        }
+    }
 }
\ No newline at end of file
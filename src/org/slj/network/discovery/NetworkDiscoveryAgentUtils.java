@@ -39,9 +39,23 @@ import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NetworkDiscoveryAgentUtils {
 
+    private static final ThreadLocal<byte[]> STRING_SCRATCH = ThreadLocal.withInitial(() -> new byte[256]);
+    //-- bounded, as the static helpers may be called with any number of secrets over the life of a process
+    private static final int AES_KEY_CACHE_SIZE = 16;
+    private static final Map<String, SecretKeySpec> AES_KEYS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Cipher> AES_ECB_CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/ECB/PKCS5Padding");
+        } catch(NoSuchAlgorithmException | NoSuchPaddingException e){
+            throw new IllegalStateException("AES/ECB/PKCS5Padding unavailable", e);
+        }
+    });
+
     public static ByteBuffer wrap(byte[] arr){
         return wrap(arr, arr.length);
     }
@@ -56,6 +70,128 @@ public class NetworkDiscoveryAgentUtils {
         return arr;
     }
 
+    public static void writeVarInt(ByteBuffer buffer, int value){
+        while((value & ~0x7F) != 0){
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static int readVarInt(ByteBuffer buffer){
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7){
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    public static void writeVarLong(ByteBuffer buffer, long value){
+        while((value & ~0x7FL) != 0){
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static long readVarLong(ByteBuffer buffer){
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7){
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varlong");
+    }
+
+    /**
+     * Write a length prefixed UTF-8 string directly into the buffer without an intermediary byte array.
+     * The length is written as a varint of (byte length + 1) so a <null> string is represented by a single 0 byte.
+     * Unpaired surrogates are written as '?', consistent with {@link String#getBytes(java.nio.charset.Charset)}.
+     */
+    public static void writeString(ByteBuffer buffer, String s){
+        if(s == null){
+            buffer.put((byte) 0);
+            return;
+        }
+        int length = s.length();
+        writeVarInt(buffer, utf8Length(s) + 1);
+        for (int i = 0; i < length; i++){
+            char c = s.charAt(i);
+            if(c < 0x80){
+                buffer.put((byte) c);
+            } else if(c < 0x800){
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if(Character.isSurrogate(c)){
+                if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))){
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buffer.put((byte) (0xF0 | (cp >> 18)));
+                    buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (cp & 0x3F)));
+                } else {
+                    buffer.put((byte) '?');
+                }
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Read a string written by {@link #writeString(ByteBuffer, String)}.
+     */
+    public static String readString(ByteBuffer buffer){
+        int length = readVarInt(buffer) - 1;
+        if(length < 0) return null;
+        if(length > buffer.remaining()){
+            throw new IllegalArgumentException("string length exceeds buffer ["+length+"]");
+        }
+        String s;
+        if(buffer.hasArray()){
+            s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] arr = STRING_SCRATCH.get();
+            if(arr.length < length){
+                arr = new byte[Math.max(length, arr.length * 2)];
+                STRING_SCRATCH.set(arr);
+            }
+            buffer.get(arr, 0, length);
+            s = new String(arr, 0, length, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+    public static int utf8Length(String s){
+        int length = s.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++){
+            char c = s.charAt(i);
+            if(c < 0x80) bytes++;
+            else if(c < 0x800) bytes += 2;
+            else if(Character.isSurrogate(c)){
+                if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))){
+                    bytes += 4;
+                    i++;
+                } else {
+                    bytes++;
+                }
+            }
+            else bytes += 3;
+        }
+        return bytes;
+    }
+
     public static InetAddress deriveSourceFromNetworkInterface(String address, int port) throws IOException {
         try (Socket socket = new Socket()){
             socket.setSoTimeout(1000);
@@ -64,7 +200,26 @@ public class NetworkDiscoveryAgentUtils {
         }
     }
 
-    private static SecretKeySpec AES_generateKey(String keyStr) throws NoSuchAlgorithmException {
+    /**
+     * Derive the AES key from the secret, keys of the most recently used secrets are cached so the digest is
+     * only computed once.
+     */
+    public static SecretKeySpec AES_generateKey(String keyStr) throws NoSuchAlgorithmException {
+        SecretKeySpec spec = AES_KEYS.get(keyStr);
+        if(spec == null){
+            spec = AES_deriveKey(keyStr);
+            if(AES_KEYS.size() >= AES_KEY_CACHE_SIZE){
+                AES_KEYS.clear();
+            }
+            AES_KEYS.putIfAbsent(keyStr, spec);
+        }
+        return spec;
+    }
+
+    /**
+     * Derive the AES key from the secret without caching it, for callers which hold the key themselves.
+     */
+    public static SecretKeySpec AES_deriveKey(String keyStr) throws NoSuchAlgorithmException {
         byte[] key = keyStr.getBytes(StandardCharsets.UTF_8);
         MessageDigest sha = MessageDigest.getInstance("SHA-1");
         key = sha.digest(key);
@@ -75,7 +230,7 @@ public class NetworkDiscoveryAgentUtils {
     public static byte[] AES_encrypt(String secret, byte[] data)
             throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
         SecretKeySpec s = AES_generateKey(secret);
-        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        Cipher cipher = AES_ECB_CIPHER.get();
         cipher.init(Cipher.ENCRYPT_MODE, s);
         return cipher.doFinal(data);
     }
@@ -83,7 +238,7 @@ public class NetworkDiscoveryAgentUtils {
     public static byte[] AES_decrypt(String secret, byte[] data)
             throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
         SecretKeySpec s = AES_generateKey(secret);
-        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        Cipher cipher = AES_ECB_CIPHER.get();
         cipher.init(Cipher.DECRYPT_MODE, s);
         return cipher.doFinal(data);
     }
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encrypts and decrypts message bodies on behalf of an agent. The key is derived once from the secret and
+ * {@link Cipher} instances are held per thread, so the cost per packet is the cipher operation alone.
+ *
+ * When using {@link EncryptionMode#AES_GCM} each payload is prefixed with its 12 byte nonce, made up of a
+ * random 4 byte salt and an 8 byte counter. The counter of each instance starts from a random value, so the
+ * nonces of every agent and restart sharing a key are drawn from the whole 96 bit space rather than only the
+ * salt, and an instance never reuses a nonce.
+ */
+public class PayloadCipher {
+
+    static final int GCM_NONCE_LENGTH = 12;
+    static final int GCM_TAG_LENGTH = 16;
+    static final int AES_BLOCK_LENGTH = 16;
+
+    private final EncryptionMode mode;
+    private final SecretKeySpec key;
+    private final int salt;
+    private final AtomicLong counter;
+    private final ThreadLocal<CipherPair> ciphers;
+
+    public PayloadCipher(EncryptionMode mode, String secret) throws NetworkDiscoveryException {
+        if(mode == null) throw new IllegalArgumentException("encryption mode must not be <null>");
+        if(secret == null) throw new IllegalArgumentException("encryption secret must not be <null>");
+        try {
+            this.mode = mode;
+            //-- the key is held by the instance, so is not cached by the utilities
+            this.key = NetworkDiscoveryAgentUtils.AES_deriveKey(secret);
+            SecureRandom random = new SecureRandom();
+            this.salt = random.nextInt();
+            this.counter = new AtomicLong(random.nextLong());
+            //-- fail fast if the platform does not support the transformation
+            newCipher();
+            this.ciphers = ThreadLocal.withInitial(CipherPair::new);
+        } catch(GeneralSecurityException e){
+            throw new NetworkDiscoveryException("unable to initialise cipher", e);
+        }
+    }
+
+    public EncryptionMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return - the maximum number of bytes encryption may add to a payload
+     */
+    public int getMaxOverhead(){
+        return mode == EncryptionMode.AES_GCM ?
+                GCM_NONCE_LENGTH + GCM_TAG_LENGTH : AES_BLOCK_LENGTH;
+    }
+
+    /**
+     * Encrypt the bytes between the position and limit of the input, writing the result at the position of the output.
+     * On return the input is consumed and the position of the output is after the last byte written.
+     */
+    public void encrypt(ByteBuffer input, ByteBuffer output) throws NetworkDiscoveryException {
+        try {
+            CipherPair pair = ciphers.get();
+            if(mode == EncryptionMode.AES_GCM){
+                byte[] nonce = pair.nonce;
+                long count = counter.getAndIncrement();
+                nonce[0] = (byte) (salt >>> 24);
+                nonce[1] = (byte) (salt >>> 16);
+                nonce[2] = (byte) (salt >>> 8);
+                nonce[3] = (byte) salt;
+                for (int i = 0; i < 8; i++){
+                    nonce[4 + i] = (byte) (count >>> (56 - (i * 8)));
+                }
+                pair.encrypt.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH * 8, nonce));
+                output.put(nonce);
+            }
+            pair.encrypt.doFinal(input, output);
+        } catch(GeneralSecurityException e){
+            ciphers.remove();
+            throw new NetworkDiscoveryException("unable to encrypt payload", e);
+        }
+    }
+
+    /**
+     * Decrypt the payload between the position and limit of the buffer in place. On return the plain text
+     * occupies the buffer from its original position to its new limit.
+     */
+    public void decrypt(ByteBuffer buffer) throws NetworkDiscoveryException {
+        try {
+            CipherPair pair = ciphers.get();
+            int start = buffer.position();
+            if(mode == EncryptionMode.AES_GCM){
+                if(buffer.remaining() < GCM_NONCE_LENGTH + GCM_TAG_LENGTH){
+                    throw new NetworkDiscoveryException("payload too short for AES_GCM");
+                }
+                buffer.get(pair.nonce);
+                pair.decrypt.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH * 8, pair.nonce));
+            }
+            //-- cipher operations on byte buffers are copy-safe, so the output may share the input's memory
+            ByteBuffer output = buffer.duplicate();
+            output.limit(output.capacity());
+            output.position(start);
+            pair.decrypt.doFinal(buffer, output);
+            buffer.limit(output.position());
+            buffer.position(start);
+        } catch(GeneralSecurityException e){
+            //-- discard the ciphers rather than relying on their state after a failure
+            ciphers.remove();
+            throw new NetworkDiscoveryException("unable to decrypt payload", e);
+        }
+    }
+
+    private Cipher newCipher() throws GeneralSecurityException {
+        return Cipher.getInstance(mode == EncryptionMode.AES_GCM ?
+                "AES/GCM/NoPadding" : "AES/ECB/PKCS5Padding");
+    }
+
+    private class CipherPair {
+
+        private final Cipher encrypt;
+        private final Cipher decrypt;
+        private final byte[] nonce = new byte[GCM_NONCE_LENGTH];
+
+        private CipherPair() {
+            try {
+                encrypt = newCipher();
+                decrypt = newCipher();
+                //-- ECB is initialised once and reset by each doFinal, GCM requires a fresh nonce per init
+                if(mode == EncryptionMode.AES_ECB){
+                    encrypt.init(Cipher.ENCRYPT_MODE, key);
+                    decrypt.init(Cipher.DECRYPT_MODE, key);
+                }
+            } catch(GeneralSecurityException e){
+                throw new IllegalStateException("unable to initialise cipher", e);
+            }
+        }
+    }
+}
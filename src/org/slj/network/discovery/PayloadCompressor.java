@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.slj.network.discovery.NetworkDiscoveryAgentUtils.readVarInt;
+import static org.slj.network.discovery.NetworkDiscoveryAgentUtils.writeVarInt;
+
+/**
+ * Compresses message bodies on behalf of an agent using deflate with a preset dictionary. Peer lists repeat the
+ * same names, groups and address prefixes over and over, and seeding the compressor with them means even
+ * a short message compresses well. {@link Deflater} and {@link Inflater} instances are held per thread.
+ *
+ * The dictionary is built from common address prefixes, the configured prefixes and the traffic group, so every
+ * agent of a traffic group must be configured with the same prefixes; a message compressed with a different
+ * dictionary is rejected rather than misread.
+ *
+ * Compressed payload;
+ * [uncompressedLength:varint][deflate stream]
+ */
+public class PayloadCompressor {
+
+    static final String[] COMMON_PREFIXES = {
+            "127.0.0.1", "172.16.", "192.168.", "10.0.", "10." };
+
+    private final byte[] dictionary;
+    private final int dictionaryId;
+    private final int level;
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters;
+    private final ThreadLocal<byte[]> scratch = new ThreadLocal<>();
+
+    public PayloadCompressor(String trafficGroup, List<String> prefixes, int level){
+        if(level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION){
+            throw new IllegalArgumentException("invalid compression level ["+level+"]");
+        }
+        this.dictionary = createDictionary(trafficGroup, prefixes);
+        Adler32 adler = new Adler32();
+        adler.update(dictionary, 0, dictionary.length);
+        //-- the id deflate records in the stream header for the dictionary it was compressed with
+        this.dictionaryId = (int) adler.getValue();
+        this.level = level;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(this.level));
+        this.inflaters = ThreadLocal.withInitial(Inflater::new);
+    }
+
+    /**
+     * The strings most likely to match are placed last, where deflate can reach them with the shortest distances.
+     */
+    static byte[] createDictionary(String trafficGroup, List<String> prefixes){
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (String prefix : COMMON_PREFIXES){
+            byte[] b = prefix.getBytes(StandardCharsets.UTF_8);
+            baos.write(b, 0, b.length);
+        }
+        if(prefixes != null){
+            for (String prefix : prefixes){
+                byte[] b = prefix.getBytes(StandardCharsets.UTF_8);
+                baos.write(b, 0, b.length);
+            }
+        }
+        if(trafficGroup != null){
+            byte[] b = trafficGroup.getBytes(StandardCharsets.UTF_8);
+            baos.write(b, 0, b.length);
+        }
+        return baos.toByteArray();
+    }
+
+    public int getDictionaryLength(){
+        return dictionary.length;
+    }
+
+    /**
+     * Compress the bytes between the position and limit of the input, which must be backed by an array, writing
+     * the compressed payload at the position of the output. Compression is abandoned if the result would not be
+     * smaller than the input.
+     * @return - true if the compressed payload was written, in which case the input is consumed and the output
+     * positioned after the last byte written; false leaves both buffers as they were
+     */
+    public boolean compress(ByteBuffer input, ByteBuffer output){
+        int length = input.remaining();
+        int start = output.position();
+        int header = varIntLength(length);
+        int available = Math.min(output.remaining(), length) - header;
+        if(available <= 0) return false;
+        Deflater deflater = deflaters.get();
+        try {
+            deflater.setDictionary(dictionary);
+            deflater.setInput(input.array(), input.arrayOffset() + input.position(), length);
+            deflater.finish();
+            int offset = output.arrayOffset() + start + header;
+            int written = 0;
+            while(!deflater.finished() && written < available){
+                written += deflater.deflate(output.array(), offset + written, available - written);
+            }
+            if(!deflater.finished()){
+                return false;
+            }
+            writeVarInt(output, length);
+            output.position(start + header + written);
+            input.position(input.limit());
+            return true;
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    /**
+     * Decompress the payload between the position and limit of the buffer.
+     * @param maxLength - the largest uncompressed payload accepted
+     * @return - a buffer holding the uncompressed payload, which is reused by the calling thread and so only
+     * valid until its next call
+     */
+    public ByteBuffer decompress(ByteBuffer buffer, int maxLength) throws NetworkDiscoveryException {
+        int length;
+        try {
+            length = readVarInt(buffer);
+        } catch(BufferUnderflowException | IllegalArgumentException e){
+            throw new NetworkDiscoveryException("malformed compressed payload", e);
+        }
+        if(length < 0 || length > maxLength){
+            throw new NetworkDiscoveryException("compressed payload of ["+length+"] bytes exceeds the maximum");
+        }
+        byte[] out = scratch.get();
+        if(out == null || out.length < length){
+            out = new byte[Math.max(length, 2048)];
+            scratch.set(out);
+        }
+        Inflater inflater = inflaters.get();
+        try {
+            if(buffer.hasArray()){
+                inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                byte[] in = new byte[buffer.remaining()];
+                buffer.duplicate().get(in);
+                inflater.setInput(in);
+            }
+            int read = 0;
+            while(read < length){
+                int n = inflater.inflate(out, read, length - read);
+                if(n == 0){
+                    if(inflater.needsDictionary()){
+                        if(inflater.getAdler() != dictionaryId){
+                            throw new NetworkDiscoveryException("payload was compressed with a different dictionary");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if(inflater.finished() || inflater.needsInput()){
+                        break;
+                    }
+                }
+                read += n;
+            }
+            if(read != length || !inflater.finished()){
+                throw new NetworkDiscoveryException("compressed payload did not match its length");
+            }
+            buffer.position(buffer.limit());
+            return ByteBuffer.wrap(out, 0, length);
+        } catch(DataFormatException e){
+            inflaters.remove();
+            throw new NetworkDiscoveryException("unable to decompress payload", e);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    private static int varIntLength(int value){
+        int length = 1;
+        while((value & ~0x7F) != 0){
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery;
+
+/**
+ * How the agent addresses its datagrams to the other members of the traffic group.
+ */
+public enum TransportMode {
+
+    /**
+     * Datagrams are sent to the broadcast address of each local interface, the original mode. Every host on the
+     * segment receives the traffic, whether or not it runs an agent, and it does not cross routers.
+     */
+    BROADCAST,
+
+    /**
+     * Datagrams are sent to an IP multicast group which the agent joins on the selected interfaces. Hosts which
+     * have not joined the group filter the traffic in their network card, and it crosses routed segments where
+     * multicast routing is enabled.
+     */
+    MULTICAST,
+
+    /**
+     * Each agent is started with a list of seed agents and every interval sends its state, and that of the peers
+     * it knows, to a small random selection of the agents it knows. Requires neither broadcast nor multicast,
+     * so it works on cloud networks; membership spreads in a number of rounds logarithmic in the cluster size
+     * while each agent sends a fixed number of datagrams per round.
+     */
+    GOSSIP
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.codec;
+
+import org.slj.network.discovery.NetworkDiscoveryException;
+import org.slj.network.discovery.model.NodeAttributes;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.slj.network.discovery.NetworkDiscoveryAgentUtils.*;
+
+/**
+ * Compact binary encoding of {@link NodeAttributes}. Keys are written once per message (or file); the first
+ * occurrence of a key is written in full and added to the key table of the message, later occurrences refer to
+ * it by its index in the table, so a key shared by every node costs a byte or so per node.
+ *
+ * Attributes;
+ * [count:varint][attribute]*
+ *
+ * Attribute;
+ * [keyRef << 3 | type:varint][key:string, only when keyRef is 0][value]
+ *
+ * keyRef is 0 for a new key, otherwise the index of the key in the table + 1. Int and long values are zigzag
+ * varints, strings are length prefixed UTF-8 and tags have no value.
+ */
+public final class AttributeCodec {
+
+    private AttributeCodec(){
+    }
+
+    /**
+     * @param keys - the key table of the message, keys written are appended to it
+     */
+    public static void write(ByteBuffer buffer, NodeAttributes attributes, List<String> keys){
+        int size = attributes.size();
+        writeVarInt(buffer, size);
+        for (int i = 0; i < size; i++){
+            String key = attributes.getKey(i);
+            byte type = attributes.getType(i);
+            int ref = indexOf(keys, key) + 1;
+            writeVarInt(buffer, ref << 3 | type);
+            if(ref == 0){
+                writeString(buffer, key);
+                keys.add(key);
+            }
+            switch(type){
+                case NodeAttributes.INT:
+                    writeVarInt(buffer, zigzag((int) attributes.getNumber(i)));
+                    break;
+                case NodeAttributes.LONG:
+                    writeVarLong(buffer, zigzag(attributes.getNumber(i)));
+                    break;
+                case NodeAttributes.STRING:
+                    writeString(buffer, attributes.getString(i));
+                    break;
+                default: break;
+            }
+        }
+    }
+
+    /**
+     * @param keys - the key table of the message, keys read are appended to it
+     */
+    public static NodeAttributes read(ByteBuffer buffer, List<String> keys) throws NetworkDiscoveryException {
+        int size = readVarInt(buffer);
+        if(size == 0) return NodeAttributes.EMPTY;
+        if(size < 0 || size > NodeAttributes.MAX_ATTRIBUTES){
+            throw new NetworkDiscoveryException("invalid attribute count ["+size+"]");
+        }
+        NodeAttributes.Builder builder = NodeAttributes.builder();
+        for (int i = 0; i < size; i++){
+            int header = readVarInt(buffer);
+            int ref = header >>> 3;
+            String key;
+            if(ref == 0){
+                key = readString(buffer);
+                if(key == null){
+                    throw new NetworkDiscoveryException("malformed attribute, <null> key");
+                }
+                key = NodeAttributes.intern(key);
+                keys.add(key);
+            } else if(ref <= keys.size()){
+                key = keys.get(ref - 1);
+            } else {
+                throw new NetworkDiscoveryException("invalid attribute key reference ["+ref+"]");
+            }
+            switch(header & 0x07){
+                case NodeAttributes.INT:
+                    builder.withInt(key, unzigzag(readVarInt(buffer)));
+                    break;
+                case NodeAttributes.LONG:
+                    builder.withLong(key, unzigzag(readVarLong(buffer)));
+                    break;
+                case NodeAttributes.STRING:
+                    String value = readString(buffer);
+                    if(value == null){
+                        throw new NetworkDiscoveryException("malformed attribute, <null> value for ["+key+"]");
+                    }
+                    builder.withString(key, value);
+                    break;
+                case NodeAttributes.TAG:
+                    builder.withTag(key);
+                    break;
+                default:
+                    throw new NetworkDiscoveryException("unsupported attribute type ["+(header & 0x07)+"]");
+            }
+        }
+        return builder.build();
+    }
+
+    private static int indexOf(List<String> keys, String key){
+        //-- keys are interned, so identity finds them, equality covers keys which could not be
+        for (int i = 0; i < keys.size(); i++){
+            String k = keys.get(i);
+            if(k == key || k.equals(key)) return i;
+        }
+        return -1;
+    }
+
+    static int zigzag(int value){
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static long zigzag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static int unzigzag(int value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long unzigzag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.codec;
+
+import org.slj.network.discovery.NetworkDiscoveryException;
+import org.slj.network.discovery.model.BroadcastMessage;
+import org.slj.network.discovery.model.NetworkNode;
+import org.slj.network.discovery.model.NodeDigest;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.slj.network.discovery.NetworkDiscoveryAgentUtils.*;
+
+/**
+ * Compact, hand written binary wire format. All integers are unsigned varints and all strings are
+ * length prefixed UTF-8 (the length being encoded as length + 1 so that 0 can represent null).
+ *
+ * Message;
+ * [version:byte][status:byte][node][peerCount:varint][peer node]*
+ *
+ * Node (version 1);
+ * [name:string][group:string][status:byte][address:string][port:varint][eventTime:varlong]
+ *
+ * Node (version 2);
+ * [name:string][group:string][status:byte][address:string][port:varint][eventTime:varlong][discoveryPort:varint]
+ *
+ * Node (version 3);
+ * [name:string][group:string][status:byte][address:string][port:varint][eventTime:varlong][discoveryPort:varint][attributes]
+ *
+ * The attributes are encoded by {@link AttributeCodec}, with one key table shared by every node of the message.
+ *
+ * Trailer (any version, optional);
+ * [flags:byte][digestCount:varint][name:string][eventTime:varlong][version:int]*
+ *
+ * The trailer carries the liveness digests of the message and whether the sender requests a refresh of the full
+ * peer profiles. The event time of a digest is written zigzag encoded relative to that of the node of the message,
+ * which it is typically a few seconds behind. It is written only when there is something to carry and follows the peers, where agents which
+ * predate it stop reading.
+ *
+ * The lowest version able to carry the message is written, version 3 only when a node carries attributes and
+ * version 2 only when a node carries a discovery port, so agents not using those features remain readable by
+ * older agents.
+ *
+ * The codec holds no state and is safe to share between threads.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+    public static final byte VERSION = 3;
+
+    static final byte VERSION_1 = 1;
+    static final byte VERSION_2 = 2;
+
+    static final byte REFRESH_REQUESTED = 0x01;
+
+    @Override
+    public void encode(BroadcastMessage message, ByteBuffer buffer) throws NetworkDiscoveryException {
+        if(message.getNode() == null){
+            throw new NetworkDiscoveryException("unable to encode message with <null> node");
+        }
+        List<NetworkNode> peers = message.getPeers();
+        int size = peers == null ? 0 : peers.size();
+        byte version = version(message.getNode());
+        for (int i = 0; i < size && version != VERSION; i++){
+            version = (byte) Math.max(version, version(peers.get(i)));
+        }
+        List<String> keys = version == VERSION ? new ArrayList<>() : null;
+        buffer.put(version);
+        buffer.put(message.getStatus());
+        writeNode(message.getNode(), buffer, version, keys);
+        writeVarInt(buffer, size);
+        for (int i = 0; i < size; i++){
+            writeNode(peers.get(i), buffer, version, keys);
+        }
+        List<NodeDigest> digests = message.getDigests();
+        int digestCount = digests == null ? 0 : digests.size();
+        if(digestCount > 0 || message.isRefreshRequested()){
+            buffer.put(message.isRefreshRequested() ? REFRESH_REQUESTED : 0);
+            writeVarInt(buffer, digestCount);
+            for (int i = 0; i < digestCount; i++){
+                NodeDigest digest = digests.get(i);
+                long behind = message.getNode().getEventTime() - digest.getEventTime();
+                writeString(buffer, digest.getName());
+                writeVarLong(buffer, (behind << 1) ^ (behind >> 63));
+                buffer.putInt(digest.getVersion());
+            }
+        }
+    }
+
+    @Override
+    public BroadcastMessage decode(ByteBuffer buffer) throws NetworkDiscoveryException {
+        try {
+            byte version = buffer.get();
+            if(version != VERSION && version != VERSION_2 && version != VERSION_1){
+                throw new NetworkDiscoveryException("unsupported message version ["+version+"]");
+            }
+            List<String> keys = version == VERSION ? new ArrayList<>() : null;
+            BroadcastMessage message = new BroadcastMessage();
+            message.setStatus(buffer.get());
+            message.setHost(readNode(buffer, version, keys));
+            int size = readVarInt(buffer);
+            if(size > 0){
+                //-- every node is at least 5 bytes, dont trust the count beyond what the buffer could hold
+                if(size > buffer.remaining() / 5){
+                    throw new NetworkDiscoveryException("invalid peer count ["+size+"]");
+                }
+                List<NetworkNode> peers = new ArrayList<>(size);
+                for (int i = 0; i < size; i++){
+                    peers.add(readNode(buffer, version, keys));
+                }
+                message.setPeers(peers);
+            }
+            if(buffer.hasRemaining()){
+                readTrailer(buffer, message);
+            }
+            return message;
+        } catch(BufferUnderflowException | IllegalArgumentException e){
+            throw new NetworkDiscoveryException("malformed message", e);
+        }
+    }
+
+    private static void readTrailer(ByteBuffer buffer, BroadcastMessage message) throws NetworkDiscoveryException {
+        message.setRefreshRequested((buffer.get() & REFRESH_REQUESTED) != 0);
+        int size = readVarInt(buffer);
+        if(size > 0){
+            //-- every digest is at least 6 bytes, dont trust the count beyond what the buffer could hold
+            if(size > buffer.remaining() / 6){
+                throw new NetworkDiscoveryException("invalid digest count ["+size+"]");
+            }
+            List<NodeDigest> digests = new ArrayList<>(size);
+            for (int i = 0; i < size; i++){
+                String name = readString(buffer);
+                if(name == null){
+                    throw new NetworkDiscoveryException("malformed digest, <null> name");
+                }
+                long behind = readVarLong(buffer);
+                behind = (behind >>> 1) ^ -(behind & 1);
+                digests.add(new NodeDigest(name, message.getNode().getEventTime() - behind, buffer.getInt()));
+            }
+            message.setDigests(digests);
+        }
+    }
+
+    private static byte version(NetworkNode node){
+        if(!node.getAttributes().isEmpty()) return VERSION;
+        return node.getDiscoveryPort() != 0 ? VERSION_2 : VERSION_1;
+    }
+
+    protected void writeNode(NetworkNode node, ByteBuffer buffer, byte version, List<String> keys){
+        writeString(buffer, node.getName());
+        writeString(buffer, node.getGroup());
+        buffer.put((byte) node.getStatus());
+        writeString(buffer, node.getAddress());
+        writeVarInt(buffer, node.getPort());
+        writeVarLong(buffer, node.getEventTime());
+        if(version >= VERSION_2){
+            writeVarInt(buffer, node.getDiscoveryPort());
+        }
+        if(version >= VERSION){
+            AttributeCodec.write(buffer, node.getAttributes(), keys);
+        }
+    }
+
+    protected NetworkNode readNode(ByteBuffer buffer, byte version, List<String> keys) throws NetworkDiscoveryException {
+        NetworkNode node = new NetworkNode();
+        String name = readString(buffer);
+        if(name == null){
+            throw new NetworkDiscoveryException("malformed node, <null> name");
+        }
+        node.setName(name);
+        node.setGroup(readString(buffer));
+        node.setStatus(buffer.get() & 0xFF);
+        node.setAddress(readString(buffer));
+        node.setPort(readVarInt(buffer));
+        node.setEventTime(readVarLong(buffer));
+        if(version >= VERSION_2){
+            node.setDiscoveryPort(readVarInt(buffer));
+        }
+        if(version >= VERSION){
+            node.setAttributes(AttributeCodec.read(buffer, keys));
+        }
+        return node;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.codec;
+
+import org.slj.network.discovery.NetworkDiscoveryException;
+import org.slj.network.discovery.model.BroadcastMessage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A codec is responsible for turning a {@link BroadcastMessage} into its wire representation and back again.
+ * Implementations MUST be thread-safe since a single instance (taken from the options) is shared by the
+ * broadcast and listener threads of an agent.
+ */
+public interface MessageCodec {
+
+    /**
+     * Write the message into the supplied buffer, starting at its current position.
+     * @param message - the message to encode
+     * @param buffer - the buffer to write into, on return its position will be after the last byte written
+     * @throws java.nio.BufferOverflowException - the buffer did not have enough space remaining for the message
+     * @throws NetworkDiscoveryException - the message could not be encoded
+     */
+    void encode(BroadcastMessage message, ByteBuffer buffer) throws NetworkDiscoveryException;
+
+    /**
+     * Read a message from the supplied buffer, consuming the bytes between its position and limit.
+     * @param buffer - the buffer to read from
+     * @return - the decoded message
+     * @throws NetworkDiscoveryException - the bytes did not represent a valid message for this codec
+     */
+    BroadcastMessage decode(ByteBuffer buffer) throws NetworkDiscoveryException;
+}
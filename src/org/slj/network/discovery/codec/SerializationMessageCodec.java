@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.codec;
+
+import org.slj.network.discovery.NetworkDiscoveryAgentUtils;
+import org.slj.network.discovery.NetworkDiscoveryException;
+import org.slj.network.discovery.model.BroadcastMessage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * The original wire format, the message is written using standard java serialization. This is considerably larger
+ * and slower than the {@link BinaryMessageCodec} and is retained for interoperability with older agents.
+ */
+public class SerializationMessageCodec implements MessageCodec {
+
+    //-- the stream grows as required, sizing it to the remaining buffer would allocate the whole buffer per message
+    private static final int INITIAL_SIZE = 512;
+
+    /**
+     * @return - true if the bytes from the position of the buffer begin a java serialization stream, which no
+     * version of the {@link BinaryMessageCodec} does
+     */
+    public static boolean isSerialized(ByteBuffer buffer){
+        return buffer.remaining() >= 2 &&
+                buffer.getShort(buffer.position()) == ObjectStreamConstants.STREAM_MAGIC;
+    }
+
+    @Override
+    public void encode(BroadcastMessage message, ByteBuffer buffer) throws NetworkDiscoveryException {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream(INITIAL_SIZE)) {
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeObject(message);
+            oos.flush();
+            buffer.put(baos.toByteArray());
+        } catch(IOException e){
+            throw new NetworkDiscoveryException("unable to serialize message", e);
+        }
+    }
+
+    @Override
+    public BroadcastMessage decode(ByteBuffer buffer) throws NetworkDiscoveryException {
+        try (ByteArrayInputStream in =
+                     new ByteArrayInputStream(NetworkDiscoveryAgentUtils.drain(buffer))) {
+            ObjectInputStream is = new ObjectInputStream(in);
+            return (BroadcastMessage) is.readObject();
+        } catch(IOException | ClassNotFoundException | ClassCastException e){
+            throw new NetworkDiscoveryException("unable to deserialize message", e);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.metrics;
+
+import org.slj.network.discovery.BroadcastScheduler;
+import org.slj.network.discovery.NetworkDiscoveryAgent;
+import org.slj.network.discovery.model.GraphSnapshot;
+import org.slj.network.discovery.model.NetworkGraph;
+import org.slj.network.discovery.model.NetworkNode;
+import org.slj.network.discovery.transport.ReassemblyTable;
+import org.slj.network.discovery.transport.ReceivePipeline;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Operational metrics of a {@link NetworkDiscoveryAgent}. Every counter is a {@link LongAdder} and every
+ * histogram a {@link LatencyHistogram}, so recording never blocks and costs little more than the calls to
+ * {@link System#nanoTime()} surrounding each stage. Graph and queue figures are read on demand from the agent.
+ */
+public class AgentMetrics implements AgentMetricsMXBean {
+
+    private static final int[] STATUSES = {
+            NetworkNode.HEALTHY, NetworkNode.UNHEALTHY, NetworkNode.SCALING_IN,
+            NetworkNode.SCALING_OUT, NetworkNode.SUSPECT };
+    private static final int ANY_STATUS = -1;
+
+    private final NetworkDiscoveryAgent agent;
+
+    private final LongAdder packetsReceived = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder packetsRejected = new LongAdder();
+    private final LongAdder packetsSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder decryptFailures = new LongAdder();
+    private final LongAdder decodeFailures = new LongAdder();
+    private final LongAdder broadcastFailures = new LongAdder();
+    private final LongAdder messagesFragmented = new LongAdder();
+    private final LongAdder messagesCompressed = new LongAdder();
+    private final LongAdder compressionSkipped = new LongAdder();
+    private final LongAdder bytesBeforeCompression = new LongAdder();
+    private final LongAdder bytesAfterCompression = new LongAdder();
+    private final LongAdder fragmentsSent = new LongAdder();
+
+    private final LatencyHistogram receiveLatency = new LatencyHistogram();
+    private final LatencyHistogram decryptLatency = new LatencyHistogram();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    private final LatencyHistogram applyLatency = new LatencyHistogram();
+    private final LatencyHistogram broadcastLatency = new LatencyHistogram();
+
+    public AgentMetrics(NetworkDiscoveryAgent agent) {
+        this.agent = agent;
+    }
+
+    //-- recording
+
+    public void packetReceived(int bytes){
+        packetsReceived.increment();
+        bytesReceived.add(bytes);
+    }
+
+    public void packetRejected(){
+        packetsRejected.increment();
+    }
+
+    public void packetSent(int bytes){
+        packetsSent.increment();
+        bytesSent.add(bytes);
+    }
+
+    public void messageFragmented(int fragments){
+        messagesFragmented.increment();
+        fragmentsSent.add(fragments);
+    }
+
+    public void messageCompressed(int before, int after){
+        messagesCompressed.increment();
+        bytesBeforeCompression.add(before);
+        bytesAfterCompression.add(after);
+    }
+
+    public void compressionSkipped(){
+        compressionSkipped.increment();
+    }
+
+    public void decryptFailed(){
+        decryptFailures.increment();
+    }
+
+    public void decodeFailed(){
+        decodeFailures.increment();
+    }
+
+    public void broadcastFailed(){
+        broadcastFailures.increment();
+    }
+
+    public LatencyHistogram getReceiveLatency() {
+        return receiveLatency;
+    }
+
+    public LatencyHistogram getDecryptLatency() {
+        return decryptLatency;
+    }
+
+    public LatencyHistogram getDecodeLatency() {
+        return decodeLatency;
+    }
+
+    public LatencyHistogram getApplyLatency() {
+        return applyLatency;
+    }
+
+    public LatencyHistogram getBroadcastLatency() {
+        return broadcastLatency;
+    }
+
+    //-- management interface
+
+    @Override
+    public long getPacketsReceived() {
+        return packetsReceived.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getPacketsRejected() {
+        return packetsRejected.sum();
+    }
+
+    @Override
+    public long getPacketsSent() {
+        return packetsSent.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getDecryptFailures() {
+        return decryptFailures.sum();
+    }
+
+    @Override
+    public long getDecodeFailures() {
+        return decodeFailures.sum();
+    }
+
+    @Override
+    public long getBroadcastFailures() {
+        return broadcastFailures.sum();
+    }
+
+    @Override
+    public long getMessagesCompressed() {
+        return messagesCompressed.sum();
+    }
+
+    @Override
+    public long getCompressionSkipped() {
+        return compressionSkipped.sum();
+    }
+
+    @Override
+    public long getBytesBeforeCompression() {
+        return bytesBeforeCompression.sum();
+    }
+
+    @Override
+    public long getBytesAfterCompression() {
+        return bytesAfterCompression.sum();
+    }
+
+    @Override
+    public long getMessagesFragmented() {
+        return messagesFragmented.sum();
+    }
+
+    @Override
+    public long getFragmentsSent() {
+        return fragmentsSent.sum();
+    }
+
+    @Override
+    public long getMessagesReassembled() {
+        ReassemblyTable reassembly = agent.getReassemblyTable();
+        return reassembly == null ? 0 : reassembly.getReassembledCount();
+    }
+
+    @Override
+    public long getReassemblyDropped() {
+        ReassemblyTable reassembly = agent.getReassemblyTable();
+        return reassembly == null ? 0 : reassembly.getDroppedCount();
+    }
+
+    @Override
+    public long getReceiveQueueDropped() {
+        ReceivePipeline pipeline = agent.getReceivePipeline();
+        return pipeline == null ? 0 : pipeline.getDroppedCount();
+    }
+
+    @Override
+    public int getReceiveQueueDepth() {
+        ReceivePipeline pipeline = agent.getReceivePipeline();
+        return pipeline == null ? 0 : pipeline.getQueueDepth();
+    }
+
+    @Override
+    public long[] getReceiveLatencyHistogram() {
+        return receiveLatency.getCounts();
+    }
+
+    @Override
+    public long getReceiveLatencyP99Nanos() {
+        return receiveLatency.getPercentile(99);
+    }
+
+    @Override
+    public long[] getDecryptLatencyHistogram() {
+        return decryptLatency.getCounts();
+    }
+
+    @Override
+    public long getDecryptLatencyP99Nanos() {
+        return decryptLatency.getPercentile(99);
+    }
+
+    @Override
+    public long[] getDecodeLatencyHistogram() {
+        return decodeLatency.getCounts();
+    }
+
+    @Override
+    public long getDecodeLatencyP99Nanos() {
+        return decodeLatency.getPercentile(99);
+    }
+
+    @Override
+    public long[] getApplyLatencyHistogram() {
+        return applyLatency.getCounts();
+    }
+
+    @Override
+    public long getApplyLatencyP99Nanos() {
+        return applyLatency.getPercentile(99);
+    }
+
+    @Override
+    public long[] getBroadcastLatencyHistogram() {
+        return broadcastLatency.getCounts();
+    }
+
+    @Override
+    public long getBroadcastLatencyP99Nanos() {
+        return broadcastLatency.getPercentile(99);
+    }
+
+    @Override
+    public int getGraphSize() {
+        NetworkGraph graph = agent.getCurrentNetwork();
+        return graph == null ? 0 : graph.getSnapshot().size();
+    }
+
+    @Override
+    public long getBroadcastIntervalMillis() {
+        BroadcastScheduler scheduler = agent.getBroadcastScheduler();
+        return scheduler == null ? 0 : scheduler.getIntervalMillis();
+    }
+
+    @Override
+    public Map<String, Integer> getGraphSizeByGroup() {
+        NetworkGraph graph = agent.getCurrentNetwork();
+        if(graph == null) return Collections.emptyMap();
+        GraphSnapshot snapshot = graph.getSnapshot();
+        Map<String, Integer> sizes = new TreeMap<>();
+        for (String group : snapshot.getGroupNames()){
+            sizes.put(String.valueOf(group), size(snapshot, group, ANY_STATUS));
+        }
+        return sizes;
+    }
+
+    @Override
+    public Map<String, Integer> getGraphSizeByGroupAndStatus() {
+        NetworkGraph graph = agent.getCurrentNetwork();
+        if(graph == null) return Collections.emptyMap();
+        GraphSnapshot snapshot = graph.getSnapshot();
+        Map<String, Integer> sizes = new TreeMap<>();
+        for (String group : snapshot.getGroupNames()){
+            for (int status : STATUSES){
+                int size = size(snapshot, group, status);
+                if(size > 0){
+                    sizes.put(group + "/" + NetworkNode.statusToString(status), size);
+                }
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * @param status - the status of the nodes to count, or {@link #ANY_STATUS}
+     */
+    private static int size(GraphSnapshot snapshot, String group, int status){
+        if(group != null){
+            return status == ANY_STATUS ? snapshot.getNodes(group, true).size() :
+                    snapshot.getNodes(group, status, true).size();
+        }
+        //-- a <null> group queries every group, so the nodes without a group are counted individually
+        int size = 0;
+        for (NetworkNode node : snapshot.getNodes(null, true)){
+            if(node.getGroup() == null && (status == ANY_STATUS || node.getStatus() == status)) size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link AgentMetrics}. Counters are cumulative from when the agent was created,
+ * latency histograms are reported as bucket counts where bucket i counts durations between 2^i and 2^(i+1)
+ * nanoseconds, alongside an approximate 99th percentile.
+ */
+public interface AgentMetricsMXBean {
+
+    long getPacketsReceived();
+
+    long getBytesReceived();
+
+    /**
+     * @return - datagrams received which did not carry the header of this traffic group
+     */
+    long getPacketsRejected();
+
+    long getPacketsSent();
+
+    long getBytesSent();
+
+    long getDecryptFailures();
+
+    long getDecodeFailures();
+
+    long getBroadcastFailures();
+
+    long getMessagesCompressed();
+
+    /**
+     * @return - messages sent uncompressed because compression did not make them smaller
+     */
+    long getCompressionSkipped();
+
+    long getBytesBeforeCompression();
+
+    long getBytesAfterCompression();
+
+    /**
+     * @return - messages sent as more than one datagram
+     */
+    long getMessagesFragmented();
+
+    long getFragmentsSent();
+
+    long getMessagesReassembled();
+
+    /**
+     * @return - fragmented messages discarded before every fragment was received
+     */
+    long getReassemblyDropped();
+
+    /**
+     * @return - datagrams dropped because the receive queue of a worker was full
+     */
+    long getReceiveQueueDropped();
+
+    int getReceiveQueueDepth();
+
+    long[] getReceiveLatencyHistogram();
+
+    long getReceiveLatencyP99Nanos();
+
+    long[] getDecryptLatencyHistogram();
+
+    long getDecryptLatencyP99Nanos();
+
+    long[] getDecodeLatencyHistogram();
+
+    long getDecodeLatencyP99Nanos();
+
+    long[] getApplyLatencyHistogram();
+
+    long getApplyLatencyP99Nanos();
+
+    long[] getBroadcastLatencyHistogram();
+
+    long getBroadcastLatencyP99Nanos();
+
+    int getGraphSize();
+
+    /**
+     * @return - the current interval between broadcasts, which grows with the cluster under a packets per second budget
+     */
+    long getBroadcastIntervalMillis();
+
+    /**
+     * @return - the number of nodes keyed by group name
+     */
+    Map<String, Integer> getGraphSizeByGroup();
+
+    /**
+     * @return - the number of nodes keyed by group name and status, as group/STATUS
+     */
+    Map<String, Integer> getGraphSizeByGroupAndStatus();
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in nanoseconds with power of two buckets, bucket i counting the durations
+ * in the range [2^i, 2^(i+1)). Recording is a single atomic increment so it is safe to call from any number
+ * of threads on the hot path; the resolution is a factor of two, which is ample for spotting regressions and
+ * saturation.
+ */
+public final class LatencyHistogram {
+
+    public static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos){
+        buckets.incrementAndGet(bucket(nanos));
+    }
+
+    /**
+     * @return - a copy of the bucket counts
+     */
+    public long[] getCounts(){
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++){
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    public long getCount(){
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++){
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile - between 0 and 100
+     * @return - the upper bound in nanoseconds of the bucket containing the percentile, or 0 if nothing is recorded
+     */
+    public long getPercentile(double percentile){
+        long[] counts = getCounts();
+        long total = 0;
+        for (long c : counts) total += c;
+        if(total == 0) return 0;
+        long rank = (long) Math.ceil(total * Math.min(100d, Math.max(0d, percentile)) / 100d);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++){
+            seen += counts[i];
+            if(seen >= rank && counts[i] > 0){
+                return i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    static int bucket(long nanos){
+        return 63 - Long.numberOfLeadingZeros(Math.max(1, nanos));
+    }
+}
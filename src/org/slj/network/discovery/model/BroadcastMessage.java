@@ -39,6 +39,8 @@ public class BroadcastMessage implements Serializable {
     private byte status;
     private NetworkNode node;
     private List<NetworkNode> peers;
+    private List<NodeDigest> digests;
+    private boolean refreshRequested;
 
     public BroadcastMessage() {
     }
@@ -63,6 +65,29 @@ public class BroadcastMessage implements Serializable {
         this.peers = peers;
     }
 
+    /**
+     * @return - the liveness digests of the peers whose profiles are not in this message, or <null>
+     */
+    public List<NodeDigest> getDigests() {
+        return digests;
+    }
+
+    public void setDigests(List<NodeDigest> digests) {
+        this.digests = digests;
+    }
+
+    /**
+     * @return - true if the sender holds state it could not reconcile from the digests it received, and asks the
+     * agents hearing it to send their full peer profiles
+     */
+    public boolean isRefreshRequested() {
+        return refreshRequested;
+    }
+
+    public void setRefreshRequested(boolean refreshRequested) {
+        this.refreshRequested = refreshRequested;
+    }
+
     public byte getStatus() {
         return status;
     }
@@ -84,6 +109,8 @@ public class BroadcastMessage implements Serializable {
                 "status=" + statusToString(status) +
                 ", node=" + node +
                 ", peers=" + peers +
+                ", digests=" + digests +
+                ", refreshRequested=" + refreshRequested +
                 '}';
     }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+import org.slj.network.discovery.DiscoveryClock;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Detects nodes which have stopped broadcasting without sending a DEATH. A node not heard from (directly, or via
+ * a peer profile with a newer event time) for the suspect period is marked {@link NetworkNode#SUSPECT} and, if it
+ * is still not heard from by the evict period, it is removed from the graph.
+ *
+ * Heartbeats only record the local time a node was last seen, the deadlines are held in a {@link TimingWheel}
+ * and re-evaluated lazily as they fall due, so the cost per tick is independent of the number of nodes tracked.
+ * Heartbeats may arrive on any thread; {@link #tick(long)} must only be called from a single thread.
+ */
+public class FailureDetector {
+
+    static final int ACTIVE = 0, SUSPECTED = 1;
+
+    private final NetworkGraph graph;
+    private volatile long suspectAfterMillis;
+    private volatile long evictAfterMillis;
+    private final TimingWheel wheel;
+    private final Map<String, Tracked> tracked = new ConcurrentHashMap<>();
+    private final Queue<Tracked> added = new ConcurrentLinkedQueue<>();
+    private final TimingWheel.ExpiryHandler handler = (timeout, now) -> expired((Tracked) timeout, now);
+    private long lastPrune;
+
+    /**
+     * Create a detector and attach it to the graph.
+     * @param suspectAfterMillis - the period without a heartbeat after which a node is suspected
+     * @param evictAfterMillis - the period without a heartbeat after which a node is removed
+     * @param tickMillis - the resolution of the detector
+     */
+    public FailureDetector(NetworkGraph graph, long suspectAfterMillis, long evictAfterMillis, long tickMillis){
+        this(graph, suspectAfterMillis, evictAfterMillis, tickMillis, DiscoveryClock.SYSTEM.monotonicTimeMillis());
+    }
+
+    /**
+     * @param now - the monotonic time of the graph's clock from which the detector is ticked
+     */
+    public FailureDetector(NetworkGraph graph, long suspectAfterMillis, long evictAfterMillis, long tickMillis, long now){
+        if(evictAfterMillis < suspectAfterMillis){
+            throw new IllegalArgumentException("evict period must not be less than the suspect period");
+        }
+        this.graph = graph;
+        this.suspectAfterMillis = suspectAfterMillis;
+        this.evictAfterMillis = evictAfterMillis;
+        this.wheel = new TimingWheel(tickMillis, now);
+        this.lastPrune = now;
+        graph.setEvictAfterMillis(evictAfterMillis);
+        graph.setFailureDetector(this);
+    }
+
+    /**
+     * Change the suspect and evict periods, for example when the broadcast interval adapts to the size of the
+     * cluster. Deadlines already scheduled are re-evaluated against the new periods as they fall due.
+     */
+    public void setPeriods(long suspectAfterMillis, long evictAfterMillis){
+        if(evictAfterMillis < suspectAfterMillis){
+            throw new IllegalArgumentException("evict period must not be less than the suspect period");
+        }
+        this.suspectAfterMillis = suspectAfterMillis;
+        this.evictAfterMillis = evictAfterMillis;
+        graph.setEvictAfterMillis(evictAfterMillis);
+    }
+
+    public long getSuspectAfterMillis(){
+        return suspectAfterMillis;
+    }
+
+    public long getEvictAfterMillis(){
+        return evictAfterMillis;
+    }
+
+    public long getTickMillis(){
+        return wheel.getTickMillis();
+    }
+
+    /**
+     * @return - the number of nodes currently being tracked
+     */
+    public int size(){
+        return tracked.size();
+    }
+
+    /**
+     * Called by the graph when a node's event time advances.
+     */
+    void heartbeat(String name, long eventTime, long now){
+        Tracked t = tracked.get(name);
+        if(t == null){
+            t = new Tracked(name);
+            t.lastSeen = now;
+            t.eventTime = eventTime;
+            if(tracked.putIfAbsent(name, t) == null){
+                added.offer(t);
+            }
+            return;
+        }
+        t.lastSeen = now;
+        t.eventTime = eventTime;
+    }
+
+    /**
+     * Called by the graph when a node leaves of its own accord.
+     */
+    void remove(String name){
+        Tracked t = tracked.remove(name);
+        if(t != null) t.cancelled = true;
+    }
+
+    /**
+     * Advance the detector to the supplied time, suspecting and evicting any nodes whose deadline has passed.
+     * @param now - the {@link DiscoveryClock#monotonicTimeMillis()} of the graph's clock, against which heartbeats
+     *            are recorded, so stepping the system clock does not move the deadlines
+     */
+    public void tick(long now){
+        Tracked t;
+        while((t = added.poll()) != null){
+            if(t.cancelled) continue;
+            t.deadline = t.lastSeen + suspectAfterMillis;
+            wheel.schedule(t);
+        }
+        wheel.advance(now, handler);
+        if(now - lastPrune >= evictAfterMillis){
+            graph.pruneTombstones(now - evictAfterMillis);
+            lastPrune = now;
+        }
+    }
+
+    private void expired(Tracked t, long now){
+        if(t.cancelled) return;
+        long silence = now - t.lastSeen;
+        if(silence < suspectAfterMillis){
+            t.state = ACTIVE;
+            t.deadline = t.lastSeen + suspectAfterMillis;
+        } else if(silence < evictAfterMillis){
+            if(t.state == ACTIVE){
+                graph.suspect(t.name, t.eventTime);
+                t.state = SUSPECTED;
+            }
+            t.deadline = t.lastSeen + evictAfterMillis;
+        } else {
+            if(graph.evict(t.name, t.eventTime, now)){
+                tracked.remove(t.name, t);
+                return;
+            }
+            //-- the graph holds a newer event than we have seen, reassess on the next period
+            t.state = ACTIVE;
+            t.deadline = now + suspectAfterMillis;
+        }
+        wheel.schedule(t);
+    }
+
+    private static class Tracked extends TimingWheel.Timeout {
+
+        private final String name;
+        private volatile long lastSeen;
+        private volatile long eventTime;
+        private volatile boolean cancelled = false;
+        private int state = ACTIVE;
+
+        private Tracked(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+import org.slj.network.discovery.NetworkDiscoveryException;
+import org.slj.network.discovery.codec.AttributeCodec;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static org.slj.network.discovery.NetworkDiscoveryAgentUtils.*;
+
+/**
+ * Periodically saves the nodes of a {@link NetworkGraph} to a file and restores them when an agent
+ * starts, so a restarted process knows the network immediately rather than after its first broadcast interval.
+ *
+ * Restored nodes are provisional ({@link NetworkNode#isProvisional()}) until live traffic confirms them, and any
+ * not confirmed within the provisional period are removed. The local node, suspect nodes and nodes which are
+ * still provisional are not saved, so an unconfirmed node does not survive repeated restarts.
+ *
+ * File;
+ * [magic:int][version:byte][length:int][count:varint][node]*[crc32:int]
+ *
+ * Node;
+ * [name:string][group:string][status:byte][address:string][port:varint][eventTime:varlong][discoveryPort:varint][attributes]
+ *
+ * The attributes are encoded by {@link AttributeCodec}, with one key table for the file. Version 1 files, which
+ * predate attributes, are still read.
+ *
+ * The file is written to a temporary file alongside it and moved into place, and the checksum covers everything
+ * before it, so a checkpoint interrupted part way through is never read. Neither file is memory-mapped, as a
+ * live mapping prevents the file being replaced on some platforms.
+ */
+public class GraphCheckpoint {
+
+    static final int MAGIC = 0x4E444743;
+    static final byte VERSION = 2;
+    static final byte VERSION_1 = 1;
+    static final int HEADER_LENGTH = 9;
+
+    private final Logger logger = Logger.getLogger(GraphCheckpoint.class.getName());
+    private final NetworkGraph graph;
+    private final Path file;
+    private final long provisionalMillis;
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+    private long writtenVersion = -1;
+    private long restoredAt = -1;
+
+    /**
+     * @param provisionalMillis - the period after restoring within which a node must be confirmed by live traffic
+     */
+    public GraphCheckpoint(NetworkGraph graph, Path file, long provisionalMillis){
+        this.graph = graph;
+        this.file = file;
+        this.provisionalMillis = provisionalMillis;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Restore the nodes of the checkpoint file, if there is one, into the graph as provisional nodes.
+     * @return - the number of nodes restored
+     */
+    public int restore(long now) throws NetworkDiscoveryException {
+        if(!Files.exists(file)) return 0;
+        List<NetworkNode> nodes = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            long size = channel.size();
+            if(size < HEADER_LENGTH + 4 || size > Integer.MAX_VALUE){
+                throw new NetworkDiscoveryException("checkpoint file has an invalid size ["+size+"]");
+            }
+            ByteBuffer data = ByteBuffer.allocate((int) size);
+            while(data.hasRemaining()){
+                if(channel.read(data) < 0){
+                    throw new NetworkDiscoveryException("checkpoint file is truncated");
+                }
+            }
+            data.flip();
+            if(data.getInt() != MAGIC){
+                throw new NetworkDiscoveryException("file is not a checkpoint");
+            }
+            byte version = data.get();
+            if(version != VERSION && version != VERSION_1){
+                throw new NetworkDiscoveryException("unsupported checkpoint version ["+version+"]");
+            }
+            int length = data.getInt();
+            if(length < HEADER_LENGTH || length > size - 4){
+                throw new NetworkDiscoveryException("checkpoint file is truncated");
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer content = data.duplicate();
+            content.position(0);
+            content.limit(length);
+            crc.update(content);
+            if((int) crc.getValue() != data.getInt(length)){
+                throw new NetworkDiscoveryException("checkpoint file failed its checksum");
+            }
+            data.limit(length);
+            int count = readVarInt(data);
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < count; i++){
+                nodes.add(readNode(data, version, keys));
+            }
+        } catch(IOException | BufferUnderflowException | IllegalArgumentException e){
+            throw new NetworkDiscoveryException("unable to read checkpoint " + file, e);
+        }
+        restoredAt = now;
+        int restored = graph.restore(nodes);
+        if(logger.isLoggable(Level.FINE)){
+            logger.log(Level.FINE, String.format("restored [%s] of [%s] nodes from checkpoint [%s]",
+                    restored, nodes.size(), file));
+        }
+        return restored;
+    }
+
+    /**
+     * Save the graph if it has changed since the last checkpoint, and remove restored nodes which have not been
+     * confirmed within the provisional period.
+     */
+    public void tick(long now) throws NetworkDiscoveryException {
+        if(restoredAt >= 0 && now - restoredAt >= provisionalMillis){
+            restoredAt = -1;
+            int expired = graph.expireProvisional();
+            if(expired > 0 && logger.isLoggable(Level.FINE)){
+                logger.log(Level.FINE, String.format("expired [%s] unconfirmed nodes restored from checkpoint", expired));
+            }
+        }
+        write();
+    }
+
+    /**
+     * Save the graph if it has changed since the last checkpoint.
+     * @return - true if a checkpoint was written
+     */
+    public boolean write() throws NetworkDiscoveryException {
+        GraphSnapshot snapshot = graph.getSnapshot();
+        if(snapshot.getVersion() == writtenVersion) return false;
+        ByteBuffer content = encode(snapshot);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+                while(content.hasRemaining()){
+                    channel.write(content);
+                }
+                channel.force(false);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException e){
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch(IOException e){
+            throw new NetworkDiscoveryException("unable to write checkpoint " + file, e);
+        }
+        writtenVersion = snapshot.getVersion();
+        return true;
+    }
+
+    private ByteBuffer encode(GraphSnapshot snapshot){
+        while(true){
+            try {
+                buffer.clear();
+                buffer.putInt(MAGIC);
+                buffer.put(VERSION);
+                buffer.putInt(0);
+                int count = 0;
+                for (Map<String, NetworkNode> shard : snapshot.getShards()){
+                    for (NetworkNode node : shard.values()){
+                        if(include(snapshot, node)) count++;
+                    }
+                }
+                writeVarInt(buffer, count);
+                List<String> keys = new ArrayList<>();
+                for (Map<String, NetworkNode> shard : snapshot.getShards()){
+                    for (NetworkNode node : shard.values()){
+                        if(include(snapshot, node)) writeNode(node, keys);
+                    }
+                }
+                int length = buffer.position();
+                buffer.putInt(5, length);
+                CRC32 crc = new CRC32();
+                ByteBuffer content = buffer.duplicate();
+                content.flip();
+                crc.update(content);
+                buffer.putInt((int) crc.getValue());
+                buffer.flip();
+                return buffer;
+            } catch(BufferOverflowException e){
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    private static boolean include(GraphSnapshot snapshot, NetworkNode node){
+        return node.getStatus() != NetworkNode.SUSPECT && !node.isProvisional() &&
+                !node.getName().equals(snapshot.getLocalHost());
+    }
+
+    private void writeNode(NetworkNode node, List<String> keys){
+        writeString(buffer, node.getName());
+        writeString(buffer, node.getGroup());
+        buffer.put((byte) node.getStatus());
+        writeString(buffer, node.getAddress());
+        writeVarInt(buffer, node.getPort());
+        writeVarLong(buffer, node.getEventTime());
+        writeVarInt(buffer, node.getDiscoveryPort());
+        AttributeCodec.write(buffer, node.getAttributes(), keys);
+    }
+
+    private static NetworkNode readNode(ByteBuffer buffer, byte version, List<String> keys) throws NetworkDiscoveryException {
+        NetworkNode node = new NetworkNode();
+        String name = readString(buffer);
+        if(name == null){
+            throw new NetworkDiscoveryException("malformed checkpoint, node with <null> name");
+        }
+        node.setName(name);
+        node.setGroup(readString(buffer));
+        node.setStatus(buffer.get() & 0xFF);
+        node.setAddress(readString(buffer));
+        node.setPort(readVarInt(buffer));
+        node.setEventTime(readVarLong(buffer));
+        node.setDiscoveryPort(readVarInt(buffer));
+        if(version >= VERSION){
+            node.setAttributes(AttributeCodec.read(buffer, keys));
+        }
+        return node;
+    }
+}
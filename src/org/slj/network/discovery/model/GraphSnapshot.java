@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+import java.util.*;
+
+/**
+ * An immutable, consistent view of a {@link NetworkGraph} at a point in time. Snapshots are published by the
+ * graph on every change and can be read from any number of threads without locking. The lists returned for a
+ * single group are shared by all readers of the snapshot and are never copied; queries spanning all groups
+ * assemble their result from the per group lists. A heartbeat which only advances the event time of a node is
+ * written to the node in place, so the event time of a node is always its most recent and every other change
+ * publishes a new snapshot.
+ */
+public final class GraphSnapshot {
+
+    static final int SHARDS = 64;
+
+    private static final Map<String, NetworkNode> EMPTY_SHARD = Collections.emptyMap();
+
+    private final long version;
+    private final String localHost;
+    private final Map<String, NetworkNode>[] shards;
+    private final int size;
+    private final Map<String, List<NetworkNode>> groups;
+    private final Map<String, Map<Integer, List<NetworkNode>>> statuses;
+    private final Map<String, Map<String, Map<String, List<NetworkNode>>>> attributes;
+
+    //-- the lists containing the local node, without it, so excluding self does not require a copy
+    private final List<NetworkNode> groupExcludingSelf;
+    private final List<NetworkNode> statusExcludingSelf;
+
+    GraphSnapshot(long version, String localHost, Map<String, NetworkNode>[] shards, int size,
+                  Map<String, List<NetworkNode>> groups, Map<String, Map<Integer, List<NetworkNode>>> statuses,
+                  Map<String, Map<String, Map<String, List<NetworkNode>>>> attributes,
+                  List<NetworkNode> groupExcludingSelf, List<NetworkNode> statusExcludingSelf) {
+        this.version = version;
+        this.localHost = localHost;
+        this.shards = shards;
+        this.size = size;
+        this.groups = groups;
+        this.statuses = statuses;
+        this.attributes = attributes;
+        this.groupExcludingSelf = groupExcludingSelf;
+        this.statusExcludingSelf = statusExcludingSelf;
+    }
+
+    static GraphSnapshot empty(String localHost){
+        //-- a generic array cannot be created directly, every element is a Map<String, NetworkNode>
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Map<String, NetworkNode>[] shards = new Map[SHARDS];
+        Arrays.fill(shards, EMPTY_SHARD);
+        return new GraphSnapshot(0, localHost, shards, 0,
+                Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), null, null);
+    }
+
+    static int shard(String name){
+        int h = name.hashCode();
+        return (h ^ (h >>> 16)) & (SHARDS - 1);
+    }
+
+    /**
+     * @return - the version of the graph this snapshot represents, which increases with every published change
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public NetworkNode getNode(String name){
+        return shards[shard(name)].get(name);
+    }
+
+    public Set<String> getGroupNames(){
+        return groups.keySet();
+    }
+
+    /**
+     * @param groupName - the group to return, or <null> for all groups
+     */
+    public List<NetworkNode> getNodes(String groupName, boolean includeSelf){
+        if(groupName == null){
+            List<NetworkNode> l = new ArrayList<>(size);
+            for (String group : groups.keySet()){
+                l.addAll(nodesInGroup(group, includeSelf));
+            }
+            return Collections.unmodifiableList(l);
+        }
+        return nodesInGroup(groupName, includeSelf);
+    }
+
+    /**
+     * @param groupName - the group to return, or <null> for all groups
+     */
+    public List<NetworkNode> getNodes(String groupName, int status, boolean includeSelf){
+        if(groupName == null){
+            List<NetworkNode> l = new ArrayList<>();
+            for (String group : statuses.keySet()){
+                l.addAll(nodesInGroup(group, status, includeSelf));
+            }
+            return Collections.unmodifiableList(l);
+        }
+        return nodesInGroup(groupName, status, includeSelf);
+    }
+
+    public List<NetworkNode> getHealthyNodes(String groupName, boolean includeSelf){
+        return getNodes(groupName, NetworkNode.HEALTHY, includeSelf);
+    }
+
+    /**
+     * Return the nodes with the given status which have the string attribute with the value, or the tag when the
+     * value is <null>.
+     * @param groupName - the group to return, or <null> for all groups
+     */
+    public List<NetworkNode> getNodesByAttribute(String groupName, int status, String key, String value, boolean includeSelf){
+        if(groupName == null){
+            List<NetworkNode> l = new ArrayList<>();
+            for (String group : attributes.keySet()){
+                l.addAll(nodesWithAttribute(group, status, key, value, includeSelf));
+            }
+            return Collections.unmodifiableList(l);
+        }
+        return nodesWithAttribute(groupName, status, key, value, includeSelf);
+    }
+
+    String getLocalHost() {
+        return localHost;
+    }
+
+    Map<String, NetworkNode>[] getShards() {
+        return shards;
+    }
+
+    Map<String, List<NetworkNode>> getGroups() {
+        return groups;
+    }
+
+    Map<String, Map<Integer, List<NetworkNode>>> getStatuses() {
+        return statuses;
+    }
+
+    Map<String, Map<String, Map<String, List<NetworkNode>>>> getAttributes() {
+        return attributes;
+    }
+
+    List<NetworkNode> getGroupExcludingSelf() {
+        return groupExcludingSelf;
+    }
+
+    List<NetworkNode> getStatusExcludingSelf() {
+        return statusExcludingSelf;
+    }
+
+    private List<NetworkNode> nodesInGroup(String groupName, boolean includeSelf){
+        List<NetworkNode> l = groups.get(groupName);
+        if(l == null) return Collections.emptyList();
+        if(!includeSelf && groupExcludingSelf != null){
+            NetworkNode self = getNode(localHost);
+            if(Objects.equals(groupName, self.getGroup())) return groupExcludingSelf;
+        }
+        return l;
+    }
+
+    private List<NetworkNode> nodesInGroup(String groupName, int status, boolean includeSelf){
+        Map<Integer, List<NetworkNode>> byStatus = statuses.get(groupName);
+        List<NetworkNode> l = byStatus == null ? null : byStatus.get(status);
+        if(l == null) return Collections.emptyList();
+        if(!includeSelf && statusExcludingSelf != null){
+            NetworkNode self = getNode(localHost);
+            if(self.getStatus() == status && Objects.equals(groupName, self.getGroup())) return statusExcludingSelf;
+        }
+        return l;
+    }
+
+    private List<NetworkNode> nodesWithAttribute(String groupName, int status, String key, String value, boolean includeSelf){
+        Map<String, Map<String, List<NetworkNode>>> byKey = attributes.get(groupName);
+        Map<String, List<NetworkNode>> byValue = byKey == null ? null : byKey.get(key);
+        List<NetworkNode> nodes = byValue == null ? null : byValue.get(value);
+        if(nodes == null) return Collections.emptyList();
+        List<NetworkNode> l = new ArrayList<>(nodes.size());
+        for (NetworkNode node : nodes){
+            if(node.getStatus() != status) continue;
+            if(!includeSelf && node.getName().equals(localHost)) continue;
+            l.add(node);
+        }
+        return Collections.unmodifiableList(l);
+    }
+
+    @Override
+    public String toString() {
+        return "GraphSnapshot{" +
+                "version=" + version +
+                ", size=" + size +
+                ", groups=" + groups.keySet() +
+                '}';
+    }
+}
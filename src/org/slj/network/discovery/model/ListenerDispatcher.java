@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects membership changes recorded by the graph writer and delivers them to listeners on an executor.
+ * Changes to the same node recorded before the pending batch is delivered are coalesced into the net change,
+ * except that a node which left and joined again is reported as having left and then joined.
+ */
+class ListenerDispatcher {
+
+    private final Logger logger = Logger.getLogger(ListenerDispatcher.class.getName());
+    private final List<NetworkGraphListener> listeners = new CopyOnWriteArrayList<>();
+    private final Object lock = new Object();
+    private final Runnable drain = this::drain;
+    private volatile Executor executor = Runnable::run;
+    private volatile boolean closed = false;
+
+    //-- name -> pending change, guarded by lock
+    private Map<String, Change> pending = new LinkedHashMap<>();
+    private boolean scheduled = false;
+
+    void addListener(NetworkGraphListener listener){
+        listeners.add(listener);
+    }
+
+    void removeListener(NetworkGraphListener listener){
+        listeners.remove(listener);
+    }
+
+    boolean hasListeners(){
+        return !listeners.isEmpty();
+    }
+
+    void setExecutor(Executor executor){
+        this.executor = executor == null ? Runnable::run : executor;
+    }
+
+    /**
+     * Stop recording and scheduling changes, a delivery already scheduled still runs.
+     */
+    void close(){
+        closed = true;
+        synchronized (lock){
+            if(!scheduled) pending.clear();
+        }
+    }
+
+    void record(NetworkNode oldNode, NetworkNode newNode){
+        if(closed) return;
+        String name = newNode != null ? newNode.getName() : oldNode.getName();
+        synchronized (lock){
+            Change change = pending.get(name);
+            if(change == null){
+                pending.put(name, new Change(oldNode, newNode));
+            } else {
+                change.latest = newNode;
+                if(newNode == null) change.left = true;
+            }
+        }
+    }
+
+    /**
+     * Schedule delivery of any pending changes, if a delivery is not already scheduled.
+     */
+    void schedule(){
+        if(closed) return;
+        synchronized (lock){
+            if(scheduled || pending.isEmpty()) return;
+            scheduled = true;
+        }
+        Executor executor = this.executor;
+        try {
+            executor.execute(drain);
+        } catch(RejectedExecutionException e){
+            synchronized (lock){
+                scheduled = false;
+            }
+            //-- a change racing the agent stopping finds the executor shut down, which is expected
+            if(closed || executor instanceof ExecutorService && ((ExecutorService) executor).isShutdown()){
+                synchronized (lock){
+                    pending.clear();
+                }
+                if(logger.isLoggable(Level.FINE)){
+                    logger.log(Level.FINE, "listener executor shut down, event delivery dropped");
+                }
+            } else {
+                logger.log(Level.WARNING, "listener executor rejected event delivery", e);
+            }
+        }
+    }
+
+    private void drain(){
+        while(true){
+            Map<String, Change> batch;
+            synchronized (lock){
+                if(pending.isEmpty()){
+                    scheduled = false;
+                    return;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+            }
+            for (Change change : batch.values()){
+                if(change.left && change.delivered != null && change.latest != null){
+                    //-- the node left and joined again within the batch, which listeners must see as two events
+                    deliver(new NetworkGraphEvent(NetworkGraphEvent.NODE_LEFT, change.delivered, null));
+                    deliver(new NetworkGraphEvent(NetworkGraphEvent.NODE_JOINED, null, change.latest));
+                } else {
+                    deliver(toEvent(change.delivered, change.latest));
+                }
+            }
+        }
+    }
+
+    private void deliver(NetworkGraphEvent event){
+        if(event == null) return;
+        for (NetworkGraphListener listener : listeners){
+            try {
+                listener.onEvent(event);
+            } catch(Throwable e){
+                logger.log(Level.SEVERE, "listener threw an error handling event;", e);
+            }
+        }
+    }
+
+    private static NetworkGraphEvent toEvent(NetworkNode oldNode, NetworkNode newNode){
+        if(oldNode == null && newNode == null) return null;
+        if(oldNode == null) return new NetworkGraphEvent(NetworkGraphEvent.NODE_JOINED, null, newNode);
+        if(newNode == null) return new NetworkGraphEvent(NetworkGraphEvent.NODE_LEFT, oldNode, null);
+        if(oldNode.getStatus() != newNode.getStatus()){
+            return new NetworkGraphEvent(NetworkGraphEvent.STATUS_CHANGED, oldNode, newNode);
+        }
+        return null;
+    }
+
+    private static final class Change {
+
+        //-- the state listeners last observed, and the latest state
+        private final NetworkNode delivered;
+        private NetworkNode latest;
+        //-- true if the node left at any point since the state last observed
+        private boolean left;
+
+        private Change(NetworkNode delivered, NetworkNode latest) {
+            this.delivered = delivered;
+            this.latest = latest;
+            this.left = latest == null;
+        }
+    }
+}
@@ -24,6 +24,20 @@
 
 package org.slj.network.discovery.model;
 
+import org.slj.network.discovery.DiscoveryRuntime;
+import org.slj.network.discovery.DiscoveryScheduler;
+import org.slj.network.discovery.EncryptionMode;
+import org.slj.network.discovery.TransportMode;
+import org.slj.network.discovery.codec.BinaryMessageCodec;
+import org.slj.network.discovery.codec.MessageCodec;
+import org.slj.network.discovery.codec.SerializationMessageCodec;
+import org.slj.network.discovery.transport.Transport;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 public class NetworkDiscoveryOptions {
 
     /**
@@ -36,6 +50,82 @@ public class NetworkDiscoveryOptions {
      */
     public static int DEFAULT_BROADCAST_INTERVAL_MILLIS = 10000;
 
+    /**
+     * By default datagrams are sent to the broadcast address of each local interface
+     */
+    public static TransportMode DEFAULT_TRANSPORT_MODE = TransportMode.BROADCAST;
+
+    /**
+     * By default the multicast transport uses the administratively scoped group 239.255.25.52
+     */
+    public static String DEFAULT_MULTICAST_GROUP = "239.255.25.52";
+
+    /**
+     * By default multicast datagrams are not forwarded beyond the local segment
+     */
+    public static int DEFAULT_MULTICAST_TIME_TO_LIVE = 1;
+
+    /**
+     * By default multicast datagrams are looped back, so agents on the same host discover each other
+     */
+    public static boolean DEFAULT_MULTICAST_LOOPBACK_ENABLED = true;
+
+    /**
+     * By default each gossip round is sent to 3 agents
+     */
+    public static int DEFAULT_GOSSIP_FANOUT = 3;
+
+    /**
+     * By default messages larger than 1400 bytes are split into fragments, keeping datagrams within a typical
+     * ethernet MTU
+     */
+    public static int DEFAULT_MAX_DATAGRAM_SIZE = 1400;
+
+    /**
+     * By default fragmented messages of up to 1048576 bytes are reassembled
+     */
+    public static int DEFAULT_MAX_MESSAGE_SIZE = 1024 * 1024;
+
+    /**
+     * By default up to 64 fragmented messages may be awaiting reassembly at once
+     */
+    public static int DEFAULT_REASSEMBLY_CAPACITY = 64;
+
+    /**
+     * By default a fragmented message not complete within 5000 milliseconds is discarded
+     */
+    public static int DEFAULT_REASSEMBLY_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * By default message bodies are sent uncompressed
+     */
+    public static boolean DEFAULT_COMPRESSION_ENABLED = false;
+
+    /**
+     * By default only message bodies of 256 bytes or more are compressed
+     */
+    public static int DEFAULT_COMPRESSION_THRESHOLD = 256;
+
+    /**
+     * By default the compression level is 6, the deflate default
+     */
+    public static int DEFAULT_COMPRESSION_LEVEL = 6;
+
+    /**
+     * By default each broadcast interval varies by up to 10 percent either side, so agents drift out of phase
+     */
+    public static int DEFAULT_BROADCAST_JITTER_PERCENT = 10;
+
+    /**
+     * By default there is no packets per second budget, so the broadcast interval does not grow with the cluster
+     */
+    public static int DEFAULT_BROADCAST_PACKETS_PER_SECOND_BUDGET = 0;
+
+    /**
+     * By default the broadcast addresses of the local interfaces are rediscovered every 60000 milliseconds
+     */
+    public static int DEFAULT_BROADCAST_ADDRESS_CACHE_MILLIS = 60000;
+
     /**
      * The default datagram buffer size is 2048
      */
@@ -46,11 +136,53 @@ public class NetworkDiscoveryOptions {
      */
     public static int DEFAULT_WRITE_BUFFER_SIZE = 256;
 
+    /**
+     * By default up to 64 receive buffers will be pooled, raised when receive workers are configured to cover
+     * their queues
+     */
+    public static int DEFAULT_RECEIVE_BUFFER_POOL_SIZE = 64;
+
+    /**
+     * By default a single worker thread will decrypt, decode and apply received messages
+     */
+    public static int DEFAULT_RECEIVE_WORKER_THREADS = 1;
+
+    /**
+     * By default each receive worker will queue up to 256 datagrams
+     */
+    public static int DEFAULT_RECEIVE_QUEUE_CAPACITY = 256;
+
+    /**
+     * By default datagrams will be dropped (and counted) when a receive worker queue is full
+     */
+    public static boolean DEFAULT_RECEIVE_QUEUE_BLOCKING_ENABLED = false;
+
+    /**
+     * By default the operating system default socket receive buffer size is used
+     */
+    public static int DEFAULT_SOCKET_RECEIVE_BUFFER_SIZE = 0;
+
+    /**
+     * By default the listener will use a blocking receive rather than a selector
+     */
+    public static boolean DEFAULT_RECEIVE_SELECTOR_ENABLED = false;
+
     /**
      * By default broadcast will include peer details
      */
     public static boolean DEFAULT_BROADCAST_PEER_PROFILES = true;
 
+    /**
+     * By default only the peer profiles which have changed since the last broadcast will be sent
+     */
+    public static boolean DEFAULT_DELTA_PEER_PROFILES = true;
+
+    /**
+     * By default the peers not in a delta will be sent as liveness digests on every 2nd broadcast, so heartbeats
+     * relayed through peer profiles arrive within the default suspect period
+     */
+    public static int DEFAULT_PEER_PROFILE_FULL_REFRESH_INTERVAL = 2;
+
     /**
      * By default peer profiles will be considered
      */
@@ -66,6 +198,77 @@ public class NetworkDiscoveryOptions {
      */
     public static String DEFAULT_AGENT_THREAD_NAME = "network-discovery-agent";
 
+    /**
+     * By default the name of the thread delivering graph listener events is network-discovery-agent-events
+     */
+    public static String DEFAULT_LISTENER_EVENT_THREAD_NAME = "network-discovery-agent-events";
+
+    /**
+     * By default the name of the failure detector thread is network-discovery-agent-detector
+     */
+    public static String DEFAULT_DETECTOR_THREAD_NAME = "network-discovery-agent-detector";
+
+    /**
+     * By default nodes which stop broadcasting will be detected and removed
+     */
+    public static boolean DEFAULT_FAILURE_DETECTION_ENABLED = true;
+
+    /**
+     * By default a node is marked SUSPECT after 3 broadcast intervals without being heard from
+     */
+    public static int DEFAULT_SUSPECT_AFTER_MISSED_INTERVALS = 3;
+
+    /**
+     * By default a node is removed after 6 broadcast intervals without being heard from
+     */
+    public static int DEFAULT_EVICT_AFTER_MISSED_INTERVALS = 6;
+
+    /**
+     * By default the tombstone of a node which has left is kept for 60 seconds, or for the evict period when that
+     * is longer
+     */
+    public static long DEFAULT_TOMBSTONE_RETENTION_MILLIS = 60000;
+
+    /**
+     * By default the failure detector ticks every 100 milliseconds
+     */
+    public static int DEFAULT_FAILURE_DETECTOR_TICK_MILLIS = 100;
+
+    /**
+     * By default the graph is not checkpointed
+     */
+    public static final String DEFAULT_CHECKPOINT_FILE = null;
+
+    /**
+     * By default the graph is checkpointed every 5000 milliseconds, when it has changed
+     */
+    public static int DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 5000;
+
+    /**
+     * By default nodes restored from a checkpoint are removed if not heard from within 3 broadcast intervals
+     */
+    public static int DEFAULT_PROVISIONAL_EXPIRY_INTERVALS = 3;
+
+    /**
+     * By default the name of the checkpoint thread is network-discovery-agent-checkpoint
+     */
+    public static String DEFAULT_CHECKPOINT_THREAD_NAME = "network-discovery-agent-checkpoint";
+
+    /**
+     * By default the agent runs on platform threads
+     */
+    public static boolean DEFAULT_VIRTUAL_THREADS_ENABLED = false;
+
+    /**
+     * By default the graph publishes a new snapshot for every update, including a PING which only advances the event time
+     */
+    public static boolean DEFAULT_COMPACT_GRAPH_ENABLED = false;
+
+    /**
+     * By default the agent metrics are registered as an MXBean with the platform MBean server
+     */
+    public static boolean DEFAULT_METRICS_MBEAN_ENABLED = true;
+
     /**
      * Network will be enabled by default
      */
@@ -101,28 +304,92 @@ public class NetworkDiscoveryOptions {
      */
     public static final String DEFAULT_ENCRYPTION_SECRET = null;
 
+    /**
+     * By default message bodies are encrypted using AES in ECB mode, for interoperability with older agents
+     */
+    public static EncryptionMode DEFAULT_ENCRYPTION_MODE = EncryptionMode.AES_ECB;
+
     /**
      * By default a node will NOT be marked healthy after the birth is broadcast, it needs to be done
      * by the application
      */
     public static final boolean DEFAULT_NODE_MARKED_HEALTHY_AFTER_BIRTH = false;
 
+    /**
+     * By default messages are written using java serialization, which agents of every version read, including
+     * those which predate framing provided the message is neither fragmented nor compressed (see
+     * {@link #withMaxDatagramSize(int)}). Agents read both this and the compact {@link BinaryMessageCodec}
+     * whichever they write, so once every agent understands the binary codec it can be enabled one agent at a time
+     */
+    public static final MessageCodec DEFAULT_MESSAGE_CODEC = new SerializationMessageCodec();
+
     boolean networkEnabled = DEFAULT_NETWORK_ENABLED;
     boolean broadcastEnabled = DEFAULT_BROADCAST_ENABLED;
     boolean broadcastPeerProfiles = DEFAULT_BROADCAST_PEER_PROFILES;
     boolean considerPeerProfiles = DEFAULT_CONSIDER_PEER_PROFILES;
+    boolean deltaPeerProfiles = DEFAULT_DELTA_PEER_PROFILES;
+    int peerProfileFullRefreshInterval = DEFAULT_PEER_PROFILE_FULL_REFRESH_INTERVAL;
     int broadcastIntervalMillis = DEFAULT_BROADCAST_INTERVAL_MILLIS;
+    int broadcastAddressCacheMillis = DEFAULT_BROADCAST_ADDRESS_CACHE_MILLIS;
+    int broadcastJitterPercent = DEFAULT_BROADCAST_JITTER_PERCENT;
+    int broadcastPacketsPerSecondBudget = DEFAULT_BROADCAST_PACKETS_PER_SECOND_BUDGET;
+    TransportMode transportMode = DEFAULT_TRANSPORT_MODE;
+    String multicastGroup = DEFAULT_MULTICAST_GROUP;
+    List<String> multicastInterfaces = Collections.emptyList();
+    int multicastTimeToLive = DEFAULT_MULTICAST_TIME_TO_LIVE;
+    boolean multicastLoopbackEnabled = DEFAULT_MULTICAST_LOOPBACK_ENABLED;
+    List<String> seeds = Collections.emptyList();
+    int gossipFanout = DEFAULT_GOSSIP_FANOUT;
     int readBufferSize = DEFAULT_READ_BUFFER_SIZE;
+    int maxDatagramSize = DEFAULT_MAX_DATAGRAM_SIZE;
+    boolean compressionEnabled = DEFAULT_COMPRESSION_ENABLED;
+    int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+    List<String> compressionDictionary = Collections.emptyList();
+    int maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+    int reassemblyCapacity = DEFAULT_REASSEMBLY_CAPACITY;
+    int reassemblyTimeoutMillis = DEFAULT_REASSEMBLY_TIMEOUT_MILLIS;
     int writeBufferSize = DEFAULT_WRITE_BUFFER_SIZE;
+    int receiveBufferPoolSize = DEFAULT_RECEIVE_BUFFER_POOL_SIZE;
+    boolean receiveSelectorEnabled = DEFAULT_RECEIVE_SELECTOR_ENABLED;
+    int receiveWorkerThreads = DEFAULT_RECEIVE_WORKER_THREADS;
+    int receiveQueueCapacity = DEFAULT_RECEIVE_QUEUE_CAPACITY;
+    boolean receiveQueueBlockingEnabled = DEFAULT_RECEIVE_QUEUE_BLOCKING_ENABLED;
+    int socketReceiveBufferSize = DEFAULT_SOCKET_RECEIVE_BUFFER_SIZE;
     String broadcastListenerThreadName = DEFAULT_LISTENER_THREAD_NAME;
     String broadcastAgentThreadName = DEFAULT_AGENT_THREAD_NAME;
+    String listenerEventThreadName = DEFAULT_LISTENER_EVENT_THREAD_NAME;
+    String detectorThreadName = DEFAULT_DETECTOR_THREAD_NAME;
+    boolean failureDetectionEnabled = DEFAULT_FAILURE_DETECTION_ENABLED;
+    int suspectAfterMissedIntervals = DEFAULT_SUSPECT_AFTER_MISSED_INTERVALS;
+    int evictAfterMissedIntervals = DEFAULT_EVICT_AFTER_MISSED_INTERVALS;
+    long tombstoneRetentionMillis = DEFAULT_TOMBSTONE_RETENTION_MILLIS;
+    int failureDetectorTickMillis = DEFAULT_FAILURE_DETECTOR_TICK_MILLIS;
+    String checkpointFile = DEFAULT_CHECKPOINT_FILE;
+    int checkpointIntervalMillis = DEFAULT_CHECKPOINT_INTERVAL_MILLIS;
+    int provisionalExpiryIntervals = DEFAULT_PROVISIONAL_EXPIRY_INTERVALS;
+    String checkpointThreadName = DEFAULT_CHECKPOINT_THREAD_NAME;
+    boolean virtualThreadsEnabled = DEFAULT_VIRTUAL_THREADS_ENABLED;
+    boolean compactGraphEnabled = DEFAULT_COMPACT_GRAPH_ENABLED;
+    boolean metricsMBeanEnabled = DEFAULT_METRICS_MBEAN_ENABLED;
+    Executor listenerExecutor = null;
+    DiscoveryRuntime discoveryRuntime = null;
+    Transport transport = null;
+    DiscoveryScheduler discoveryScheduler = null;
     int broadcastPort = DEFAULT_BROADCAST_PORT;
     String dynamicLocalEstablishmentUrl = DEFAULT_DYNAMIC_LOCAL_ESTABLISHMENT_URL;
     int dynamicLocalEstablishmentPort = DEFAULT_DYNAMIC_LOCAL_ESTABLISHMENT_PORT;
     boolean verboseLoggingEnabled = DEFAULT_VERBOSE_LOGGING_ENABLED;
     boolean encryptedEnabled = DEFAULT_ENCRYPTION_ENABLED;
     String encryptionSecret = DEFAULT_ENCRYPTION_SECRET;
+    EncryptionMode encryptionMode = DEFAULT_ENCRYPTION_MODE;
     boolean nodeMarkedHealthyAfterBirth = DEFAULT_NODE_MARKED_HEALTHY_AFTER_BIRTH;
+    MessageCodec messageCodec = DEFAULT_MESSAGE_CODEC;
+
+    public NetworkDiscoveryOptions withMessageCodec(MessageCodec messageCodec){
+        this.messageCodec = messageCodec;
+        return this;
+    }
 
     public NetworkDiscoveryOptions withNodeMarkedHealthyAfgterBirth(boolean nodeMarkedHealthyAfterBirth){
         this.nodeMarkedHealthyAfterBirth = nodeMarkedHealthyAfterBirth;
@@ -139,6 +406,11 @@ public class NetworkDiscoveryOptions {
         return this;
     }
 
+    public NetworkDiscoveryOptions withEncryptionMode(EncryptionMode encryptionMode){
+        this.encryptionMode = encryptionMode;
+        return this;
+    }
+
     public NetworkDiscoveryOptions withVerboseLoggingEnabled(boolean verboseLoggingEnabled){
         this.verboseLoggingEnabled = verboseLoggingEnabled;
         return this;
@@ -154,6 +426,153 @@ public class NetworkDiscoveryOptions {
         return this;
     }
 
+    /**
+     * Vary each broadcast interval randomly by up to this percentage either side, so agents started together do not
+     * broadcast in step. 0 broadcasts on a fixed interval.
+     */
+    public NetworkDiscoveryOptions withBroadcastJitterPercent(int broadcastJitterPercent){
+        this.broadcastJitterPercent = broadcastJitterPercent;
+        return this;
+    }
+
+    /**
+     * Cap the datagrams per second sent by the whole cluster, stretching the broadcast interval of every agent as the
+     * graph grows so total traffic stays within the budget. Failure detection periods stretch with the interval.
+     * 0 disables the budget.
+     */
+    public NetworkDiscoveryOptions withBroadcastPacketsPerSecondBudget(int broadcastPacketsPerSecondBudget){
+        this.broadcastPacketsPerSecondBudget = broadcastPacketsPerSecondBudget;
+        return this;
+    }
+
+    /**
+     * How long the broadcast addresses discovered from the local network interfaces are used before the interfaces
+     * are enumerated again, the addresses are also rediscovered whenever a send fails. 0 rediscovers them on
+     * every broadcast.
+     */
+    public NetworkDiscoveryOptions withBroadcastAddressCacheMillis(int broadcastAddressCacheMillis){
+        this.broadcastAddressCacheMillis = broadcastAddressCacheMillis;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withTransportMode(TransportMode transportMode){
+        this.transportMode = transportMode;
+        return this;
+    }
+
+    /**
+     * The IPv4 or IPv6 multicast group address used when the transport mode is {@link TransportMode#MULTICAST}
+     */
+    public NetworkDiscoveryOptions withMulticastGroup(String multicastGroup){
+        this.multicastGroup = multicastGroup;
+        return this;
+    }
+
+    /**
+     * The names (or addresses) of the interfaces on which the multicast group is joined and sent to. When none
+     * are set, every interface which is up and supports multicast is used.
+     */
+    public NetworkDiscoveryOptions withMulticastInterfaces(String... multicastInterfaces){
+        this.multicastInterfaces = multicastInterfaces == null ?
+                Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(multicastInterfaces));
+        return this;
+    }
+
+    /**
+     * The number of router hops multicast datagrams may cross, 1 keeps them on the local segment
+     */
+    public NetworkDiscoveryOptions withMulticastTimeToLive(int multicastTimeToLive){
+        this.multicastTimeToLive = multicastTimeToLive;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withMulticastLoopbackEnabled(boolean multicastLoopbackEnabled){
+        this.multicastLoopbackEnabled = multicastLoopbackEnabled;
+        return this;
+    }
+
+    /**
+     * The agents contacted, as host:port, to join the cluster when the transport mode is {@link TransportMode#GOSSIP}.
+     * Seeds are gossiped to until enough peers are known, after which peers are contacted on the address they
+     * advertise and the port on which their agent receives. A seed may be the agent itself.
+     */
+    public NetworkDiscoveryOptions withSeeds(String... seeds){
+        this.seeds = seeds == null ?
+                Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(seeds));
+        return this;
+    }
+
+    /**
+     * The number of agents each gossip round is sent to
+     */
+    public NetworkDiscoveryOptions withGossipFanout(int gossipFanout){
+        this.gossipFanout = gossipFanout;
+        return this;
+    }
+
+    /**
+     * The largest datagram sent, messages which would exceed it are split into fragments which the receiving
+     * agents reassemble. Should not exceed the read buffer size of the receiving agents; an agent sends no
+     * datagram larger than its own read buffer size, whatever is set here. Must leave room for a fragment
+     * payload of at least {@link org.slj.network.discovery.transport.Frame#MIN_FRAGMENT_PAYLOAD} bytes. Agents which predate
+     * fragmentation ignore fragments, so while they remain set this to their read buffer size.
+     */
+    public NetworkDiscoveryOptions withMaxDatagramSize(int maxDatagramSize){
+        this.maxDatagramSize = maxDatagramSize;
+        return this;
+    }
+
+    /**
+     * When enabled, message bodies of at least the compression threshold are deflated before they are encrypted,
+     * and sent uncompressed when that does not make them smaller. Agents always accept compressed messages,
+     * other than those which predate compression, which ignore them.
+     */
+    public NetworkDiscoveryOptions withCompressionEnabled(boolean compressionEnabled){
+        this.compressionEnabled = compressionEnabled;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withCompressionThreshold(int compressionThreshold){
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    /**
+     * The deflate level, from 1 (fastest) to 9 (smallest)
+     */
+    public NetworkDiscoveryOptions withCompressionLevel(int compressionLevel){
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    /**
+     * Strings which recur in the names, groups and addresses of your nodes (for example a common name prefix),
+     * used to prime the compressor. NB: every agent of the traffic group must be configured with the same strings.
+     */
+    public NetworkDiscoveryOptions withCompressionDictionary(String... compressionDictionary){
+        this.compressionDictionary = compressionDictionary == null ?
+                Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(compressionDictionary));
+        return this;
+    }
+
+    /**
+     * The largest fragmented message which will be reassembled, larger messages are discarded
+     */
+    public NetworkDiscoveryOptions withMaxMessageSize(int maxMessageSize){
+        this.maxMessageSize = maxMessageSize;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withReassemblyCapacity(int reassemblyCapacity){
+        this.reassemblyCapacity = reassemblyCapacity;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withReassemblyTimeoutMillis(int reassemblyTimeoutMillis){
+        this.reassemblyTimeoutMillis = reassemblyTimeoutMillis;
+        return this;
+    }
+
     public NetworkDiscoveryOptions withReadBufferSize(int readBufferSize){
         this.readBufferSize = readBufferSize;
         return this;
@@ -164,11 +583,60 @@ public class NetworkDiscoveryOptions {
         return this;
     }
 
+    public NetworkDiscoveryOptions withReceiveBufferPoolSize(int receiveBufferPoolSize){
+        this.receiveBufferPoolSize = receiveBufferPoolSize;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withReceiveSelectorEnabled(boolean receiveSelectorEnabled){
+        this.receiveSelectorEnabled = receiveSelectorEnabled;
+        return this;
+    }
+
+    /**
+     * Set to 0 to decrypt, decode and apply messages directly on the listener thread
+     */
+    public NetworkDiscoveryOptions withReceiveWorkerThreads(int receiveWorkerThreads){
+        this.receiveWorkerThreads = receiveWorkerThreads;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withReceiveQueueCapacity(int receiveQueueCapacity){
+        this.receiveQueueCapacity = receiveQueueCapacity;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withReceiveQueueBlockingEnabled(boolean receiveQueueBlockingEnabled){
+        this.receiveQueueBlockingEnabled = receiveQueueBlockingEnabled;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withSocketReceiveBufferSize(int socketReceiveBufferSize){
+        this.socketReceiveBufferSize = socketReceiveBufferSize;
+        return this;
+    }
+
     public NetworkDiscoveryOptions withBroadcastPeerProfiles(boolean broadcastPeerProfiles){
         this.broadcastPeerProfiles = broadcastPeerProfiles;
         return this;
     }
 
+    public NetworkDiscoveryOptions withDeltaPeerProfiles(boolean deltaPeerProfiles){
+        this.deltaPeerProfiles = deltaPeerProfiles;
+        return this;
+    }
+
+    /**
+     * Send the peers not in a delta as liveness digests, a name, event time and version each, on every nth
+     * broadcast. The full set of peer profiles is sent only when a node joins or an agent receiving a digest it
+     * cannot reconcile asks for it. With failure detection enabled the interval is capped at one fewer than the
+     * suspect after missed intervals, as deltas do not carry the heartbeats of nodes known only through peers.
+     */
+    public NetworkDiscoveryOptions withPeerProfileFullRefreshInterval(int peerProfileFullRefreshInterval){
+        this.peerProfileFullRefreshInterval = peerProfileFullRefreshInterval;
+        return this;
+    }
+
     public NetworkDiscoveryOptions withConsiderPeerProfiles(boolean considerPeerProfiles){
         this.considerPeerProfiles = considerPeerProfiles;
         return this;
@@ -194,6 +662,142 @@ public class NetworkDiscoveryOptions {
         return this;
     }
 
+    public NetworkDiscoveryOptions withListenerEventThreadName(String listenerEventThreadName){
+        this.listenerEventThreadName = listenerEventThreadName;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withDetectorThreadName(String detectorThreadName){
+        this.detectorThreadName = detectorThreadName;
+        return this;
+    }
+
+    /**
+     * NB: failure detection assumes all agents on the traffic group share the same broadcast interval
+     */
+    public NetworkDiscoveryOptions withFailureDetectionEnabled(boolean failureDetectionEnabled){
+        this.failureDetectionEnabled = failureDetectionEnabled;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withSuspectAfterMissedIntervals(int suspectAfterMissedIntervals){
+        this.suspectAfterMissedIntervals = suspectAfterMissedIntervals;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withEvictAfterMissedIntervals(int evictAfterMissedIntervals){
+        this.evictAfterMissedIntervals = evictAfterMissedIntervals;
+        return this;
+    }
+
+    /**
+     * Keep the tombstone of a node which has left for this long, during which stale peer profiles cannot add it
+     * back. The tombstone is kept for at least the evict period, however short this is set.
+     */
+    public NetworkDiscoveryOptions withTombstoneRetentionMillis(long tombstoneRetentionMillis){
+        this.tombstoneRetentionMillis = tombstoneRetentionMillis;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withFailureDetectorTickMillis(int failureDetectorTickMillis){
+        this.failureDetectorTickMillis = failureDetectorTickMillis;
+        return this;
+    }
+
+    /**
+     * When set, the graph is saved to this file while the agent is running and restored from it when the agent
+     * starts, so the network is known immediately after a restart. Restored nodes are provisional until they are
+     * heard from, and are removed if they are not heard from within the provisional expiry intervals.
+     */
+    public NetworkDiscoveryOptions withCheckpointFile(String checkpointFile){
+        this.checkpointFile = checkpointFile;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withCheckpointIntervalMillis(int checkpointIntervalMillis){
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withProvisionalExpiryIntervals(int provisionalExpiryIntervals){
+        this.provisionalExpiryIntervals = provisionalExpiryIntervals;
+        return this;
+    }
+
+    public NetworkDiscoveryOptions withCheckpointThreadName(String checkpointThreadName){
+        this.checkpointThreadName = checkpointThreadName;
+        return this;
+    }
+
+    /**
+     * When enabled and running on java 21 or later, the listener, broadcast, listener event, failure detector and
+     * checkpoint threads of the agent are virtual threads, so running many agents in one process costs little.
+     * Receive pipeline workers remain platform threads. Ignored on earlier runtimes.
+     */
+    public NetworkDiscoveryOptions withVirtualThreadsEnabled(boolean virtualThreadsEnabled){
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+        return this;
+    }
+
+    /**
+     * When enabled the graph holds node state in a compact store suited to clusters of many thousands of nodes.
+     * Names are interned, groups and addresses are shared and a PING which only advances the event time of a node
+     * is written in place, so steady state heartbeat traffic barely allocates in the graph. The event time
+     * of a node obtained from the graph is then always its most recent rather than that of the snapshot.
+     */
+    public NetworkDiscoveryOptions withCompactGraphEnabled(boolean compactGraphEnabled){
+        this.compactGraphEnabled = compactGraphEnabled;
+        return this;
+    }
+
+    /**
+     * When enabled, the metrics of the agent are registered with the platform MBean server while the agent
+     * is running, under org.slj.network.discovery:type=AgentMetrics
+     */
+    public NetworkDiscoveryOptions withMetricsMBeanEnabled(boolean metricsMBeanEnabled){
+        this.metricsMBeanEnabled = metricsMBeanEnabled;
+        return this;
+    }
+
+    /**
+     * Supply the executor on which graph listener events are delivered. When not set, the agent delivers
+     * events on a single dedicated thread for its lifetime.
+     */
+    public NetworkDiscoveryOptions withListenerExecutor(Executor listenerExecutor){
+        this.listenerExecutor = listenerExecutor;
+        return this;
+    }
+
+    /**
+     * Share the sockets of the runtime with the other agents of the process started with it, rather than binding
+     * sockets for this agent alone. Agents of different traffic groups can then use the same port, datagrams being
+     * routed to each by their traffic group header.
+     */
+    public NetworkDiscoveryOptions withDiscoveryRuntime(DiscoveryRuntime discoveryRuntime){
+        this.discoveryRuntime = discoveryRuntime;
+        return this;
+    }
+
+    /**
+     * Send and receive through the transport rather than through sockets of the agent, for example the in-memory
+     * network of a simulation. Datagrams are handled on the thread the transport delivers them on, receive workers
+     * are not used. The transport is used by this agent alone and cannot be combined with a discovery runtime.
+     */
+    public NetworkDiscoveryOptions withTransport(Transport transport){
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * Run the broadcasts, failure detection and checkpoints of the agent as tasks of the scheduler rather than on
+     * threads of its own, reading time and randomness from the scheduler. Graph listeners are notified on the
+     * thread applying the change unless a listener executor is set.
+     */
+    public NetworkDiscoveryOptions withDiscoveryScheduler(DiscoveryScheduler discoveryScheduler){
+        this.discoveryScheduler = discoveryScheduler;
+        return this;
+    }
+
     public NetworkDiscoveryOptions withDynamicLocalEstablishmentUrl(String dynamicLocalEstablishmentUrl){
         this.dynamicLocalEstablishmentUrl = dynamicLocalEstablishmentUrl;
         return this;
@@ -212,10 +816,90 @@ public class NetworkDiscoveryOptions {
         return broadcastAgentThreadName;
     }
 
+    public String getListenerEventThreadName() {
+        return listenerEventThreadName;
+    }
+
+    public String getDetectorThreadName() {
+        return detectorThreadName;
+    }
+
+    public boolean isFailureDetectionEnabled() {
+        return failureDetectionEnabled;
+    }
+
+    public int getSuspectAfterMissedIntervals() {
+        return suspectAfterMissedIntervals;
+    }
+
+    public int getEvictAfterMissedIntervals() {
+        return evictAfterMissedIntervals;
+    }
+
+    public long getTombstoneRetentionMillis() {
+        return tombstoneRetentionMillis;
+    }
+
+    public int getFailureDetectorTickMillis() {
+        return failureDetectorTickMillis;
+    }
+
+    public String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public int getCheckpointIntervalMillis() {
+        return checkpointIntervalMillis;
+    }
+
+    public int getProvisionalExpiryIntervals() {
+        return provisionalExpiryIntervals;
+    }
+
+    public String getCheckpointThreadName() {
+        return checkpointThreadName;
+    }
+
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    public boolean isCompactGraphEnabled() {
+        return compactGraphEnabled;
+    }
+
+    public boolean isMetricsMBeanEnabled() {
+        return metricsMBeanEnabled;
+    }
+
+    public Executor getListenerExecutor() {
+        return listenerExecutor;
+    }
+
+    public DiscoveryRuntime getDiscoveryRuntime() {
+        return discoveryRuntime;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public DiscoveryScheduler getDiscoveryScheduler() {
+        return discoveryScheduler;
+    }
+
     public boolean isBroadcastPeerProfiles() {
         return broadcastPeerProfiles;
     }
 
+    public boolean isDeltaPeerProfiles() {
+        return deltaPeerProfiles;
+    }
+
+    public int getPeerProfileFullRefreshInterval() {
+        return peerProfileFullRefreshInterval;
+    }
+
     public boolean isConsiderPeerProfiles() {
         return considerPeerProfiles;
     }
@@ -224,6 +908,78 @@ public class NetworkDiscoveryOptions {
         return broadcastIntervalMillis;
     }
 
+    public int getBroadcastAddressCacheMillis() {
+        return broadcastAddressCacheMillis;
+    }
+
+    public int getBroadcastJitterPercent() {
+        return broadcastJitterPercent;
+    }
+
+    public int getBroadcastPacketsPerSecondBudget() {
+        return broadcastPacketsPerSecondBudget;
+    }
+
+    public TransportMode getTransportMode() {
+        return transportMode;
+    }
+
+    public String getMulticastGroup() {
+        return multicastGroup;
+    }
+
+    public List<String> getMulticastInterfaces() {
+        return multicastInterfaces;
+    }
+
+    public int getMulticastTimeToLive() {
+        return multicastTimeToLive;
+    }
+
+    public boolean isMulticastLoopbackEnabled() {
+        return multicastLoopbackEnabled;
+    }
+
+    public List<String> getSeeds() {
+        return seeds;
+    }
+
+    public int getGossipFanout() {
+        return gossipFanout;
+    }
+
+    public int getMaxDatagramSize() {
+        return maxDatagramSize;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public List<String> getCompressionDictionary() {
+        return compressionDictionary;
+    }
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    public int getReassemblyCapacity() {
+        return reassemblyCapacity;
+    }
+
+    public int getReassemblyTimeoutMillis() {
+        return reassemblyTimeoutMillis;
+    }
+
     public int getBroadcastPort() {
         return broadcastPort;
     }
@@ -236,6 +992,30 @@ public class NetworkDiscoveryOptions {
         return writeBufferSize;
     }
 
+    public int getReceiveBufferPoolSize() {
+        return receiveBufferPoolSize;
+    }
+
+    public boolean isReceiveSelectorEnabled() {
+        return receiveSelectorEnabled;
+    }
+
+    public int getReceiveWorkerThreads() {
+        return receiveWorkerThreads;
+    }
+
+    public int getReceiveQueueCapacity() {
+        return receiveQueueCapacity;
+    }
+
+    public boolean isReceiveQueueBlockingEnabled() {
+        return receiveQueueBlockingEnabled;
+    }
+
+    public int getSocketReceiveBufferSize() {
+        return socketReceiveBufferSize;
+    }
+
     public String getDynamicLocalEstablishmentUrl() {
         return dynamicLocalEstablishmentUrl;
     }
@@ -264,7 +1044,15 @@ public class NetworkDiscoveryOptions {
         return encryptionSecret;
     }
 
+    public EncryptionMode getEncryptionMode() {
+        return encryptionMode;
+    }
+
     public boolean isNodeMarkedHealthyAfterBirth() {
         return nodeMarkedHealthyAfterBirth;
     }
+
+    public MessageCodec getMessageCodec() {
+        return messageCodec;
+    }
 }
@@ -24,78 +24,248 @@
 
 package org.slj.network.discovery.model;
 
+import org.slj.network.discovery.DiscoveryClock;
 import org.slj.network.discovery.NetworkDiscoveryException;
 
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
+/**
+ * The network graph holds the most recent state of every node known to the agent. Changes are applied by a
+ * single writer at a time, each received message producing a new immutable {@link GraphSnapshot} which is
+ * published through a volatile reference. Reads are served from the current snapshot without locking or copying.
+ */
 public class NetworkGraph {
 
     private String localHost;
 
     private final Object monitor = new Object();
-    private final Map<String, NetworkNode> network =
-            Collections.synchronizedMap(new HashMap<>());
+    private final Object writeLock = new Object();
+    private final ListenerDispatcher dispatcher = new ListenerDispatcher();
+    private volatile GraphSnapshot snapshot;
+
+    //-- the generation is incremented each time the material state (membership, status, address, port or group)
+    //-- of a node changes, a PING which only advances the event time does not move the generation
+    private final Map<String, Long> generations = new HashMap<>();
+    //-- generation -> name of the latest material change of each node, so deltas are read without a scan
+    private final TreeMap<Long, String> changes = new TreeMap<>();
+    private long generation = 0;
+    private long joinGeneration = 0;
+
+    //-- writer side indexes, group -> name -> node and group -> status -> name -> node, from which the
+    //-- snapshot lists of changed groups are built; guarded by the write lock
+    private final Map<String, Map<String, NetworkNode>> groupIndex = new HashMap<>();
+    private final Map<String, Map<Integer, Map<String, NetworkNode>>> statusIndex = new HashMap<>();
+    //-- group -> key -> value -> name -> node of the string and tag attributes (a tag having a <null> value)
+    private final Map<String, Map<String, Map<String, Map<String, NetworkNode>>>> attributeIndex = new HashMap<>();
+
+    //-- name -> [event time, local removal time] of nodes which have left, so stale peer profiles
+    //-- cannot resurrect them; in removal order, guarded by the write lock
+    private final LinkedHashMap<String, long[]> tombstones = new LinkedHashMap<>();
+    private volatile FailureDetector detector;
+    private volatile DiscoveryClock clock = DiscoveryClock.SYSTEM;
+    private volatile long tombstoneRetentionMillis = NetworkDiscoveryOptions.DEFAULT_TOMBSTONE_RETENTION_MILLIS;
+    //-- the tombstone is kept for at least the evict period of the failure detector, which moves with the interval
+    private volatile long evictAfterMillis = 0;
+
+    //-- the compact store of the node state when enabled, guarded by the write lock
+    private final NodeStore store;
 
     public NetworkGraph(String localHost){
+        this(localHost, false);
+    }
+
+    /**
+     * @param compact - hold the node state in a compact store suited to very large graphs, in which a PING which
+     *                only advances the event time of a node is written in place rather than publishing a new
+     *                snapshot. The event time of a node obtained from the graph is then always its most recent.
+     */
+    public NetworkGraph(String localHost, boolean compact){
         this.localHost = localHost;
+        this.snapshot = GraphSnapshot.empty(localHost);
+        this.store = compact ? new NodeStore() : null;
     }
 
-    public NetworkNode getNode(String name){
-        synchronized (network){
-            Iterator<String> itr = network.keySet().iterator();
-            while(itr.hasNext()){
-                String hostName = itr.next();
-                NetworkNode host = network.get(hostName);
-                if(host.getName().equals(name)){
-                    return host;
-                }
-            }
+    /**
+     * @return - true if the node state is held in a compact store
+     */
+    public boolean isCompact(){
+        return store != null;
+    }
+
+    /**
+     * Register a listener to be notified of nodes joining, leaving or changing status.
+     */
+    public void addListener(NetworkGraphListener listener){
+        dispatcher.addListener(listener);
+    }
+
+    public void removeListener(NetworkGraphListener listener){
+        dispatcher.removeListener(listener);
+    }
+
+    /**
+     * Set the executor on which listener events are delivered. By default events are delivered on the thread
+     * which applied the change; unless it runs on a discovery scheduler, the agent supplies a dedicated executor so
+     * listeners do not run on the receive path.
+     */
+    public void setListenerExecutor(Executor executor){
+        dispatcher.setExecutor(executor);
+    }
+
+    /**
+     * Stop delivering events to listeners, changes from now on are not reported. The agent closes its graph's
+     * listeners as it stops, before shutting down the executor on which they are delivered.
+     */
+    public void closeListeners(){
+        dispatcher.close();
+    }
+
+    /**
+     * Set the clock against which heartbeats and removals are timed, by default the system clock. Periods are
+     * measured on its {@link DiscoveryClock#monotonicTimeMillis()}.
+     */
+    public void setClock(DiscoveryClock clock){
+        this.clock = Objects.requireNonNull(clock, "clock must not be <null>");
+    }
+
+    /**
+     * Set how long the tombstone of a node which has left is kept, during which stale peer profiles cannot add
+     * it back. A failure detector on the graph keeps it for at least its evict period.
+     */
+    public void setTombstoneRetentionMillis(long tombstoneRetentionMillis){
+        if(tombstoneRetentionMillis < 0){
+            throw new IllegalArgumentException("tombstone retention must not be negative");
         }
-        return null;
+        this.tombstoneRetentionMillis = tombstoneRetentionMillis;
+    }
+
+    /**
+     * @return - how long the tombstone of a node which has left is kept
+     */
+    public long getTombstoneRetentionMillis(){
+        return Math.max(tombstoneRetentionMillis, evictAfterMillis);
+    }
+
+    void setEvictAfterMillis(long evictAfterMillis){
+        this.evictAfterMillis = evictAfterMillis;
+    }
+
+    /**
+     * @return - the current consistent view of the graph, which will not change once obtained
+     */
+    public GraphSnapshot getSnapshot(){
+        return snapshot;
+    }
+
+    public NetworkNode getNode(String name){
+        return snapshot.getNode(name);
     }
 
     public List<NetworkNode> getAllNodesByGroupName(String groupName, boolean includeSelf){
+        return snapshot.getNodes(groupName, includeSelf);
+    }
+
+    /**
+     * Return the nodes in the group (or all groups when <null>) with the given status. For a single group this
+     * is served directly from the snapshot index without copying.
+     */
+    public List<NetworkNode> getAllNodesByStatus(String groupName, int status, boolean includeSelf){
+        return snapshot.getNodes(groupName, status, includeSelf);
+    }
+
+    /**
+     * Return the nodes in the group (or all groups when <null>) with the given status which have the string
+     * attribute with the value, for example the healthy nodes of a group with zone=eu-1. Served from the snapshot
+     * index of the attribute, so the cost is proportional to the nodes having the attribute value.
+     */
+    public List<NetworkNode> getAllNodesByAttribute(String groupName, int status, String key, String value, boolean includeSelf){
+        Objects.requireNonNull(value, "attribute value must not be <null>");
+        return snapshot.getNodesByAttribute(groupName, status, key, value, includeSelf);
+    }
+
+    /**
+     * Return the nodes in the group (or all groups when <null>) with the given status which have the tag.
+     */
+    public List<NetworkNode> getAllNodesByTag(String groupName, int status, String tag, boolean includeSelf){
+        return snapshot.getNodesByAttribute(groupName, status, tag, null, includeSelf);
+    }
+
+    /**
+     * @return - a selector cycling through the healthy nodes of the group (or all groups when <null>) in turn
+     */
+    public NodeSelector newRoundRobinSelector(String groupName, boolean includeSelf){
+        return new NodeSelectors.RoundRobin(this, groupName, includeSelf);
+    }
+
+    /**
+     * @return - a selector choosing uniformly at random from the healthy nodes of the group
+     */
+    public NodeSelector newRandomSelector(String groupName, boolean includeSelf){
+        return new NodeSelectors.Random(this, groupName, includeSelf);
+    }
+
+    /**
+     * @param load - returns the current load of a node, for example the number of requests outstanding to it
+     * @return - a selector choosing the less loaded of two healthy nodes chosen at random
+     */
+    public NodeSelector newPowerOfTwoChoicesSelector(String groupName, boolean includeSelf, ToLongFunction<NetworkNode> load){
+        return new NodeSelectors.PowerOfTwoChoices(this, groupName, includeSelf, load);
+    }
+
+    /**
+     * @param weight - returns the weight of a node, evaluated only when the membership of the group changes
+     * @return - a selector choosing healthy nodes at random in proportion to their weight
+     */
+    public NodeSelector newWeightedSelector(String groupName, boolean includeSelf, ToIntFunction<NetworkNode> weight){
+        return new NodeSelectors.Weighted(this, groupName, includeSelf, weight);
+    }
+
+    /**
+     * Return the nodes whose material state has changed since the supplied generation, this is used to
+     * gossip deltas to peers rather than the entire graph.
+     * @param generation - the generation previously obtained from {@link #getGeneration()}
+     */
+    public List<NetworkNode> getNodesChangedSince(long generation, boolean includeSelf){
         List<NetworkNode> l = new ArrayList<>();
-        synchronized (network){
-            Iterator<String> itr = network.keySet().iterator();
-            while(itr.hasNext()){
-                String hostName = itr.next();
-                NetworkNode host = network.get(hostName);
-                if(!includeSelf && hostName.equals(localHost))
+        synchronized (writeLock){
+            GraphSnapshot snapshot = this.snapshot;
+            for (String name : changes.tailMap(generation, false).values()){
+                if(!includeSelf && name.equals(localHost))
                     continue;
 
-                if(host.getGroup().equals(groupName)){
-                    l.add(host);
-                }
+                l.add(snapshot.getNode(name));
             }
         }
         return Collections.unmodifiableList(l);
     }
 
+    /**
+     * The current generation of the graph.
+     */
+    public long getGeneration(){
+        synchronized (writeLock){
+            return generation;
+        }
+    }
+
+    /**
+     * The generation at which a previously unknown node last joined the graph.
+     */
+    public long getJoinGeneration(){
+        synchronized (writeLock){
+            return joinGeneration;
+        }
+    }
+
     public List<NetworkNode> getAllHealthyNodes(boolean includeSelf){
         return getAllHealthyNodes(null, includeSelf);
     }
 
     public List<NetworkNode> getAllHealthyNodes(String groupName, boolean includeSelf){
-        List<NetworkNode> l = new ArrayList<>();
-        synchronized (network){
-            Iterator<String> itr = network.keySet().iterator();
-            while(itr.hasNext()){
-                String hostName = itr.next();
-                NetworkNode host = network.get(hostName);
-                if(groupName != null &&
-                        !groupName.equals(host.getGroup()))
-                    continue;
-
-                if(!includeSelf && hostName.equals(localHost))
-                    continue;
-
-                if(host.getStatus() == NetworkNode.HEALTHY){
-                    l.add(host);
-                }
-            }
-        }
-        return Collections.unmodifiableList(l);
+        return getAllNodesByStatus(groupName, NetworkNode.HEALTHY, includeSelf);
     }
 
     public NetworkNode waitOnFirstHealthyNode(String groupName, boolean includeSelf, int waitTimeMillis)
@@ -105,9 +275,10 @@ public class NetworkGraph {
             long until = System.currentTimeMillis() + waitTimeMillis;
             List<NetworkNode> healthy = null;
             do {
-                healthy = getAllHealthyNodes(groupName, includeSelf);
-                if(healthy.isEmpty()) {
-                    synchronized (monitor) {
+                synchronized (monitor) {
+                    //-- checked whilst holding the monitor so a notify between the check and the wait is not lost
+                    healthy = getAllHealthyNodes(groupName, includeSelf);
+                    if(healthy.isEmpty()) {
                         //ensure spurious wake ups dont cause waits longer than requested
                         monitor.wait(Math.max(1, until - System.currentTimeMillis()));
                     }
@@ -128,46 +299,135 @@ public class NetworkGraph {
     public boolean receiveMessage(BroadcastMessage message, boolean processPeers){
 
         final NetworkNode node = message.getNode();
-        boolean updated = update(message.getStatus(), node);
-        if(processPeers && message.getPeers() != null){
-            Iterator<NetworkNode> itr = message.getPeers().iterator();
-            while(itr.hasNext()){
-                NetworkNode peerHost = itr.next();
-                updated |= update(BroadcastMessage.PING, peerHost);
+        boolean updated;
+        boolean healthy;
+        synchronized (writeLock){
+            Transaction tx = new Transaction(snapshot);
+            updated = update(tx, message.getStatus(), node);
+            if(processPeers && message.getPeers() != null){
+                Iterator<NetworkNode> itr = message.getPeers().iterator();
+                while(itr.hasNext()){
+                    NetworkNode peerHost = itr.next();
+                    updated |= update(tx, BroadcastMessage.PING, peerHost);
+                }
             }
+            if(tx.isDirty()){
+                snapshot = tx.commit();
+            }
+            healthy = tx.healthy;
         }
 
+        dispatcher.schedule();
+        if(healthy){
+            synchronized (monitor){
+                monitor.notifyAll();
+            }
+        }
         return updated;
     }
 
-    private final boolean update(int status, NetworkNode node){
+    /**
+     * Take the liveness digests of peers as heartbeats for the nodes this graph holds in the same version. Nothing
+     * is published, a digest only ever advances an event time in place.
+     * @return - true if a digest describes a node this graph does not hold, or holds in an older version, so the
+     * full peer profiles are needed to reconcile it
+     */
+    public boolean receiveDigests(List<NodeDigest> digests){
+        boolean stale = false;
+        synchronized (writeLock){
+            GraphSnapshot snapshot = this.snapshot;
+            for (int i = 0; i < digests.size(); i++){
+                NodeDigest digest = digests.get(i);
+                String name = digest.getName();
+                if(name.equals(localHost)) continue;
+                NetworkNode oldHost = snapshot.getNode(name);
+                if(oldHost == null){
+                    long[] tombstone = tombstones.get(name);
+                    stale |= tombstone == null || tombstone[0] < digest.getEventTime();
+                } else if(oldHost.getEventTime() < digest.getEventTime()){
+                    if(oldHost.isProvisional() || NodeDigest.version(oldHost) != digest.getVersion()){
+                        stale = true;
+                        continue;
+                    }
+                    FailureDetector detector = this.detector;
+                    if(detector != null){
+                        detector.heartbeat(name, digest.getEventTime(), clock.monotonicTimeMillis());
+                    }
+                    if(store == null || !store.advance(oldHost, digest.getEventTime())){
+                        oldHost.setEventTime(digest.getEventTime());
+                    }
+                }
+            }
+        }
+        return stale;
+    }
+
+    private final boolean update(Transaction tx, int status, NetworkNode node){
 
         String name = node.getName();
         NetworkNode oldHost = null;
         boolean update = true;
-        if((oldHost = network.get(name)) != null) {
-            //-- only replace the old version if the timestamp is later than what we have
+        if((oldHost = tx.get(name)) != null) {
+            //-- only replace the old version if the timestamp is later than what we have, a suspect node
+            //-- is only restored by a strictly newer event so re-gossip of its last state cannot restore it
             if (oldHost.getEventTime() >
                     node.getEventTime()) {
                 update = false;
+            } else if(oldHost.getStatus() == NetworkNode.SUSPECT &&
+                    oldHost.getEventTime() == node.getEventTime()){
+                update = false;
+            }
+        } else {
+            long[] tombstone = tombstones.get(name);
+            if(tombstone != null){
+                if(tombstone[0] >= node.getEventTime()){
+                    update = false;
+                } else {
+                    tombstones.remove(name);
+                }
             }
         }
 
         if(update){
             switch(status){
                 case BroadcastMessage.BIRTH:
-                    network.put(name, node);
+                    heartbeat(oldHost, node);
+                    if(store != null){
+                        if(store.heartbeat(oldHost, node)) break;
+                        node = store.put(node);
+                    } else if(heartbeatInPlace(oldHost, node)){
+                        break;
+                    }
+                    tx.put(oldHost, node);
+                    reindex(oldHost, node);
+                    changed(name, oldHost, node);
                     break;
                 case BroadcastMessage.DEATH:
-                    network.remove(name);
+                    if(oldHost != null){
+                        remove(tx, oldHost, node.getEventTime(), clock.monotonicTimeMillis());
+                    } else {
+                        tombstone(name, node.getEventTime(), clock.monotonicTimeMillis());
+                    }
+                    FailureDetector detector = this.detector;
+                    if(detector != null){
+                        detector.remove(name);
+                    }
                     break;
                 case BroadcastMessage.PING:
-                    network.put(name, node);
+                    //-- the detector is told before the store is written, which may advance the old event time
+                    heartbeat(oldHost, node);
                     if(node.getStatus() == NetworkNode.HEALTHY){
-                        synchronized (monitor){
-                            monitor.notifyAll();
-                        }
+                        tx.healthy = true;
+                    }
+                    if(store != null){
+                        if(store.heartbeat(oldHost, node)) break;
+                        node = store.put(node);
+                    } else if(heartbeatInPlace(oldHost, node)){
+                        break;
                     }
+                    tx.put(oldHost, node);
+                    reindex(oldHost, node);
+                    changed(name, oldHost, node);
                     break;
                 default: break;
             }
@@ -175,4 +435,416 @@ public class NetworkGraph {
 
         return update;
     }
-}
\ No newline at end of file
+
+    /**
+     * Add nodes restored from a checkpoint, marked provisional, unless they are the local node or are already known.
+     * A provisional node is replaced by the first live update for it which is not older.
+     * @return - the number of nodes restored
+     */
+    int restore(Collection<NetworkNode> nodes){
+        int restored = 0;
+        boolean healthy;
+        synchronized (writeLock){
+            Transaction tx = new Transaction(snapshot);
+            for (NetworkNode node : nodes){
+                String name = node.getName();
+                if(name.equals(localHost) || tx.get(name) != null || tombstones.containsKey(name)) continue;
+                NetworkNode provisional = copy(node);
+                provisional.setProvisional(true);
+                if(store != null) provisional = store.put(provisional);
+                tx.put(null, provisional);
+                reindex(null, provisional);
+                changed(name, null, provisional);
+                if(provisional.getStatus() == NetworkNode.HEALTHY){
+                    tx.healthy = true;
+                }
+                restored++;
+            }
+            if(tx.isDirty()){
+                snapshot = tx.commit();
+            }
+            healthy = tx.healthy;
+        }
+        dispatcher.schedule();
+        if(healthy){
+            synchronized (monitor){
+                monitor.notifyAll();
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Remove every node which is still provisional. No tombstone is kept, so the node is accepted again should
+     * it later be heard from.
+     * @return - the number of nodes removed
+     */
+    int expireProvisional(){
+        int expired = 0;
+        synchronized (writeLock){
+            Transaction tx = new Transaction(snapshot);
+            for (Map<String, NetworkNode> shard : snapshot.getShards()){
+                for (NetworkNode node : shard.values()){
+                    if(!node.isProvisional()) continue;
+                    if(store != null) store.remove(node);
+                    tx.remove(node);
+                    reindex(node, null);
+                    notify(node, null);
+                    forget(node.getName());
+                    expired++;
+                }
+            }
+            if(tx.isDirty()){
+                snapshot = tx.commit();
+            }
+        }
+        dispatcher.schedule();
+        return expired;
+    }
+
+    void setFailureDetector(FailureDetector detector){
+        this.detector = detector;
+    }
+
+    /**
+     * Mark the node as {@link NetworkNode#SUSPECT}, provided no newer event has been received for it.
+     * @param eventTime - the event time of the node when the detector last heard from it
+     */
+    boolean suspect(String name, long eventTime){
+        boolean suspected = false;
+        synchronized (writeLock){
+            Transaction tx = new Transaction(snapshot);
+            NetworkNode oldHost = tx.get(name);
+            if(oldHost != null && oldHost.getEventTime() == eventTime &&
+                    oldHost.getStatus() != NetworkNode.SUSPECT){
+                NetworkNode node = copy(oldHost);
+                node.setStatus(NetworkNode.SUSPECT);
+                if(store != null) node = store.put(node);
+                tx.put(oldHost, node);
+                reindex(oldHost, node);
+                changed(name, oldHost, node);
+                snapshot = tx.commit();
+                suspected = true;
+            }
+        }
+        dispatcher.schedule();
+        return suspected;
+    }
+
+    /**
+     * Remove the node from the graph, provided no newer event has been received for it.
+     * @param eventTime - the event time of the node when the detector last heard from it
+     * @return - true if the node was removed, or was no longer present
+     */
+    boolean evict(String name, long eventTime, long now){
+        boolean evicted = true;
+        synchronized (writeLock){
+            Transaction tx = new Transaction(snapshot);
+            NetworkNode oldHost = tx.get(name);
+            if(oldHost != null){
+                if(oldHost.getEventTime() == eventTime){
+                    remove(tx, oldHost, eventTime, now);
+                    snapshot = tx.commit();
+                } else {
+                    evicted = false;
+                }
+            }
+        }
+        dispatcher.schedule();
+        return evicted;
+    }
+
+    /**
+     * Discard the tombstones of nodes removed before the supplied local time.
+     */
+    void pruneTombstones(long removedBefore){
+        synchronized (writeLock){
+            Iterator<long[]> itr = tombstones.values().iterator();
+            while(itr.hasNext()){
+                if(itr.next()[1] >= removedBefore) break;
+                itr.remove();
+            }
+        }
+    }
+
+    private void remove(Transaction tx, NetworkNode oldHost, long eventTime, long now){
+        String name = oldHost.getName();
+        if(store != null) store.remove(oldHost);
+        tx.remove(oldHost);
+        reindex(oldHost, null);
+        notify(oldHost, null);
+        forget(name);
+        tombstone(name, Math.max(eventTime, oldHost.getEventTime()), now);
+    }
+
+    /**
+     * Record that the node has left, discarding the tombstones which have outlived the retention period so the
+     * map stays bounded whether or not failure detection is running.
+     */
+    private void tombstone(String name, long eventTime, long now){
+        tombstones.remove(name);
+        tombstones.put(name, new long[]{eventTime, now});
+        long retention = getTombstoneRetentionMillis();
+        Iterator<long[]> itr = tombstones.values().iterator();
+        while(itr.hasNext()){
+            if(now - itr.next()[1] < retention) break;
+            itr.remove();
+        }
+    }
+
+    private void heartbeat(NetworkNode oldHost, NetworkNode node){
+        FailureDetector detector = this.detector;
+        if(detector != null && !node.getName().equals(localHost) &&
+                (oldHost == null || oldHost.isProvisional() || node.getEventTime() > oldHost.getEventTime())){
+            detector.heartbeat(node.getName(), node.getEventTime(), clock.monotonicTimeMillis());
+        }
+    }
+
+    /**
+     * Advance the event time of the published node in place, provided the update carries nothing else, as the
+     * compact store does. The snapshot and its group and status lists are then left as they are, so a heartbeat
+     * neither publishes a snapshot nor rebuilds an index.
+     * @return - true if the update was applied in place
+     */
+    private static boolean heartbeatInPlace(NetworkNode oldHost, NetworkNode node){
+        if(oldHost == null || oldHost.isProvisional() ||
+                oldHost.getStatus() != node.getStatus() ||
+                oldHost.getPort() != node.getPort() ||
+                oldHost.getDiscoveryPort() != node.getDiscoveryPort() ||
+                !oldHost.getAttributes().equals(node.getAttributes()) ||
+                !Objects.equals(oldHost.getAddress(), node.getAddress()) ||
+                !Objects.equals(oldHost.getGroup(), node.getGroup())){
+            return false;
+        }
+        oldHost.setEventTime(node.getEventTime());
+        return true;
+    }
+
+    private static NetworkNode copy(NetworkNode node){
+        NetworkNode copy = new NetworkNode();
+        copy.setName(node.getName());
+        copy.setGroup(node.getGroup());
+        copy.setStatus(node.getStatus());
+        copy.setAddress(node.getAddress());
+        copy.setPort(node.getPort());
+        copy.setEventTime(node.getEventTime());
+        copy.setDiscoveryPort(node.getDiscoveryPort());
+        copy.setAttributes(node.getAttributes());
+        copy.setProvisional(node.isProvisional());
+        return copy;
+    }
+
+    private void notify(NetworkNode oldHost, NetworkNode node){
+        if(!dispatcher.hasListeners()) return;
+        if(oldHost == null || node == null || oldHost.getStatus() != node.getStatus()){
+            dispatcher.record(oldHost, node);
+        }
+    }
+
+    private void changed(String name, NetworkNode oldHost, NetworkNode node){
+        notify(oldHost, node);
+        if(oldHost == null){
+            touch(name);
+            joinGeneration = generation;
+        } else if(oldHost.getStatus() != node.getStatus() ||
+                oldHost.getPort() != node.getPort() ||
+                oldHost.getDiscoveryPort() != node.getDiscoveryPort() ||
+                !oldHost.getAttributes().equals(node.getAttributes()) ||
+                !Objects.equals(oldHost.getAddress(), node.getAddress()) ||
+                !Objects.equals(oldHost.getGroup(), node.getGroup())){
+            touch(name);
+        }
+    }
+
+    /**
+     * Move the generation for a material change to the node.
+     */
+    private void touch(String name){
+        Long previous = generations.put(name, ++generation);
+        if(previous != null) changes.remove(previous);
+        changes.put(generation, name);
+    }
+
+    /**
+     * Move the generation for the removal of the node.
+     */
+    private void forget(String name){
+        Long previous = generations.remove(name);
+        if(previous != null) changes.remove(previous);
+        generation++;
+    }
+
+    private void reindex(NetworkNode oldHost, NetworkNode node){
+        if(oldHost != null){
+            String group = oldHost.getGroup();
+            Map<String, NetworkNode> nodes = groupIndex.get(group);
+            if(nodes != null && nodes.remove(oldHost.getName()) != null && nodes.isEmpty()){
+                groupIndex.remove(group);
+            }
+            Map<Integer, Map<String, NetworkNode>> statuses = statusIndex.get(group);
+            if(statuses != null){
+                nodes = statuses.get(oldHost.getStatus());
+                if(nodes != null && nodes.remove(oldHost.getName()) != null && nodes.isEmpty()){
+                    statuses.remove(oldHost.getStatus());
+                    if(statuses.isEmpty()) statusIndex.remove(group);
+                }
+            }
+            NodeAttributes attributes = oldHost.getAttributes();
+            Map<String, Map<String, Map<String, NetworkNode>>> keys = attributeIndex.get(group);
+            for (int i = 0; keys != null && i < attributes.size(); i++){
+                if(!indexed(attributes, i)) continue;
+                String key = attributes.getKey(i);
+                Map<String, Map<String, NetworkNode>> values = keys.get(key);
+                if(values == null) continue;
+                String value = attributes.getString(i);
+                nodes = values.get(value);
+                if(nodes != null && nodes.remove(oldHost.getName()) != null && nodes.isEmpty()){
+                    values.remove(value);
+                    if(values.isEmpty()) keys.remove(key);
+                }
+            }
+            if(keys != null && keys.isEmpty()) attributeIndex.remove(group);
+        }
+        if(node != null){
+            String group = node.getGroup();
+            groupIndex.computeIfAbsent(group, k -> new HashMap<>()).put(node.getName(), node);
+            statusIndex.computeIfAbsent(group, k -> new HashMap<>()).
+                    computeIfAbsent(node.getStatus(), k -> new HashMap<>()).put(node.getName(), node);
+            NodeAttributes attributes = node.getAttributes();
+            for (int i = 0; i < attributes.size(); i++){
+                if(!indexed(attributes, i)) continue;
+                attributeIndex.computeIfAbsent(group, k -> new HashMap<>()).
+                        computeIfAbsent(attributes.getKey(i), k -> new HashMap<>()).
+                        computeIfAbsent(attributes.getString(i), k -> new HashMap<>()).put(node.getName(), node);
+            }
+        }
+    }
+
+    private static boolean indexed(NodeAttributes attributes, int index){
+        byte type = attributes.getType(index);
+        return type == NodeAttributes.STRING || type == NodeAttributes.TAG;
+    }
+
+    /**
+     * Accumulates the changes from a single message against the snapshot it started from. Only the name shards
+     * and groups touched by the message are copied when the new snapshot is committed, the remainder are shared
+     * with the previous snapshot.
+     */
+    private class Transaction {
+
+        private final GraphSnapshot base;
+        //-- the shards of the base until the first is copied, so a message changing nothing allocates little
+        private Map<String, NetworkNode>[] shards;
+        private boolean[] copied;
+        private final Set<String> dirtyGroups = new HashSet<>();
+        private int size;
+        private boolean dirty = false;
+        private boolean healthy = false;
+
+        private Transaction(GraphSnapshot base) {
+            this.base = base;
+            this.shards = base.getShards();
+            this.size = base.size();
+        }
+
+        private NetworkNode get(String name){
+            return shards[GraphSnapshot.shard(name)].get(name);
+        }
+
+        private void put(NetworkNode oldHost, NetworkNode node){
+            if(shard(node.getName()).put(node.getName(), node) == null) size++;
+            if(oldHost != null) dirtyGroups.add(oldHost.getGroup());
+            dirtyGroups.add(node.getGroup());
+            dirty = true;
+        }
+
+        private void remove(NetworkNode oldHost){
+            if(shard(oldHost.getName()).remove(oldHost.getName()) != null) size--;
+            dirtyGroups.add(oldHost.getGroup());
+            dirty = true;
+        }
+
+        private boolean isDirty(){
+            return dirty;
+        }
+
+        private Map<String, NetworkNode> shard(String name){
+            int index = GraphSnapshot.shard(name);
+            if(copied == null){
+                shards = shards.clone();
+                copied = new boolean[GraphSnapshot.SHARDS];
+            }
+            if(!copied[index]){
+                shards[index] = new HashMap<>(shards[index]);
+                copied[index] = true;
+            }
+            return shards[index];
+        }
+
+        private GraphSnapshot commit(){
+            for (int i = 0; copied != null && i < shards.length; i++){
+                if(copied[i]) shards[i] = Collections.unmodifiableMap(shards[i]);
+            }
+            Map<String, List<NetworkNode>> groups = new HashMap<>(base.getGroups());
+            Map<String, Map<Integer, List<NetworkNode>>> statuses = new HashMap<>(base.getStatuses());
+            Map<String, Map<String, Map<String, List<NetworkNode>>>> attributes = null;
+            for (String group : dirtyGroups){
+                Map<String, NetworkNode> members = groupIndex.get(group);
+                Map<String, Map<String, Map<String, NetworkNode>>> keys = attributeIndex.get(group);
+                if(keys != null || base.getAttributes().containsKey(group)){
+                    //-- the attribute index is only copied when a group with attributes changes
+                    if(attributes == null) attributes = new HashMap<>(base.getAttributes());
+                    if(keys == null){
+                        attributes.remove(group);
+                    } else {
+                        Map<String, Map<String, List<NetworkNode>>> byKey = new HashMap<>();
+                        for (Map.Entry<String, Map<String, Map<String, NetworkNode>>> key : keys.entrySet()){
+                            Map<String, List<NetworkNode>> byValue = new HashMap<>();
+                            for (Map.Entry<String, Map<String, NetworkNode>> value : key.getValue().entrySet()){
+                                byValue.put(value.getKey(), Collections.unmodifiableList(new ArrayList<>(value.getValue().values())));
+                            }
+                            byKey.put(key.getKey(), Collections.unmodifiableMap(byValue));
+                        }
+                        attributes.put(group, Collections.unmodifiableMap(byKey));
+                    }
+                }
+                if(members == null){
+                    groups.remove(group);
+                    statuses.remove(group);
+                    continue;
+                }
+                groups.put(group, Collections.unmodifiableList(new ArrayList<>(members.values())));
+                Map<Integer, List<NetworkNode>> byStatus = new HashMap<>();
+                for (Map.Entry<Integer, Map<String, NetworkNode>> entry : statusIndex.get(group).entrySet()){
+                    byStatus.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue().values())));
+                }
+                statuses.put(group, Collections.unmodifiableMap(byStatus));
+            }
+
+            List<NetworkNode> groupExcludingSelf = null;
+            List<NetworkNode> statusExcludingSelf = null;
+            NetworkNode self = get(localHost);
+            if(self != null){
+                if(dirtyGroups.contains(self.getGroup()) || base.getGroupExcludingSelf() == null){
+                    groupExcludingSelf = excludeSelf(groups.get(self.getGroup()));
+                    statusExcludingSelf = excludeSelf(statuses.get(self.getGroup()).get(self.getStatus()));
+                } else {
+                    groupExcludingSelf = base.getGroupExcludingSelf();
+                    statusExcludingSelf = base.getStatusExcludingSelf();
+                }
+            }
+            return new GraphSnapshot(base.getVersion() + 1, localHost, shards, size,
+                    Collections.unmodifiableMap(groups), Collections.unmodifiableMap(statuses),
+                    attributes == null ? base.getAttributes() : Collections.unmodifiableMap(attributes),
+                    groupExcludingSelf, statusExcludingSelf);
+        }
+
+        private List<NetworkNode> excludeSelf(List<NetworkNode> nodes){
+            List<NetworkNode> l = new ArrayList<>(nodes.size());
+            for (NetworkNode node : nodes){
+                if(!node.getName().equals(localHost)) l.add(node);
+            }
+            return Collections.unmodifiableList(l);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+public class NetworkGraphEvent {
+
+    public static final int
+            NODE_JOINED = 0,
+            NODE_LEFT = 2,
+            STATUS_CHANGED = 4;
+
+    private final int type;
+    private final NetworkNode oldNode;
+    private final NetworkNode newNode;
+
+    public NetworkGraphEvent(int type, NetworkNode oldNode, NetworkNode newNode) {
+        this.type = type;
+        this.oldNode = oldNode;
+        this.newNode = newNode;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return - the state of the node before the change, <null> when the node joined
+     */
+    public NetworkNode getOldNode() {
+        return oldNode;
+    }
+
+    /**
+     * @return - the state of the node after the change, <null> when the node left
+     */
+    public NetworkNode getNewNode() {
+        return newNode;
+    }
+
+    public String getName() {
+        return newNode != null ? newNode.getName() : oldNode.getName();
+    }
+
+    public static String typeToString(int type){
+        if(type == NODE_JOINED) return "NODE_JOINED";
+        else if(type == NODE_LEFT) return "NODE_LEFT";
+        else if(type == STATUS_CHANGED) return "STATUS_CHANGED";
+        return "UNKNOWN";
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkGraphEvent{" +
+                "type=" + typeToString(type) +
+                ", oldNode=" + oldNode +
+                ", newNode=" + newNode +
+                '}';
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+/**
+ * Implement this interface to be notified of membership changes in a {@link NetworkGraph}. Events are delivered
+ * on the executor configured on the graph ({@link NetworkGraph#setListenerExecutor}). A graph without one delivers
+ * events on the thread which applied the change; an agent configures a dedicated executor unless it runs on a
+ * discovery scheduler, so its listeners do not run on the thread receiving network traffic.
+ *
+ * Under bursts, changes to the same node are coalesced, so a listener receives the net change between the state
+ * it last observed and the current state, rather than every intermediate step. A node which left and joined
+ * again is always reported as having left and then joined, carrying its latest state.
+ */
+public interface NetworkGraphListener {
+
+    void onEvent(NetworkGraphEvent event);
+}
@@ -34,14 +34,19 @@ public class NetworkNode implements Serializable {
             HEALTHY = 0,
             UNHEALTHY = 2,
             SCALING_IN = 4,
-            SCALING_OUT = 8;
+            SCALING_OUT = 8,
+            SUSPECT = 16;
 
     private String name;
     private String group;
     private int status;
     private String address;
     private int port;
-    private long eventTime;
+    //-- advanced in place by heartbeats while the node is held by the graph
+    private volatile long eventTime;
+    private int discoveryPort;
+    private NodeAttributes attributes = NodeAttributes.EMPTY;
+    private transient boolean provisional;
 
     public String getGroup() {
         return group;
@@ -91,10 +96,45 @@ public class NetworkNode implements Serializable {
         this.port = port;
     }
 
+    /**
+     * @return - the port on which the agent of this node receives gossip, or 0 when it does not gossip
+     */
+    public int getDiscoveryPort() {
+        return discoveryPort;
+    }
+
+    public void setDiscoveryPort(int discoveryPort) {
+        this.discoveryPort = discoveryPort;
+    }
+
+    /**
+     * @return - the attributes broadcast with the node, never <null>
+     */
+    public NodeAttributes getAttributes() {
+        //-- null when deserialized from an agent which predates attributes
+        return attributes == null ? NodeAttributes.EMPTY : attributes;
+    }
+
+    public void setAttributes(NodeAttributes attributes) {
+        this.attributes = attributes == null ? NodeAttributes.EMPTY : attributes;
+    }
+
+    /**
+     * @return - true if the node was restored from a checkpoint and has not yet been confirmed by live traffic
+     */
+    public boolean isProvisional() {
+        return provisional;
+    }
+
+    public void setProvisional(boolean provisional) {
+        this.provisional = provisional;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        //-- nodes held by a compact graph are views of the same class hierarchy
+        if (!(o instanceof NetworkNode)) return false;
 
         NetworkNode host = (NetworkNode) o;
 
@@ -114,6 +154,7 @@ public class NetworkNode implements Serializable {
         else if(status == UNHEALTHY) return "UNHEALTHY";
         else if(status == SCALING_IN) return "SCALING_IN";
         else if(status == SCALING_OUT) return "SCALING_OUT";
+        else if(status == SUSPECT) return "SUSPECT";
         return "UNKNOWN";
     }
 
@@ -125,7 +166,10 @@ public class NetworkNode implements Serializable {
                 ", status=" + statusToString(status) +
                 ", address='" + address + '\'' +
                 ", port=" + port +
-                ", eventTime=" + eventTime +
+                ", eventTime=" + getEventTime() +
+                (discoveryPort > 0 ? ", discoveryPort=" + discoveryPort : "") +
+                (getAttributes().isEmpty() ? "" : ", attributes=" + attributes) +
+                (provisional ? ", provisional" : "") +
                 '}';
     }
 }
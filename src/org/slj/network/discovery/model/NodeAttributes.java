@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.slj.network.discovery.NetworkDiscoveryAgentUtils.utf8Length;
+
+/**
+ * An immutable set of typed attributes describing a node, for example its capacity, zone or version, broadcast
+ * with the node so no second discovery path is needed for such metadata. Each attribute is an int, a long, a short
+ * string or a tag (a key with no value). Modifying attributes returns a new instance, so the attributes of a node
+ * in a graph snapshot never change.
+ *
+ * Attributes are held in parallel arrays sorted by key, numeric values are not boxed. Keys are interned so the
+ * attributes of every node in the graph share a single instance of each key.
+ *
+ * String and tag attributes are indexed by the graph, see
+ * {@link NetworkGraph#getAllNodesByAttribute(String, int, String, String, boolean)}.
+ */
+public final class NodeAttributes implements Serializable {
+
+    private static final long serialVersionUID = 6712003945214781620L;
+
+    public static final byte
+            INT = 1,
+            LONG = 2,
+            STRING = 3,
+            TAG = 4;
+
+    public static final int MAX_ATTRIBUTES = 64;
+    public static final int MAX_KEY_LENGTH = 64;
+    public static final int MAX_STRING_LENGTH = 255;
+
+    /**
+     * The number of distinct keys interned, beyond which keys are used as given
+     */
+    static final int MAX_INTERNED_KEYS = 4096;
+
+    private static final Map<String, String> KEYS = new ConcurrentHashMap<>();
+
+    public static final NodeAttributes EMPTY = new NodeAttributes(new String[0], new byte[0], new long[0], new String[0]);
+
+    private final String[] keys;
+    private final byte[] types;
+    private final long[] numbers;
+    private final String[] strings;
+
+    private NodeAttributes(String[] keys, byte[] types, long[] numbers, String[] strings) {
+        this.keys = keys;
+        this.types = types;
+        this.numbers = numbers;
+        this.strings = strings;
+    }
+
+    public static Builder builder(){
+        return new Builder();
+    }
+
+    public Builder toBuilder(){
+        Builder builder = new Builder();
+        for (int i = 0; i < keys.length; i++){
+            builder.put(keys[i], types[i], numbers[i], strings[i]);
+        }
+        return builder;
+    }
+
+    public NodeAttributes withInt(String key, int value){
+        return toBuilder().withInt(key, value).build();
+    }
+
+    public NodeAttributes withLong(String key, long value){
+        return toBuilder().withLong(key, value).build();
+    }
+
+    public NodeAttributes withString(String key, String value){
+        return toBuilder().withString(key, value).build();
+    }
+
+    public NodeAttributes withTag(String tag){
+        return toBuilder().withTag(tag).build();
+    }
+
+    public NodeAttributes without(String key){
+        int index = indexOf(key);
+        if(index < 0) return this;
+        Builder builder = new Builder();
+        for (int i = 0; i < keys.length; i++){
+            if(i != index) builder.put(keys[i], types[i], numbers[i], strings[i]);
+        }
+        return builder.build();
+    }
+
+    public int size(){
+        return keys.length;
+    }
+
+    public boolean isEmpty(){
+        return keys.length == 0;
+    }
+
+    public boolean contains(String key){
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return - the type of the attribute, or 0 if the node does not have the attribute
+     */
+    public byte getType(String key){
+        int index = indexOf(key);
+        return index < 0 ? 0 : types[index];
+    }
+
+    /**
+     * @return - the value of an int attribute, or the default if the node does not have it
+     */
+    public int getInt(String key, int defaultValue){
+        int index = indexOf(key);
+        return index >= 0 && types[index] == INT ? (int) numbers[index] : defaultValue;
+    }
+
+    /**
+     * @return - the value of a long (or int) attribute, or the default if the node does not have it
+     */
+    public long getLong(String key, long defaultValue){
+        int index = indexOf(key);
+        return index >= 0 && (types[index] == LONG || types[index] == INT) ? numbers[index] : defaultValue;
+    }
+
+    /**
+     * @return - the value of a string attribute, or <null> if the node does not have it
+     */
+    public String getString(String key){
+        int index = indexOf(key);
+        return index >= 0 && types[index] == STRING ? strings[index] : null;
+    }
+
+    public boolean hasTag(String tag){
+        int index = indexOf(tag);
+        return index >= 0 && types[index] == TAG;
+    }
+
+    /**
+     * @return - the key of the attribute at the index, attributes being ordered by key
+     */
+    public String getKey(int index){
+        return keys[index];
+    }
+
+    public byte getType(int index){
+        return types[index];
+    }
+
+    /**
+     * @return - the value of the int or long attribute at the index
+     */
+    public long getNumber(int index){
+        return numbers[index];
+    }
+
+    /**
+     * @return - the value of the string attribute at the index
+     */
+    public String getString(int index){
+        return strings[index];
+    }
+
+    private int indexOf(String key){
+        return Arrays.binarySearch(keys, key);
+    }
+
+    /**
+     * @return - the shared instance of the key, so keys repeated across nodes are held once
+     */
+    public static String intern(String key){
+        String interned = KEYS.get(key);
+        if(interned != null) return interned;
+        if(KEYS.size() >= MAX_INTERNED_KEYS) return key;
+        interned = KEYS.putIfAbsent(key, key);
+        return interned == null ? key : interned;
+    }
+
+    private Object readResolve(){
+        //-- rebuilt so the keys of deserialized attributes are interned too
+        return toBuilder().build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        NodeAttributes that = (NodeAttributes) o;
+
+        return Arrays.equals(keys, that.keys) && Arrays.equals(types, that.types) &&
+                Arrays.equals(numbers, that.numbers) && Arrays.equals(strings, that.strings);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(keys);
+        result = 31 * result + Arrays.hashCode(types);
+        result = 31 * result + Arrays.hashCode(numbers);
+        result = 31 * result + Arrays.hashCode(strings);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < keys.length; i++){
+            if(i > 0) sb.append(", ");
+            sb.append(keys[i]);
+            if(types[i] == STRING) sb.append("='").append(strings[i]).append('\'');
+            else if(types[i] != TAG) sb.append('=').append(numbers[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Accumulates attributes, a later value for a key replacing an earlier one.
+     */
+    public static final class Builder {
+
+        private String[] keys = new String[4];
+        private byte[] types = new byte[4];
+        private long[] numbers = new long[4];
+        private String[] strings = new String[4];
+        private int size = 0;
+
+        private Builder(){
+        }
+
+        public Builder withInt(String key, int value){
+            return put(key, INT, value, null);
+        }
+
+        public Builder withLong(String key, long value){
+            return put(key, LONG, value, null);
+        }
+
+        public Builder withString(String key, String value){
+            Objects.requireNonNull(value, "string attribute value must not be <null>");
+            if(value.length() > MAX_STRING_LENGTH || utf8Length(value) > MAX_STRING_LENGTH){
+                throw new IllegalArgumentException("string attribute ["+key+"] exceeds "+MAX_STRING_LENGTH+" bytes");
+            }
+            return put(key, STRING, 0, value);
+        }
+
+        public Builder withTag(String tag){
+            return put(tag, TAG, 0, null);
+        }
+
+        public int size(){
+            return size;
+        }
+
+        private Builder put(String key, byte type, long number, String string){
+            if(key == null || key.isEmpty()){
+                throw new IllegalArgumentException("attribute key must not be empty");
+            }
+            if(key.length() > MAX_KEY_LENGTH || utf8Length(key) > MAX_KEY_LENGTH){
+                throw new IllegalArgumentException("attribute key ["+key+"] exceeds "+MAX_KEY_LENGTH+" bytes");
+            }
+            for (int i = 0; i < size; i++){
+                if(keys[i].equals(key)){
+                    types[i] = type;
+                    numbers[i] = number;
+                    strings[i] = string;
+                    return this;
+                }
+            }
+            if(size == MAX_ATTRIBUTES){
+                throw new IllegalArgumentException("a node may have at most "+MAX_ATTRIBUTES+" attributes");
+            }
+            if(size == keys.length){
+                int capacity = Math.min(MAX_ATTRIBUTES, size * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                types = Arrays.copyOf(types, capacity);
+                numbers = Arrays.copyOf(numbers, capacity);
+                strings = Arrays.copyOf(strings, capacity);
+            }
+            keys[size] = intern(key);
+            types[size] = type;
+            numbers[size] = number;
+            strings[size] = string;
+            size++;
+            return this;
+        }
+
+        public NodeAttributes build(){
+            if(size == 0) return EMPTY;
+            //-- insertion sort by key, attributes are few
+            String[] k = Arrays.copyOf(keys, size);
+            byte[] t = Arrays.copyOf(types, size);
+            long[] n = Arrays.copyOf(numbers, size);
+            String[] s = Arrays.copyOf(strings, size);
+            for (int i = 1; i < size; i++){
+                for (int j = i; j > 0 && k[j - 1].compareTo(k[j]) > 0; j--){
+                    swap(k, j);
+                    swap(s, j);
+                    byte tb = t[j]; t[j] = t[j - 1]; t[j - 1] = tb;
+                    long nb = n[j]; n[j] = n[j - 1]; n[j - 1] = nb;
+                }
+            }
+            return new NodeAttributes(k, t, n, s);
+        }
+
+        private static void swap(String[] arr, int j){
+            String tmp = arr[j];
+            arr[j] = arr[j - 1];
+            arr[j - 1] = tmp;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * The liveness of a peer as sent between full peer profiles; its name, event time and a version of the rest of its
+ * state. A receiver holding the same version of the node takes the event time as a heartbeat, any other receiver
+ * asks for the full profiles.
+ */
+public final class NodeDigest implements Serializable {
+
+    private static final long serialVersionUID = 6114027582214580342L;
+
+    private final String name;
+    private final long eventTime;
+    private final int version;
+
+    public NodeDigest(String name, long eventTime, int version) {
+        this.name = name;
+        this.eventTime = eventTime;
+        this.version = version;
+    }
+
+    public static NodeDigest of(NetworkNode node){
+        return new NodeDigest(node.getName(), node.getEventTime(), version(node));
+    }
+
+    /**
+     * @return - a version of the state of the node other than its event time, the same on every agent holding that
+     * state; its status, group, address, ports and attributes
+     */
+    public static int version(NetworkNode node){
+        int result = node.getStatus();
+        result = 31 * result + Objects.hashCode(node.getGroup());
+        result = 31 * result + Objects.hashCode(node.getAddress());
+        result = 31 * result + node.getPort();
+        result = 31 * result + node.getDiscoveryPort();
+        result = 31 * result + node.getAttributes().hashCode();
+        return result;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getEventTime() {
+        return eventTime;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "NodeDigest{" +
+                "name='" + name + '\'' +
+                ", eventTime=" + eventTime +
+                ", version=" + version +
+                '}';
+    }
+}
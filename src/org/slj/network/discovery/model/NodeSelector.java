@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+/**
+ * Chooses a single healthy node from a group. Selectors are obtained from the {@link NetworkGraph} and read the
+ * graph's current snapshot, so selection takes no locks. Selection allocates nothing while the snapshot is
+ * unchanged, and heartbeats advance event times in place without publishing one; after any other change to the
+ * graph the first selection allocates a little to check its candidates, and any per group state a strategy
+ * requires is prepared again only when the healthy membership of the group has changed.
+ *
+ * Selectors are thread-safe and intended to be created once and reused for every selection.
+ */
+public interface NodeSelector {
+
+    /**
+     * @return - a healthy node, or <null> if the group has no healthy nodes
+     */
+    NetworkNode select();
+}
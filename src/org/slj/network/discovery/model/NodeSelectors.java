@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * The node selection strategies available from {@link NetworkGraph}.
+ */
+final class NodeSelectors {
+
+    private NodeSelectors(){
+    }
+
+    /**
+     * The candidates of a selector for a given snapshot, along with any state the strategy derived from them.
+     */
+    static final class Candidates {
+
+        private final GraphSnapshot snapshot;
+        //-- the per group lists the candidates were assembled from
+        private final List<List<NetworkNode>> parts;
+        private final List<NetworkNode> nodes;
+        private final Object prepared;
+
+        private Candidates(GraphSnapshot snapshot, List<List<NetworkNode>> parts, List<NetworkNode> nodes, Object prepared) {
+            this.snapshot = snapshot;
+            this.parts = parts;
+            this.nodes = nodes;
+            this.prepared = prepared;
+        }
+    }
+
+    abstract static class AbstractSelector implements NodeSelector {
+
+        private final NetworkGraph graph;
+        private final String groupName;
+        private final boolean includeSelf;
+        private volatile Candidates candidates;
+
+        AbstractSelector(NetworkGraph graph, String groupName, boolean includeSelf) {
+            this.graph = graph;
+            this.groupName = groupName;
+            this.includeSelf = includeSelf;
+        }
+
+        @Override
+        public final NetworkNode select() {
+            Candidates c = candidates();
+            int size = c.nodes.size();
+            if(size == 0) return null;
+            if(size == 1) return c.nodes.get(0);
+            return select(c.nodes, size, c.prepared);
+        }
+
+        abstract NetworkNode select(List<NetworkNode> nodes, int size, Object prepared);
+
+        /**
+         * Derive any state the strategy requires from the candidates, called only when the candidates change.
+         */
+        Object prepare(List<NetworkNode> nodes){
+            return null;
+        }
+
+        private Candidates candidates(){
+            GraphSnapshot snapshot = graph.getSnapshot();
+            Candidates c = candidates;
+            if(c == null || c.snapshot != snapshot){
+                List<List<NetworkNode>> parts = parts(snapshot);
+                //-- snapshots share the lists of unchanged groups, so identity tells us if any group changed
+                if(c != null && sameParts(c.parts, parts)){
+                    c = new Candidates(snapshot, c.parts, c.nodes, c.prepared);
+                } else {
+                    List<NetworkNode> nodes = parts.size() == 1 ? parts.get(0) : concat(parts);
+                    c = new Candidates(snapshot, parts, nodes, prepare(nodes));
+                }
+                candidates = c;
+            }
+            return c;
+        }
+
+        private List<List<NetworkNode>> parts(GraphSnapshot snapshot){
+            if(groupName != null){
+                return Collections.singletonList(snapshot.getHealthyNodes(groupName, includeSelf));
+            }
+            List<List<NetworkNode>> parts = new ArrayList<>();
+            for (String group : snapshot.getGroupNames()){
+                parts.add(snapshot.getHealthyNodes(group, includeSelf));
+            }
+            return parts;
+        }
+
+        private static boolean sameParts(List<List<NetworkNode>> a, List<List<NetworkNode>> b){
+            if(a.size() != b.size()) return false;
+            for (int i = 0; i < a.size(); i++){
+                if(a.get(i) != b.get(i)) return false;
+            }
+            return true;
+        }
+
+        private static List<NetworkNode> concat(List<List<NetworkNode>> parts){
+            List<NetworkNode> l = new ArrayList<>();
+            for (List<NetworkNode> part : parts){
+                l.addAll(part);
+            }
+            return Collections.unmodifiableList(l);
+        }
+    }
+
+    static final class RoundRobin extends AbstractSelector {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        RoundRobin(NetworkGraph graph, String groupName, boolean includeSelf) {
+            super(graph, groupName, includeSelf);
+        }
+
+        @Override
+        NetworkNode select(List<NetworkNode> nodes, int size, Object prepared) {
+            return nodes.get((counter.getAndIncrement() & Integer.MAX_VALUE) % size);
+        }
+    }
+
+    static final class Random extends AbstractSelector {
+
+        Random(NetworkGraph graph, String groupName, boolean includeSelf) {
+            super(graph, groupName, includeSelf);
+        }
+
+        @Override
+        NetworkNode select(List<NetworkNode> nodes, int size, Object prepared) {
+            return nodes.get(ThreadLocalRandom.current().nextInt(size));
+        }
+    }
+
+    /**
+     * Picks two distinct nodes at random and returns the one with the lower load.
+     */
+    static final class PowerOfTwoChoices extends AbstractSelector {
+
+        private final ToLongFunction<NetworkNode> load;
+
+        PowerOfTwoChoices(NetworkGraph graph, String groupName, boolean includeSelf, ToLongFunction<NetworkNode> load) {
+            super(graph, groupName, includeSelf);
+            if(load == null) throw new IllegalArgumentException("load function must not be <null>");
+            this.load = load;
+        }
+
+        @Override
+        NetworkNode select(List<NetworkNode> nodes, int size, Object prepared) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if(second >= first) second++;
+            NetworkNode a = nodes.get(first);
+            NetworkNode b = nodes.get(second);
+            return load.applyAsLong(b) < load.applyAsLong(a) ? b : a;
+        }
+    }
+
+    /**
+     * Picks a node at random with probability proportional to its weight, nodes with a weight of 0 or less are
+     * never chosen unless every node has no weight, in which case selection is uniform.
+     */
+    static final class Weighted extends AbstractSelector {
+
+        private final ToIntFunction<NetworkNode> weight;
+
+        Weighted(NetworkGraph graph, String groupName, boolean includeSelf, ToIntFunction<NetworkNode> weight) {
+            super(graph, groupName, includeSelf);
+            if(weight == null) throw new IllegalArgumentException("weight function must not be <null>");
+            this.weight = weight;
+        }
+
+        @Override
+        Object prepare(List<NetworkNode> nodes) {
+            long[] cumulative = new long[nodes.size()];
+            long total = 0;
+            for (int i = 0; i < cumulative.length; i++){
+                total += Math.max(0, weight.applyAsInt(nodes.get(i)));
+                cumulative[i] = total;
+            }
+            return cumulative;
+        }
+
+        @Override
+        NetworkNode select(List<NetworkNode> nodes, int size, Object prepared) {
+            long[] cumulative = (long[]) prepared;
+            long total = cumulative[size - 1];
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if(total == 0) return nodes.get(random.nextInt(size));
+            long point = random.nextLong(total);
+            //-- the first index whose cumulative weight exceeds the point, so a node with no weight (which repeats
+            //-- the cumulative weight before it) is never chosen
+            int low = 0, high = size - 1;
+            while(low < high){
+                int mid = (low + high) >>> 1;
+                if(cumulative[mid] > point) high = mid;
+                else low = mid + 1;
+            }
+            return nodes.get(low);
+        }
+    }
+}
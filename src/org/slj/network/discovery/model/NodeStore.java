@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A struct-of-arrays store of the nodes of a graph, used in place of a node object per update for very large
+ * graphs. Node names are interned to int ids and the state of each node is held in primitive columns indexed by
+ * its id, with the group and address dictionary-encoded so every node of a group shares one string. The nodes
+ * held by the graph snapshots are {@link NodeView}s materialized from the columns when the material state of a
+ * node changes; a PING which only advances the event time is written in place and allocates nothing.
+ *
+ * The event time of a view is read through to the store, so it is the most recent event time of the node rather
+ * than that when the snapshot was taken. Event times are held in pages which are never copied, so a reader
+ * always observes the latest write. All other methods must be called holding the write lock of the graph.
+ */
+final class NodeStore {
+
+    static final int PAGE_SHIFT = 10;
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    static final int NONE = -1;
+
+    private final StringTable names = new StringTable();
+    private final StringTable groups = new StringTable();
+    private final StringTable addresses = new StringTable();
+
+    private int[] group = new int[0];
+    private int[] address = new int[0];
+    private int[] status = new int[0];
+    private int[] port = new int[0];
+    private int[] discoveryPort = new int[0];
+    private NodeAttributes[] attributes = new NodeAttributes[0];
+
+    //-- [event time, stamp] pairs, the stamp of an id moves each time the id is released so views of a removed
+    //-- node stop reading through once the id is reused
+    private volatile AtomicLongArray[] pages = new AtomicLongArray[0];
+
+    /**
+     * Write the state of the node, adding it if it is not already held.
+     * @return - a view of the node as now held, to be published in place of the node
+     */
+    NetworkNode put(NetworkNode node){
+        int id = names.find(node.getName());
+        int oldGroup = NONE, oldAddress = NONE;
+        NodeAttributes oldAttributes = null;
+        if(id == NONE){
+            id = names.acquire(node.getName());
+            ensureCapacity(id + 1);
+        } else {
+            oldGroup = group[id];
+            oldAddress = address[id];
+            oldAttributes = attributes[id];
+        }
+        //-- acquire before release so a node keeping its group does not drop the last reference to it
+        group[id] = groups.acquire(node.getGroup());
+        address[id] = addresses.acquire(node.getAddress());
+        groups.release(oldGroup);
+        addresses.release(oldAddress);
+        status[id] = node.getStatus();
+        port[id] = node.getPort();
+        discoveryPort[id] = node.getDiscoveryPort();
+        NodeAttributes nodeAttributes = node.getAttributes();
+        attributes[id] = oldAttributes != null && oldAttributes.equals(nodeAttributes) ? oldAttributes : nodeAttributes;
+        AtomicLongArray page = page(id);
+        int offset = offset(id);
+        page.set(offset, node.getEventTime());
+        return new NodeView(this, id, page.get(offset + 1), node.isProvisional());
+    }
+
+    /**
+     * Advance the event time of a node in place, provided the update carries nothing else; its status, port,
+     * discovery port, group, address and attributes are unchanged and the node is not provisional.
+     * @param oldHost - the node as currently published
+     * @return - true if the update was applied in place, otherwise the node must be {@link #put(NetworkNode)}
+     */
+    boolean heartbeat(NetworkNode oldHost, NetworkNode node){
+        if(!(oldHost instanceof NodeView) || oldHost.isProvisional()) return false;
+        NodeView view = (NodeView) oldHost;
+        if(!view.isCurrent(this)) return false;
+        int id = view.id;
+        if(status[id] != node.getStatus() ||
+                port[id] != node.getPort() ||
+                discoveryPort[id] != node.getDiscoveryPort() ||
+                !groups.matches(group[id], node.getGroup()) ||
+                !addresses.matches(address[id], node.getAddress()) ||
+                !attributes[id].equals(node.getAttributes())){
+            return false;
+        }
+        advance(id, node.getEventTime());
+        return true;
+    }
+
+    /**
+     * Advance the event time of a node in place, its state otherwise being known to be unchanged.
+     * @param oldHost - the node as currently published
+     * @return - true if the node is held by this store and was advanced
+     */
+    boolean advance(NetworkNode oldHost, long eventTime){
+        if(!(oldHost instanceof NodeView) || oldHost.isProvisional()) return false;
+        NodeView view = (NodeView) oldHost;
+        if(!view.isCurrent(this)) return false;
+        advance(view.id, eventTime);
+        return true;
+    }
+
+    private void advance(int id, long eventTime){
+        AtomicLongArray page = page(id);
+        int offset = offset(id);
+        if(eventTime > page.get(offset)){
+            page.set(offset, eventTime);
+        }
+    }
+
+    /**
+     * Remove the node, the published view keeps the event time it had when removed.
+     */
+    void remove(NetworkNode oldHost){
+        int id = names.find(oldHost.getName());
+        if(id == NONE) return;
+        AtomicLongArray page = page(id);
+        int offset = offset(id);
+        if(oldHost instanceof NodeView){
+            oldHost.setEventTime(page.get(offset));
+        }
+        //-- the stamp is moved before the id can be reused, so a view reading through sees either the old
+        //-- event time or a changed stamp
+        page.set(offset + 1, page.get(offset + 1) + 1);
+        groups.release(group[id]);
+        addresses.release(address[id]);
+        attributes[id] = null;
+        names.release(id);
+    }
+
+    private long eventTime(int id){
+        return page(id).get(offset(id));
+    }
+
+    private long stamp(int id){
+        return page(id).get(offset(id) + 1);
+    }
+
+    private AtomicLongArray page(int id){
+        return pages[id >>> PAGE_SHIFT];
+    }
+
+    private static int offset(int id){
+        return (id & (PAGE_SIZE - 1)) << 1;
+    }
+
+    private void ensureCapacity(int capacity){
+        if(capacity <= status.length) return;
+        int length = Math.max(capacity, Math.max(16, status.length * 2));
+        group = Arrays.copyOf(group, length);
+        address = Arrays.copyOf(address, length);
+        status = Arrays.copyOf(status, length);
+        port = Arrays.copyOf(port, length);
+        discoveryPort = Arrays.copyOf(discoveryPort, length);
+        attributes = Arrays.copyOf(attributes, length);
+        AtomicLongArray[] pages = this.pages;
+        int count = (length + PAGE_SIZE - 1) >>> PAGE_SHIFT;
+        if(count > pages.length){
+            //-- only the page references are copied, the pages themselves are shared with earlier readers
+            AtomicLongArray[] grown = Arrays.copyOf(pages, count);
+            for (int i = pages.length; i < count; i++){
+                grown[i] = new AtomicLongArray(PAGE_SIZE << 1);
+            }
+            this.pages = grown;
+        }
+    }
+
+    /**
+     * A node materialized from the store. Its material state is fixed when it is created, its event time reads
+     * through to the store while the node is held.
+     */
+    static final class NodeView extends NetworkNode {
+
+        private static final long serialVersionUID = 2730451849076238401L;
+
+        private final transient NodeStore store;
+        private final transient int id;
+        private final transient long stamp;
+
+        private NodeView(NodeStore store, int id, long stamp, boolean provisional){
+            this.store = store;
+            this.id = id;
+            this.stamp = stamp;
+            setName(store.names.get(id));
+            setGroup(store.groups.get(store.group[id]));
+            setAddress(store.addresses.get(store.address[id]));
+            setStatus(store.status[id]);
+            setPort(store.port[id]);
+            setDiscoveryPort(store.discoveryPort[id]);
+            setAttributes(store.attributes[id]);
+            setEventTime(store.eventTime(id));
+            setProvisional(provisional);
+        }
+
+        /**
+         * @return - true if the view belongs to the store and its id has not been released since it was taken
+         */
+        private boolean isCurrent(NodeStore store){
+            return this.store == store && store.stamp(id) == stamp;
+        }
+
+        @Override
+        public long getEventTime() {
+            if(store == null) return super.getEventTime();
+            long eventTime = store.eventTime(id);
+            return store.stamp(id) == stamp ? eventTime : super.getEventTime();
+        }
+
+        private Object writeReplace(){
+            NetworkNode node = new NetworkNode();
+            node.setName(getName());
+            node.setGroup(getGroup());
+            node.setStatus(getStatus());
+            node.setAddress(getAddress());
+            node.setPort(getPort());
+            node.setEventTime(getEventTime());
+            node.setDiscoveryPort(getDiscoveryPort());
+            node.setAttributes(getAttributes());
+            return node;
+        }
+    }
+
+    /**
+     * Interns strings to dense int ids, reference counted so an id is released with its last user. An open
+     * addressed table with linear probing maps strings to ids, released ids are reused before new ones are issued.
+     */
+    static final class StringTable {
+
+        private String[] values = new String[16];
+        private int[] refs = new int[16];
+        //-- id + 1 of the string hashed to each slot, 0 when the slot is empty
+        private int[] table = new int[32];
+        private int[] free = new int[16];
+        private int freeCount;
+        private int next;
+        private int size;
+
+        int size(){
+            return size;
+        }
+
+        String get(int id){
+            return id == NONE ? null : values[id];
+        }
+
+        boolean matches(int id, String value){
+            return id == NONE ? value == null : values[id].equals(value);
+        }
+
+        int find(String value){
+            if(value == null) return NONE;
+            int mask = table.length - 1;
+            for (int slot = hash(value) & mask; table[slot] != 0; slot = (slot + 1) & mask){
+                int id = table[slot] - 1;
+                if(values[id].equals(value)) return id;
+            }
+            return NONE;
+        }
+
+        /**
+         * @return - the id of the string, adding a reference to it
+         */
+        int acquire(String value){
+            if(value == null) return NONE;
+            int id = find(value);
+            if(id != NONE){
+                refs[id]++;
+                return id;
+            }
+            if(freeCount > 0){
+                id = free[--freeCount];
+            } else {
+                id = next++;
+                if(id == values.length){
+                    values = Arrays.copyOf(values, id * 2);
+                    refs = Arrays.copyOf(refs, id * 2);
+                }
+            }
+            //-- grow before the value is published, the rehash would otherwise insert it ahead of the insert below
+            if((size + 1) * 2 > table.length){
+                rehash(table.length * 2);
+            }
+            values[id] = value;
+            refs[id] = 1;
+            size++;
+            insert(id);
+            return id;
+        }
+
+        /**
+         * Drop a reference to the string, releasing its id with the last reference.
+         */
+        void release(int id){
+            if(id == NONE || --refs[id] > 0) return;
+            delete(id);
+            values[id] = null;
+            if(freeCount == free.length){
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = id;
+            size--;
+        }
+
+        private void insert(int id){
+            int mask = table.length - 1;
+            int slot = hash(values[id]) & mask;
+            while(table[slot] != 0){
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+
+        private void delete(int id){
+            int mask = table.length - 1;
+            int slot = hash(values[id]) & mask;
+            while(table[slot] != id + 1){
+                slot = (slot + 1) & mask;
+            }
+            //-- shift back the entries which follow in the same run so no probe sequence is broken
+            int next = (slot + 1) & mask;
+            while(table[next] != 0){
+                int home = hash(values[table[next] - 1]) & mask;
+                if(((next - home) & mask) >= ((next - slot) & mask)){
+                    table[slot] = table[next];
+                    slot = next;
+                }
+                next = (next + 1) & mask;
+            }
+            table[slot] = 0;
+        }
+
+        private void rehash(int capacity){
+            table = new int[capacity];
+            for (int id = 0; id < next; id++){
+                if(values[id] != null) insert(id);
+            }
+        }
+
+        private static int hash(String value){
+            int h = value.hashCode();
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+/**
+ * A hierarchical timing wheel. Each level has the same number of slots, the first level's slots each cover a
+ * single tick and every level above covers the entire span of the level beneath it in each slot. Scheduling
+ * a timeout and advancing the wheel by a tick are both O(1) regardless of the number of timeouts held; timeouts
+ * in the upper levels cascade down as their slot comes due.
+ *
+ * The wheel is not thread-safe, it must only be used by the thread that advances it.
+ */
+class TimingWheel {
+
+    static final int DEFAULT_WHEEL_SIZE = 64;
+    static final int DEFAULT_LEVELS = 4;
+
+    interface ExpiryHandler {
+        void expired(Timeout timeout, long now);
+    }
+
+    /**
+     * An entry held by the wheel, timeouts are intrusive singly linked list nodes so adding one to a slot
+     * does not allocate.
+     */
+    static class Timeout {
+        long deadline;
+        Timeout next;
+        boolean scheduled;
+    }
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final Timeout[][] slots;
+    private final long[] levelTicks;
+    private long currentTick;
+    private int size = 0;
+
+    TimingWheel(long tickMillis, long startMillis){
+        this(tickMillis, DEFAULT_WHEEL_SIZE, DEFAULT_LEVELS, startMillis);
+    }
+
+    TimingWheel(long tickMillis, int wheelSize, int levels, long startMillis){
+        if(tickMillis < 1) throw new IllegalArgumentException("tick must be at least 1 millisecond");
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.slots = new Timeout[levels][wheelSize];
+        this.levelTicks = new long[levels];
+        long span = 1;
+        for (int i = 0; i < levels; i++){
+            levelTicks[i] = span;
+            span *= wheelSize;
+        }
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    long getTickMillis() {
+        return tickMillis;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Schedule the timeout to expire at its deadline. A timeout already due expires on the next advance.
+     */
+    void schedule(Timeout timeout){
+        if(timeout.scheduled) throw new IllegalStateException("timeout is already scheduled");
+        timeout.scheduled = true;
+        size++;
+        insert(timeout);
+    }
+
+    /**
+     * Advance the wheel to the supplied time, expiring every timeout whose deadline has passed.
+     */
+    void advance(long now, ExpiryHandler handler){
+        long targetTick = now / tickMillis;
+        while(currentTick <= targetTick){
+            //-- cascade from the top level down, so timeouts moving into this tick's slot are expired with it
+            for (int level = slots.length - 1; level > 0; level--){
+                if(currentTick % levelTicks[level] == 0){
+                    int index = (int) ((currentTick / levelTicks[level]) % wheelSize);
+                    Timeout head = slots[level][index];
+                    slots[level][index] = null;
+                    while(head != null){
+                        Timeout next = head.next;
+                        head.next = null;
+                        insert(head);
+                        head = next;
+                    }
+                }
+            }
+            int index = (int) (currentTick % wheelSize);
+            Timeout head = slots[0][index];
+            slots[0][index] = null;
+            long tickEnd = (currentTick + 1) * tickMillis;
+            while(head != null){
+                Timeout next = head.next;
+                head.next = null;
+                if(head.deadline < tickEnd){
+                    head.scheduled = false;
+                    size--;
+                    handler.expired(head, now);
+                } else {
+                    insert(head);
+                }
+                head = next;
+            }
+            currentTick++;
+        }
+    }
+
+    private void insert(Timeout timeout){
+        long deadlineTick = Math.max(timeout.deadline / tickMillis, currentTick);
+        long delay = deadlineTick - currentTick;
+        int level = 0;
+        while(level < slots.length - 1 && delay >= levelTicks[level + 1]){
+            level++;
+        }
+        //-- beyond the span of the top level, park in the furthest slot, the timeout will be reinserted when it cascades
+        long slotTick = level == slots.length - 1 && delay >= levelTicks[level] * wheelSize ?
+                currentTick + (levelTicks[level] * (wheelSize - 1)) : deadlineTick;
+        int index = (int) ((slotTick / levelTicks[level]) % wheelSize);
+        timeout.next = slots[level][index];
+        slots[level][index] = timeout;
+    }
+}
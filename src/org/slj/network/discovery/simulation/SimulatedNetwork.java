@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.simulation;
+
+import org.slj.network.discovery.DiscoveryScheduler;
+import org.slj.network.discovery.transport.Transport;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * An in-memory datagram network driven by a virtual clock, on which many agents can run in a single thread.
+ * Each {@link Transport} created by the network is a host with an address of its own; a datagram sent to a
+ * target is delivered to that host alone, one sent without a target to every host, the sender included, as a
+ * broadcast would be. Delivery is subject to a latency chosen uniformly between the minimum and maximum, to loss
+ * and to duplication, and is refused between hosts in different partitions.
+ *
+ * The network is also the {@link DiscoveryScheduler} of its agents. Time only advances as the events scheduled
+ * on it are run, in order of their due time and then the order they were scheduled, so the agents start no
+ * threads and a run is reproducible for the seed it was created with. The network is not thread-safe, it must be
+ * run from a single thread.
+ */
+public class SimulatedNetwork implements DiscoveryScheduler {
+
+    public static final long DEFAULT_START_MILLIS = 1_600_000_000_000L;
+    public static final int DEFAULT_PORT = 2552;
+
+    private final Random random;
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final Map<InetSocketAddress, SimulatedTransport> transports = new LinkedHashMap<>();
+    private final Map<InetSocketAddress, Integer> partitions = new HashMap<>();
+    private long now;
+    private long sequence;
+    private int nextHost = 0;
+    private int nextPartition = 0;
+
+    private long minLatencyMillis = 1;
+    private long maxLatencyMillis = 5;
+    private double lossProbability = 0;
+    private double duplicationProbability = 0;
+
+    private long packetsSent = 0;
+    private long bytesSent = 0;
+    private long packetsDelivered = 0;
+    private long bytesDelivered = 0;
+    private long packetsLost = 0;
+    private long packetsPartitioned = 0;
+    private long packetsDuplicated = 0;
+
+    public SimulatedNetwork(long seed){
+        this(seed, DEFAULT_START_MILLIS);
+    }
+
+    /**
+     * @param seed - the seed of all randomness of the network and the agents running on it
+     * @param startMillis - the time of the virtual clock before any event is run
+     */
+    public SimulatedNetwork(long seed, long startMillis){
+        this.random = new Random(seed);
+        this.now = startMillis;
+    }
+
+    /**
+     * The latency of each delivery is chosen uniformly between the minimum and maximum, by default 1 to 5 millis.
+     */
+    public SimulatedNetwork withLatencyMillis(long minLatencyMillis, long maxLatencyMillis){
+        if(minLatencyMillis < 0 || maxLatencyMillis < minLatencyMillis){
+            throw new IllegalArgumentException("latency must be at least 0 and the maximum no less than the minimum");
+        }
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+        return this;
+    }
+
+    /**
+     * The probability each delivery is lost, by default 0.
+     */
+    public SimulatedNetwork withLossProbability(double lossProbability){
+        this.lossProbability = probability(lossProbability);
+        return this;
+    }
+
+    /**
+     * The probability each delivery is made twice, each copy with a latency of its own, by default 0.
+     */
+    public SimulatedNetwork withDuplicationProbability(double duplicationProbability){
+        this.duplicationProbability = probability(duplicationProbability);
+        return this;
+    }
+
+    /**
+     * Create a transport at the next free address of the network, to be passed to a single agent.
+     */
+    public Transport newTransport(){
+        int host = ++nextHost;
+        if(host >= 1 << 24){
+            throw new IllegalStateException("the network has no free addresses");
+        }
+        InetSocketAddress address;
+        try {
+            address = new InetSocketAddress(InetAddress.getByAddress(new byte[]{
+                    10, (byte) (host >>> 16), (byte) (host >>> 8), (byte) host}), DEFAULT_PORT);
+        } catch(UnknownHostException e){
+            throw new IllegalStateException(e);
+        }
+        SimulatedTransport transport = new SimulatedTransport(this, address);
+        transports.put(address, transport);
+        return transport;
+    }
+
+    /**
+     * Separate the hosts at the addresses from all others, they can then only reach each other. Partitions
+     * accumulate, each call separating its hosts from those of every other partition.
+     */
+    public void partition(Collection<InetSocketAddress> addresses){
+        int partition = ++nextPartition;
+        for (InetSocketAddress address : addresses){
+            partitions.put(address, partition);
+        }
+    }
+
+    /**
+     * Remove every partition, datagrams already refused are not delivered.
+     */
+    public void heal(){
+        partitions.clear();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+        events.add(new Event(now + Math.max(0, delayMillis), ++sequence, task));
+    }
+
+    @Override
+    public Random getRandom() {
+        return random;
+    }
+
+    /**
+     * Run the next event, advancing the clock to its due time.
+     * @return - false if there were no events to run
+     */
+    public boolean runNext(){
+        Event event = events.poll();
+        if(event == null) return false;
+        now = event.time;
+        event.task.run();
+        return true;
+    }
+
+    /**
+     * Run every event due within the period, then advance the clock to its end.
+     */
+    public void runFor(long millis){
+        long until = now + millis;
+        while(!events.isEmpty() && events.peek().time <= until){
+            runNext();
+        }
+        now = until;
+    }
+
+    /**
+     * @return - the number of events waiting to be run
+     */
+    public int getPendingEvents(){
+        return events.size();
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getPacketsDelivered() {
+        return packetsDelivered;
+    }
+
+    public long getBytesDelivered() {
+        return bytesDelivered;
+    }
+
+    public long getPacketsLost() {
+        return packetsLost;
+    }
+
+    public long getPacketsPartitioned() {
+        return packetsPartitioned;
+    }
+
+    public long getPacketsDuplicated() {
+        return packetsDuplicated;
+    }
+
+    /**
+     * Send the datagram from the transport, copying it as the buffer belongs to the sender.
+     */
+    void send(SimulatedTransport from, ByteBuffer datagram, InetSocketAddress target){
+        byte[] data = new byte[datagram.remaining()];
+        datagram.get(data);
+        packetsSent++;
+        bytesSent += data.length;
+        if(target != null){
+            SimulatedTransport to = transports.get(target);
+            if(to != null){
+                deliver(from, to, data);
+            }
+        } else {
+            for (SimulatedTransport to : transports.values()){
+                deliver(from, to, data);
+            }
+        }
+    }
+
+    void remove(SimulatedTransport transport){
+        transports.remove(transport.getLocalAddress());
+        partitions.remove(transport.getLocalAddress());
+    }
+
+    private void deliver(SimulatedTransport from, SimulatedTransport to, byte[] data){
+        if(!Objects.equals(partitions.get(from.getLocalAddress()), partitions.get(to.getLocalAddress()))){
+            packetsPartitioned++;
+            return;
+        }
+        if(lossProbability > 0 && random.nextDouble() < lossProbability){
+            packetsLost++;
+            return;
+        }
+        schedule(to, from.getLocalAddress(), data);
+        if(duplicationProbability > 0 && random.nextDouble() < duplicationProbability){
+            packetsDuplicated++;
+            schedule(to, from.getLocalAddress(), data);
+        }
+    }
+
+    private void schedule(SimulatedTransport to, InetSocketAddress source, byte[] data){
+        long latency = minLatencyMillis == maxLatencyMillis ? minLatencyMillis :
+                minLatencyMillis + (long) (random.nextDouble() * (maxLatencyMillis - minLatencyMillis + 1));
+        schedule(() -> {
+            //-- each receiver is handed a copy of its own, the agent decrypts in place
+            if(to.receive(ByteBuffer.wrap(data.clone()), source)){
+                packetsDelivered++;
+                bytesDelivered += data.length;
+            }
+        }, latency);
+    }
+
+    private static double probability(double probability){
+        if(probability < 0 || probability > 1){
+            throw new IllegalArgumentException("probability must be between 0 and 1");
+        }
+        return probability;
+    }
+
+    private static final class Event implements Comparable<Event> {
+
+        private final long time;
+        private final long sequence;
+        private final Runnable task;
+
+        private Event(long time, long sequence, Runnable task){
+            this.time = time;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            int c = Long.compare(time, o.time);
+            return c != 0 ? c : Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.simulation;
+
+import org.slj.network.discovery.transport.DatagramHandler;
+import org.slj.network.discovery.transport.Transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A host of a {@link SimulatedNetwork}. Datagrams are delivered to the handler on the thread running the network.
+ */
+final class SimulatedTransport implements Transport {
+
+    private final SimulatedNetwork network;
+    private final InetSocketAddress address;
+    private DatagramHandler handler;
+    private boolean open = false;
+    private boolean closed = false;
+
+    SimulatedTransport(SimulatedNetwork network, InetSocketAddress address){
+        this.network = network;
+        this.address = address;
+    }
+
+    @Override
+    public void open(DatagramHandler handler) throws IOException {
+        if(open || closed){
+            throw new IOException("a simulated transport can only be opened once");
+        }
+        this.handler = handler;
+        this.open = true;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return address;
+    }
+
+    @Override
+    public void send(ByteBuffer datagram, InetSocketAddress target) throws IOException {
+        if(!open){
+            throw new IOException("transport is not open");
+        }
+        network.send(this, datagram, target);
+    }
+
+    @Override
+    public void close() {
+        if(open){
+            open = false;
+            closed = true;
+            handler = null;
+            network.remove(this);
+        }
+    }
+
+    /**
+     * @return - true if the datagram was handed to the handler
+     */
+    boolean receive(ByteBuffer datagram, InetSocketAddress source){
+        DatagramHandler handler = this.handler;
+        if(handler == null) return false;
+        handler.receive(datagram, source);
+        return true;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.simulation;
+
+import org.slj.network.discovery.NetworkDiscoveryAgent;
+import org.slj.network.discovery.NetworkDiscoveryException;
+import org.slj.network.discovery.model.NetworkDiscoveryOptions;
+import org.slj.network.discovery.model.NetworkGraph;
+import org.slj.network.discovery.model.NetworkNode;
+import org.slj.network.discovery.transport.Transport;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs agents on a {@link SimulatedNetwork} and measures how their graphs converge, for example the time taken
+ * for a thousand agents gossiping over a lossy network to discover each other, or to recover from a partition.
+ * Agents are started on hosts of their own, each with a transport of the network and the network as its
+ * scheduler, and everything runs on the calling thread as virtual time is advanced.
+ *
+ * <pre>
+ * SimulatedNetwork network = new SimulatedNetwork(42).withLossProbability(0.01);
+ * Simulation simulation = new Simulation(network);
+ * String seed = "10.0.0.1:" + SimulatedNetwork.DEFAULT_PORT; // the host of the first agent started
+ * for (int i = 0; i &lt; 1000; i++){
+ *     simulation.start("myTrafficGroup", "myResourceGroup", "node" + i, new NetworkDiscoveryOptions().
+ *             withEncryptionSecret("mySecret").withTransportMode(TransportMode.GOSSIP).withSeeds(seed).
+ *             withGossipFanout(8).withMetricsMBeanEnabled(false).withVerboseLoggingEnabled(false));
+ * }
+ * long millis = simulation.runUntilConverged(120000);
+ * </pre>
+ */
+public class Simulation {
+
+    /**
+     * By default convergence is checked every 50 millis of virtual time
+     */
+    public static long DEFAULT_CHECK_INTERVAL_MILLIS = 50;
+
+    private final SimulatedNetwork network;
+    private final Map<String, NetworkDiscoveryAgent> agents = new LinkedHashMap<>();
+    private final Map<String, InetSocketAddress> addresses = new HashMap<>();
+    private long checkIntervalMillis = DEFAULT_CHECK_INTERVAL_MILLIS;
+
+    public Simulation(SimulatedNetwork network){
+        this.network = Objects.requireNonNull(network, "network must not be <null>");
+    }
+
+    public Simulation withCheckIntervalMillis(long checkIntervalMillis){
+        if(checkIntervalMillis < 1){
+            throw new IllegalArgumentException("check interval must be at least 1 millisecond");
+        }
+        this.checkIntervalMillis = checkIntervalMillis;
+        return this;
+    }
+
+    public SimulatedNetwork getNetwork(){
+        return network;
+    }
+
+    /**
+     * Start an agent on a new host of the network. The transport and discovery scheduler of the options are set
+     * to those of the network, the options must not be shared with another agent.
+     */
+    public NetworkDiscoveryAgent start(String trafficGroup, String groupName, String nodeName, NetworkDiscoveryOptions options)
+            throws NetworkDiscoveryException {
+        if(agents.containsKey(nodeName)){
+            throw new IllegalArgumentException("an agent named ["+nodeName+"] is already running");
+        }
+        NetworkDiscoveryAgent agent = new NetworkDiscoveryAgent(trafficGroup, groupName, nodeName);
+        Transport transport = network.newTransport();
+        try {
+            agent.start(options.withTransport(transport).withDiscoveryScheduler(network));
+        } catch(NetworkDiscoveryException | RuntimeException e){
+            transport.close();
+            throw e;
+        }
+        agents.put(nodeName, agent);
+        addresses.put(nodeName, transport.getLocalAddress());
+        return agent;
+    }
+
+    /**
+     * Stop the agent, which sends its DEATH before its host leaves the network.
+     */
+    public void stop(String nodeName){
+        NetworkDiscoveryAgent agent = agents.remove(nodeName);
+        if(agent != null){
+            addresses.remove(nodeName);
+            agent.stop();
+        }
+    }
+
+    /**
+     * Stop the agent without a DEATH, as though its host had failed.
+     */
+    public void kill(String nodeName){
+        InetSocketAddress address = addresses.get(nodeName);
+        if(address != null){
+            //-- isolated first, so the death certificate sent on stop reaches no one
+            network.partition(Collections.singleton(address));
+            stop(nodeName);
+        }
+    }
+
+    public NetworkDiscoveryAgent getAgent(String nodeName){
+        return agents.get(nodeName);
+    }
+
+    /**
+     * @return - the address of the host of the agent, as seeds are given
+     */
+    public InetSocketAddress getAddress(String nodeName){
+        return addresses.get(nodeName);
+    }
+
+    /**
+     * @return - the names of the agents running, in the order they were started
+     */
+    public Set<String> getNodeNames(){
+        return Collections.unmodifiableSet(agents.keySet());
+    }
+
+    /**
+     * Separate the hosts of the agents from all others, see {@link SimulatedNetwork#partition(Collection)}.
+     */
+    public void partition(Collection<String> nodeNames){
+        List<InetSocketAddress> l = new ArrayList<>(nodeNames.size());
+        for (String nodeName : nodeNames){
+            InetSocketAddress address = addresses.get(nodeName);
+            if(address != null) l.add(address);
+        }
+        network.partition(l);
+    }
+
+    public void heal(){
+        network.heal();
+    }
+
+    /**
+     * @return - true if the graph of every agent holds every agent running and no other node, none of them
+     * suspected. Agents which do not broadcast never appear in the graphs, so never converge.
+     */
+    public boolean isConverged(){
+        int size = agents.size();
+        //-- the sizes are compared first, which is cheap and rules out most of the rounds before convergence
+        for (NetworkDiscoveryAgent agent : agents.values()){
+            NetworkGraph graph = agent.getCurrentNetwork();
+            if(graph == null || graph.getSnapshot().size() != size) return false;
+        }
+        for (NetworkDiscoveryAgent agent : agents.values()){
+            NetworkGraph graph = agent.getCurrentNetwork();
+            for (String nodeName : agents.keySet()){
+                NetworkNode node = graph.getNode(nodeName);
+                if(node == null || node.getStatus() == NetworkNode.SUSPECT) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Advance virtual time until the graphs have converged.
+     * @return - the virtual millis taken to converge, or -1 if they did not converge within the timeout
+     */
+    public long runUntilConverged(long timeoutMillis){
+        return runUntil(this::isConverged, timeoutMillis);
+    }
+
+    /**
+     * Advance virtual time until the condition holds, checking it every check interval.
+     * @return - the virtual millis taken for the condition to hold, or -1 if it did not hold within the timeout
+     */
+    public long runUntil(BooleanSupplier condition, long timeoutMillis){
+        long start = network.currentTimeMillis();
+        while(true){
+            long elapsed = network.currentTimeMillis() - start;
+            if(condition.getAsBoolean()) return elapsed;
+            if(elapsed >= timeoutMillis) return -1;
+            network.runFor(Math.min(checkIntervalMillis, timeoutMillis - elapsed));
+        }
+    }
+
+    /**
+     * Stop every agent.
+     */
+    public void stopAll(){
+        for (String nodeName : new ArrayList<>(agents.keySet())){
+            stop(nodeName);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.transport;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of direct byte buffers of a fixed size. Buffers are allocated lazily when the pool is
+ * empty and retained on release up to the capacity of the pool, so in steady state acquiring and releasing
+ * a buffer does not allocate. At most capacity direct buffers are ever allocated; once all are in use a
+ * burst is served with heap buffers, which are cheap to collect and are discarded on release, rather than
+ * with direct buffers allocated and freed per datagram. The pool is safe to use across threads.
+ */
+public class BufferPool {
+
+    private final ArrayBlockingQueue<ByteBuffer> pool;
+    private final int bufferSize;
+    private final int capacity;
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    public BufferPool(int capacity, int bufferSize){
+        if(capacity < 1) throw new IllegalArgumentException("pool capacity must be greater than 0");
+        if(bufferSize < 1) throw new IllegalArgumentException("buffer size must be greater than 0");
+        this.pool = new ArrayBlockingQueue<>(capacity);
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return - a cleared buffer, either from the pool or newly allocated if the pool was empty; direct while
+     * fewer than capacity direct buffers have been allocated, otherwise heap
+     */
+    public ByteBuffer acquire(){
+        ByteBuffer buffer = pool.poll();
+        if(buffer == null){
+            buffer = allocate();
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private ByteBuffer allocate(){
+        int count;
+        while((count = allocated.get()) < capacity){
+            if(allocated.compareAndSet(count, count + 1)){
+                return ByteBuffer.allocateDirect(bufferSize);
+            }
+        }
+        return ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Return a buffer to the pool, heap buffers (and any buffer not of this pool) are discarded.
+     */
+    public void release(ByteBuffer buffer){
+        if(buffer != null && buffer.capacity() == bufferSize && buffer.isDirect()){
+            pool.offer(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getAvailable() {
+        return pool.size();
+    }
+}
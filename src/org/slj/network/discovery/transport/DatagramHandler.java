@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.transport;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Callback invoked by a {@link DatagramReceiver} for each datagram read from a channel.
+ */
+public interface DatagramHandler {
+
+    /**
+     * @param buffer - a buffer containing the datagram between its position and limit
+     * @param source - the address the datagram was received from
+     * @return - true if the handler has retained the buffer and will release it back to the pool itself, false
+     * if the receiver may reuse the buffer immediately
+     */
+    boolean receive(ByteBuffer buffer, SocketAddress source);
+}
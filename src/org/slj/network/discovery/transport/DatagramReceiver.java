@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads datagrams from one or more {@link DatagramChannel}s into pooled direct buffers and passes them
+ * to the registered {@link DatagramHandler}. The receiver runs on whichever thread calls {@link #run()}.
+ *
+ * Blocking Mode;
+ * A single channel is read using a blocking receive.
+ *
+ * Selector Mode;
+ * Any number of channels are registered with a {@link Selector} allowing a single thread to service
+ * several sockets.
+ *
+ * The buffer is only replaced when a handler retains it, so the receive loop itself does not allocate
+ * per datagram (the JDK will still allocate the source address).
+ */
+public class DatagramReceiver implements Runnable, Closeable {
+
+    /**
+     * The maximum number of datagrams read from a single channel per selection, so a busy
+     * socket cannot starve the others registered with the selector
+     */
+    static final int MAX_READS_PER_SELECTION = 64;
+
+    private final Logger logger = Logger.getLogger(DatagramReceiver.class.getName());
+    private final BufferPool pool;
+    private final Selector selector;
+    private final Queue<Registration> pending = new ConcurrentLinkedQueue<>();
+    private volatile DatagramChannel channel;
+    private volatile DatagramHandler handler;
+    private volatile boolean closed = false;
+
+    public DatagramReceiver(BufferPool pool, boolean selectorEnabled) throws IOException {
+        this.pool = pool;
+        this.selector = selectorEnabled ? Selector.open() : null;
+    }
+
+    /**
+     * Register a channel whose datagrams will be passed to the handler. In blocking mode only a single channel
+     * may be registered and it must be registered before the receiver is run.
+     */
+    public void register(DatagramChannel channel, DatagramHandler handler) throws IOException {
+        if(closed) throw new IllegalStateException("receiver is closed");
+        if(selector == null){
+            if(this.channel != null){
+                throw new IllegalStateException("a blocking receiver only supports a single channel");
+            }
+            channel.configureBlocking(true);
+            this.handler = handler;
+            this.channel = channel;
+        } else {
+            channel.configureBlocking(false);
+            pending.add(new Registration(channel, handler));
+            selector.wakeup();
+        }
+    }
+
+    public boolean isSelectorEnabled(){
+        return selector != null;
+    }
+
+    public BufferPool getBufferPool(){
+        return pool;
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer buffer = pool.acquire();
+        try {
+            while(!closed){
+                try {
+                    if(selector == null){
+                        buffer = receiveBlocking(buffer);
+                    } else {
+                        buffer = receiveSelected(buffer);
+                    }
+                } catch(ClosedChannelException | ClosedSelectorException e){
+                    if(!closed){
+                        logger.log(Level.WARNING, "receiver channel closed, stopping receiver");
+                    }
+                    break;
+                } catch(Throwable e){
+                    if(!closed){
+                        logger.log(Level.SEVERE, "encountered an error receiving datagram;", e);
+                    }
+                }
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if(selector != null){
+            try {
+                selector.close();
+            } catch(IOException e){
+                logger.log(Level.WARNING, "error closing selector;", e);
+            }
+        }
+    }
+
+    protected ByteBuffer receiveBlocking(ByteBuffer buffer) throws IOException {
+        DatagramChannel channel = this.channel;
+        if(channel == null){
+            throw new IllegalStateException("no channel registered with receiver");
+        }
+        SocketAddress source = channel.receive(buffer);
+        return source == null ? buffer : dispatch(handler, buffer, source);
+    }
+
+    protected ByteBuffer receiveSelected(ByteBuffer buffer) throws IOException {
+        selector.select();
+        Registration registration;
+        while((registration = pending.poll()) != null){
+            registration.channel.register(selector, SelectionKey.OP_READ, registration.handler);
+        }
+        Iterator<SelectionKey> itr = selector.selectedKeys().iterator();
+        while(itr.hasNext()){
+            SelectionKey key = itr.next();
+            itr.remove();
+            if(!key.isValid() || !key.isReadable()) continue;
+            DatagramChannel channel = (DatagramChannel) key.channel();
+            DatagramHandler handler = (DatagramHandler) key.attachment();
+            try {
+                SocketAddress source;
+                int reads = 0;
+                while(reads++ < MAX_READS_PER_SELECTION &&
+                        (source = channel.receive(buffer)) != null){
+                    buffer = dispatch(handler, buffer, source);
+                }
+            } catch(ClosedChannelException e){
+                key.cancel();
+            }
+        }
+        return buffer;
+    }
+
+    protected ByteBuffer dispatch(DatagramHandler handler, ByteBuffer buffer, SocketAddress source){
+        buffer.flip();
+        boolean retained = false;
+        try {
+            retained = handler.receive(buffer, source);
+        } catch(Throwable e){
+            logger.log(Level.SEVERE, "encountered an error handling datagram;", e);
+        }
+        if(retained){
+            return pool.acquire();
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static class Registration {
+
+        private final DatagramChannel channel;
+        private final DatagramHandler handler;
+
+        private Registration(DatagramChannel channel, DatagramHandler handler) {
+            this.channel = channel;
+            this.handler = handler;
+        }
+    }
+}
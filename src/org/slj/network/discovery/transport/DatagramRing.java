@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.transport;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free single producer / single consumer ring of datagrams. The buffer and its source are held
+ * in parallel arrays so enqueuing a datagram does not allocate. Exactly one thread may offer and exactly one
+ * thread may peek / remove.
+ */
+final class DatagramRing {
+
+    private final ByteBuffer[] buffers;
+    private final SocketAddress[] sources;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    //-- producer local view of the head, refreshed only when the ring appears full
+    private long cachedHead = 0;
+
+    DatagramRing(int capacity){
+        int size = size(capacity);
+        buffers = new ByteBuffer[size];
+        sources = new SocketAddress[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @return - the capacity of a ring created with the given capacity, rounded up to a power of 2
+     */
+    static int size(int capacity){
+        int size = 1;
+        while(size < capacity) size <<= 1;
+        return size;
+    }
+
+    int capacity(){
+        return buffers.length;
+    }
+
+    boolean offer(ByteBuffer buffer, SocketAddress source){
+        long t = tail.get();
+        if(t - cachedHead >= buffers.length){
+            cachedHead = head.get();
+            if(t - cachedHead >= buffers.length){
+                return false;
+            }
+        }
+        int index = (int) (t & mask);
+        buffers[index] = buffer;
+        sources[index] = source;
+        //-- full volatile write, the consumer's park decision relies on store/load ordering with its parked flag
+        tail.set(t + 1);
+        return true;
+    }
+
+    ByteBuffer peek(){
+        long h = head.get();
+        if(h >= tail.get()) return null;
+        return buffers[(int) (h & mask)];
+    }
+
+    SocketAddress peekSource(){
+        return sources[(int) (head.get() & mask)];
+    }
+
+    void remove(){
+        long h = head.get();
+        int index = (int) (h & mask);
+        buffers[index] = null;
+        sources[index] = null;
+        head.lazySet(h + 1);
+    }
+
+    boolean isEmpty(){
+        return head.get() >= tail.get();
+    }
+
+    int size(){
+        return (int) (tail.get() - head.get());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.transport;
+
+/**
+ * A datagram which is fragmented or compressed carries a single flags byte immediately after the framed form of
+ * the {@link TrafficGroupHeader}, describing how the rest of the datagram is to be read. Any other datagram is
+ * sent with the plain header and no flags, as it was before framing, so agents which predate framing still read
+ * it.
+ *
+ * Plain;
+ * [traffic group header][payload]
+ *
+ * Frame;
+ * [framed traffic group header][flags:byte][payload]
+ *
+ * When the flags include COMPRESSED the payload, once reassembled and decrypted, is deflated (see
+ * {@link org.slj.network.discovery.PayloadCompressor}).
+ *
+ * Fragment (flags include FRAGMENT);
+ * [traffic group header][flags:byte][messageId:int][index:unsigned short][count:unsigned short][payload part]
+ *
+ * The flags of every fragment of a message are the same, so the flags of the reassembled payload are those of any
+ * fragment without the FRAGMENT bit. A datagram with flags this agent does not understand is discarded.
+ */
+public final class Frame {
+
+    public static final byte
+            FRAGMENT = 0x01,
+            COMPRESSED = 0x02;
+
+    static final int KNOWN_FLAGS = FRAGMENT | COMPRESSED;
+
+    public static final int FLAGS_LENGTH = 1;
+
+    public static final int FRAGMENT_HEADER_LENGTH = 8;
+
+    public static final int MAX_FRAGMENTS = 0xFFFF;
+
+    //-- the smallest payload of any fragment but the last, which bounds the fragment count of a message by its size
+    public static final int MIN_FRAGMENT_PAYLOAD = 256;
+
+    private Frame(){
+    }
+
+    /**
+     * @return - true if every bit set in the flags is understood by this agent
+     */
+    public static boolean isSupported(byte flags){
+        return (flags & ~KNOWN_FLAGS) == 0;
+    }
+
+    public static boolean isCompressed(byte flags){
+        return (flags & COMPRESSED) != 0;
+    }
+
+    public static boolean isFragment(byte flags){
+        return (flags & FRAGMENT) != 0;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.transport;
+
+import org.slj.network.discovery.NetworkDiscoveryException;
+
+import java.net.SocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reassembles fragmented messages (see {@link Frame}) keyed by their source and message id. The table is bounded
+ * both in the number of messages held and in the size of each message, and a message which is not complete
+ * within the timeout is discarded, so lost fragments or a hostile sender can only ever hold a fixed amount of
+ * memory.
+ *
+ * The table is thread-safe, fragments are copied so the caller may reuse its buffer on return.
+ */
+public class ReassemblyTable {
+
+    private final int capacity;
+    private final int maxMessageSize;
+    private final int maxFragments;
+    private final long timeoutMillis;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>();
+    private long droppedCount = 0;
+    private long reassembledCount = 0;
+
+    /**
+     * @param capacity - the maximum number of incomplete messages held, beyond which the oldest is discarded
+     * @param maxMessageSize - the maximum size in bytes of a reassembled message
+     * @param timeoutMillis - the time after its first fragment within which a message must be complete
+     */
+    public ReassemblyTable(int capacity, int maxMessageSize, long timeoutMillis){
+        if(capacity < 1) throw new IllegalArgumentException("reassembly capacity must be greater than 0");
+        this.capacity = capacity;
+        this.maxMessageSize = maxMessageSize;
+        this.maxFragments = Math.min(Frame.MAX_FRAGMENTS, maxMessageSize / Frame.MIN_FRAGMENT_PAYLOAD + 1);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Add the fragment between the position and limit of the buffer, which begins with the fragment header.
+     * @return - the reassembled payload, flipped ready for reading, once every fragment has been received,
+     * otherwise <null>
+     * @throws NetworkDiscoveryException - the fragment was malformed or would exceed the maximum message size
+     */
+    public synchronized ByteBuffer offer(SocketAddress source, ByteBuffer buffer, long now) throws NetworkDiscoveryException {
+        int messageId, index, count;
+        try {
+            messageId = buffer.getInt();
+            index = buffer.getShort() & 0xFFFF;
+            count = buffer.getShort() & 0xFFFF;
+        } catch(BufferUnderflowException e){
+            throw new NetworkDiscoveryException("malformed fragment header", e);
+        }
+        int length = buffer.remaining();
+        if(count == 0 || index >= count){
+            throw new NetworkDiscoveryException("invalid fragment ["+index+"] of ["+count+"]");
+        }
+        //-- checked before an entry is allocated, whichever fragment arrives first
+        if(count > maxFragments){
+            throw new NetworkDiscoveryException("fragmented message of ["+count+"] fragments exceeds the maximum of ["+maxFragments+"]");
+        }
+        if(index < count - 1 && length < Frame.MIN_FRAGMENT_PAYLOAD){
+            throw new NetworkDiscoveryException("fragment ["+index+"] of ["+count+"] is smaller than the minimum fragment payload");
+        }
+        if(index < count - 1 && (long) length * (count - 1) > maxMessageSize){
+            throw new NetworkDiscoveryException("fragmented message exceeds the maximum size of ["+maxMessageSize+"] bytes");
+        }
+        expire(now);
+        Key key = new Key(source, messageId);
+        Entry entry = entries.get(key);
+        if(entry == null){
+            entry = new Entry(count, now);
+            entries.put(key, entry);
+            if(entries.size() > capacity){
+                Iterator<Entry> itr = entries.values().iterator();
+                itr.next();
+                itr.remove();
+                droppedCount++;
+            }
+        } else if(entry.parts.length != count){
+            entries.remove(key);
+            droppedCount++;
+            throw new NetworkDiscoveryException("fragment count changed for message ["+messageId+"]");
+        }
+        if(entry.parts[index] != null){
+            //-- a duplicate, for example the same datagram received on two interfaces
+            return null;
+        }
+        if(entry.size + length > maxMessageSize){
+            entries.remove(key);
+            droppedCount++;
+            throw new NetworkDiscoveryException("fragmented message exceeds the maximum size of ["+maxMessageSize+"] bytes");
+        }
+        byte[] part = new byte[length];
+        buffer.get(part);
+        entry.parts[index] = part;
+        entry.size += length;
+        if(++entry.received < count){
+            return null;
+        }
+        entries.remove(key);
+        reassembledCount++;
+        ByteBuffer message = ByteBuffer.allocate(entry.size);
+        for (byte[] p : entry.parts){
+            message.put(p);
+        }
+        message.flip();
+        return message;
+    }
+
+    /**
+     * @return - the number of messages discarded before they were complete
+     */
+    public synchronized long getDroppedCount(){
+        return droppedCount;
+    }
+
+    public synchronized long getReassembledCount(){
+        return reassembledCount;
+    }
+
+    /**
+     * @return - the number of messages currently awaiting fragments
+     */
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    private void expire(long now){
+        //-- entries are held in the order they were started, so only the eldest need be checked
+        Iterator<Map.Entry<Key, Entry>> itr = entries.entrySet().iterator();
+        while(itr.hasNext()){
+            if(now - itr.next().getValue().started < timeoutMillis) break;
+            itr.remove();
+            droppedCount++;
+        }
+    }
+
+    private static final class Key {
+
+        private final SocketAddress source;
+        private final int messageId;
+
+        private Key(SocketAddress source, int messageId) {
+            this.source = source;
+            this.messageId = messageId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return messageId == key.messageId && Objects.equals(source, key.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(source) + messageId;
+        }
+    }
+
+    private static final class Entry {
+
+        private final byte[][] parts;
+        private final long started;
+        private int received;
+        private int size;
+
+        private Entry(int count, long started) {
+            this.parts = new byte[count][];
+            this.started = started;
+        }
+    }
+}
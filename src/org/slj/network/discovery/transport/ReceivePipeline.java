@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.transport;
+
+import java.io.Closeable;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decouples reading the socket from processing its datagrams. The receiving thread hands each datagram to one of
+ * a pool of workers through a bounded lock-free ring, the worker then invokes the downstream handler (decrypt,
+ * decode and apply) and releases the buffer back to the pool.
+ *
+ * Datagrams are sharded across workers by their source address, so datagrams from any one sender are always
+ * processed in the order they were received. When a worker's ring is full the datagram is either dropped
+ * (and counted) or, if blocking is enabled, the receiving thread waits for space, leaving the kernel
+ * receive buffer to absorb the burst.
+ */
+public class ReceivePipeline implements DatagramHandler, Closeable {
+
+    static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Logger logger = Logger.getLogger(ReceivePipeline.class.getName());
+    private final BufferPool pool;
+    private final DatagramHandler handler;
+    private final Worker[] workers;
+    private final boolean blockWhenFull;
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * @param threadName - the prefix used to name the worker threads
+     * @param workerCount - the number of worker threads, at least 1
+     * @param capacity - the capacity of each worker's ring (rounded up to a power of 2)
+     * @param blockWhenFull - when true the receiving thread waits for space rather than dropping the datagram
+     * @param pool - the pool the receiving thread acquires buffers from, workers release buffers back into it
+     * @param handler - the downstream handler, invoked on the worker threads
+     */
+    public ReceivePipeline(String threadName, int workerCount, int capacity, boolean blockWhenFull,
+                           BufferPool pool, DatagramHandler handler){
+        if(workerCount < 1) throw new IllegalArgumentException("pipeline requires at least 1 worker");
+        if(capacity < 1) throw new IllegalArgumentException("pipeline capacity must be greater than 0");
+        this.pool = pool;
+        this.handler = handler;
+        this.blockWhenFull = blockWhenFull;
+        this.workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++){
+            workers[i] = new Worker(new DatagramRing(capacity), threadName + "-worker-" + i);
+        }
+    }
+
+    /**
+     * @return - the number of buffers a pipeline of workerCount workers with rings of the given capacity can
+     * hold at once; a full ring per worker, the datagram each worker is processing and the one being received.
+     * A pool of at least this size serves any burst the rings absorb from buffers it already holds
+     */
+    public static int getBufferCount(int workerCount, int capacity){
+        return workerCount * (DatagramRing.size(capacity) + 1) + 1;
+    }
+
+    public void start(){
+        for (Worker worker : workers){
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * Invoked by the receiving thread (which must be the only thread to do so) to enqueue the datagram.
+     */
+    @Override
+    public boolean receive(ByteBuffer buffer, SocketAddress source) {
+        Worker worker = workers.length == 1 ? workers[0] :
+                workers[(source.hashCode() & Integer.MAX_VALUE) % workers.length];
+        while(!worker.ring.offer(buffer, source)){
+            if(!blockWhenFull || closed){
+                dropped.incrementAndGet();
+                return false;
+            }
+            worker.signal();
+            Thread.yield();
+        }
+        enqueued.incrementAndGet();
+        worker.signal();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Worker worker : workers){
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    /**
+     * @return - the number of datagrams handed to a worker
+     */
+    public long getEnqueuedCount(){
+        return enqueued.get();
+    }
+
+    /**
+     * @return - the number of datagrams dropped because a worker's ring was full
+     */
+    public long getDroppedCount(){
+        return dropped.get();
+    }
+
+    /**
+     * @return - the number of datagrams currently waiting across all workers
+     */
+    public int getQueueDepth(){
+        int depth = 0;
+        for (Worker worker : workers){
+            depth += worker.ring.size();
+        }
+        return depth;
+    }
+
+    public int getWorkerCount(){
+        return workers.length;
+    }
+
+    private class Worker implements Runnable {
+
+        private final DatagramRing ring;
+        private final Thread thread;
+        private volatile boolean parked = false;
+
+        private Worker(DatagramRing ring, String name) {
+            this.ring = ring;
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        private void signal(){
+            if(parked){
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            while(!closed){
+                ByteBuffer buffer = ring.peek();
+                if(buffer == null){
+                    parked = true;
+                    if(ring.isEmpty() && !closed){
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    parked = false;
+                    continue;
+                }
+                SocketAddress source = ring.peekSource();
+                ring.remove();
+                try {
+                    if(!handler.receive(buffer, source)){
+                        pool.release(buffer);
+                    }
+                } catch(Throwable e){
+                    logger.log(Level.SEVERE, "encountered an error processing datagram;", e);
+                    pool.release(buffer);
+                }
+            }
+        }
+    }
+}
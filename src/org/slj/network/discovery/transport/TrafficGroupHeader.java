@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.transport;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The traffic group header which prefixes every datagram, in the form $-trafficGroup-$. The header bytes are
+ * computed once, and incoming datagrams are matched against them with a bounded comparison that does not
+ * allocate, so foreign traffic on the segment costs at most a comparison of the header length.
+ *
+ * A datagram carrying a {@link Frame} is prefixed with the framed form of the header, $=trafficGroup=$, which is
+ * of the same length. An agent which predates framing does not match the framed form and so ignores the datagram,
+ * rather than failing to read it, while datagrams with the plain header are read as a payload with no flags.
+ */
+public final class TrafficGroupHeader {
+
+    private static final String HEADER = "$-%s-$";
+    private static final String FRAMED_HEADER = "$=%s=$";
+
+    private static final byte PLAIN = '-', FRAMED = '=';
+
+    /**
+     * The longest header {@link #parseLength(ByteBuffer)} will search for
+     */
+    static final int MAX_LENGTH = 256;
+
+    private final String trafficGroup;
+    private final byte[] prefix;
+    private final byte[] framedPrefix;
+    private final int hash;
+
+    public TrafficGroupHeader(String trafficGroup){
+        this.trafficGroup = trafficGroup;
+        this.prefix = String.format(HEADER, trafficGroup).getBytes(StandardCharsets.UTF_8);
+        this.framedPrefix = String.format(FRAMED_HEADER, trafficGroup).getBytes(StandardCharsets.UTF_8);
+        this.hash = hash(ByteBuffer.wrap(prefix), prefix.length);
+    }
+
+    /**
+     * Find the end of whichever header the buffer begins with, plain or framed. Traffic groups are alphanumeric,
+     * so the header ends at the first -$ (or =$) following the opening $- (or $=). The position of the buffer is
+     * not changed.
+     * @return - the length of the header, or -1 if the buffer does not begin with a header
+     */
+    public static int parseLength(ByteBuffer buffer){
+        int position = buffer.position();
+        int limit = Math.min(buffer.limit(), position + MAX_LENGTH);
+        if(limit - position < 4 || buffer.get(position) != '$') return -1;
+        byte separator = buffer.get(position + 1);
+        if(separator != PLAIN && separator != FRAMED) return -1;
+        for (int i = position + 2; i < limit - 1; i++){
+            if(buffer.get(i) == separator && buffer.get(i + 1) == '$'){
+                return i + 2 - position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return - true if the header beginning at the given index of the buffer is the framed form
+     */
+    public static boolean isFramed(ByteBuffer buffer, int index){
+        return buffer.get(index + 1) == FRAMED;
+    }
+
+    /**
+     * @return - the hash of the header of the given length at the position of the buffer, equal to
+     * {@link #hash()} of the matching header in either form. The position of the buffer is not changed.
+     */
+    public static int hash(ByteBuffer buffer, int length){
+        int position = buffer.position();
+        int h = 1;
+        //-- the separators are left out so both forms of a header hash alike
+        for (int i = 2; i < length - 2; i++){
+            h = 31 * h + buffer.get(position + i);
+        }
+        return h;
+    }
+
+    public int hash(){
+        return hash;
+    }
+
+    public String getTrafficGroup() {
+        return trafficGroup;
+    }
+
+    /**
+     * @return - the number of bytes the header occupies on the wire
+     */
+    public int length(){
+        return prefix.length;
+    }
+
+    /**
+     * @return - true if the bytes between the position and limit of the buffer begin with this header, in
+     * either form. The position of the buffer is not changed.
+     */
+    public boolean matches(ByteBuffer buffer){
+        int length = prefix.length;
+        if(buffer.remaining() < length) return false;
+        if(buffer.hasArray()){
+            return matches(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        int position = buffer.position();
+        byte[] prefix = buffer.get(position + 1) == FRAMED ? framedPrefix : this.prefix;
+        int diff = 0;
+        for (int i = 0; i < length; i++){
+            diff |= buffer.get(position + i) ^ prefix[i];
+        }
+        return diff == 0;
+    }
+
+    /**
+     * @return - true if the bytes of the array from offset (of the length given) begin with this header, in
+     * either form.
+     */
+    public boolean matches(byte[] arr, int offset, int length){
+        int len = this.prefix.length;
+        if(length < len || arr.length - offset < len) return false;
+        byte[] prefix = arr[offset + 1] == FRAMED ? framedPrefix : this.prefix;
+        //-- no early exit, the loop is a fixed length xor/or which the JIT is free to vectorize
+        int diff = 0;
+        for (int i = 0; i < len; i++){
+            diff |= arr[offset + i] ^ prefix[i];
+        }
+        return diff == 0;
+    }
+
+    /**
+     * Advance the position of a matching buffer past the header, leaving the payload between the position and limit.
+     */
+    public void skip(ByteBuffer buffer){
+        buffer.position(buffer.position() + prefix.length);
+    }
+
+    /**
+     * Write the header into the buffer at its current position.
+     */
+    public void write(ByteBuffer buffer){
+        buffer.put(prefix);
+    }
+
+    /**
+     * Write the framed form of the header into the buffer at its current position, to be followed by the flags
+     * of the frame.
+     */
+    public void writeFramed(ByteBuffer buffer){
+        buffer.put(framedPrefix);
+    }
+
+    public byte[] toByteArray(){
+        return prefix.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "TrafficGroupHeader{" +
+                "trafficGroup='" + trafficGroup + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Carries the datagrams of an agent in place of its sockets. An agent started with a transport
+ * (see {@link org.slj.network.discovery.model.NetworkDiscoveryOptions#withTransport(Transport)}) opens no channels;
+ * it sends each datagram through the transport and receives each datagram from it, the header, frame flags,
+ * fragmentation, encryption, compression and encoding being the same as on the network. A transport is used by
+ * one agent, which opens it on start and closes it on stop.
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Start delivering the datagrams received to the handler.
+     * @param handler - the handler, or <null> when the agent only sends
+     */
+    void open(DatagramHandler handler) throws IOException;
+
+    /**
+     * @return - the address at which the transport receives, advertised by the agent as its address and, when
+     * gossiping, its discovery port
+     */
+    InetSocketAddress getLocalAddress();
+
+    /**
+     * Send the datagram between the position and limit of the buffer. The buffer is only valid for the duration
+     * of the call.
+     * @param target - the agent to send to, or <null> to send to every agent reachable, as a broadcast or
+     *               multicast would
+     */
+    void send(ByteBuffer datagram, InetSocketAddress target) throws IOException;
+
+    /**
+     * Stop delivering datagrams, those in flight to the transport are discarded.
+     */
+    @Override
+    void close();
+}
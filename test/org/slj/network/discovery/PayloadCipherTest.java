@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PayloadCipherTest {
+
+    private static final byte[] PLAIN = "the quick brown fox jumps over the lazy dog, twice over"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testRoundTrip() throws NetworkDiscoveryException {
+        for (EncryptionMode mode : EncryptionMode.values()){
+            PayloadCipher cipher = new PayloadCipher(mode, "secret");
+            ByteBuffer encrypted = encrypt(cipher, PLAIN);
+            assertTrue(mode + " overhead", encrypted.remaining() <= PLAIN.length + cipher.getMaxOverhead());
+            assertArrayEquals(mode.toString(), PLAIN, decrypt(new PayloadCipher(mode, "secret"), encrypted));
+        }
+    }
+
+    @Test
+    public void testRoundTripFromBufferOffset() throws NetworkDiscoveryException {
+        for (EncryptionMode mode : EncryptionMode.values()){
+            PayloadCipher cipher = new PayloadCipher(mode, "secret");
+            //-- as the agent does, the header precedes the cipher text in the same buffer
+            ByteBuffer encrypted = encrypt(cipher, PLAIN);
+            ByteBuffer datagram = ByteBuffer.allocate(encrypted.remaining() + 7);
+            datagram.position(7);
+            datagram.put(encrypted);
+            datagram.flip();
+            datagram.position(7);
+            cipher.decrypt(datagram);
+            assertEquals(7, datagram.position());
+            byte[] plain = new byte[datagram.remaining()];
+            datagram.get(plain);
+            assertArrayEquals(mode.toString(), PLAIN, plain);
+        }
+    }
+
+    @Test
+    public void testGcmNonceIsUniquePerPayload() throws NetworkDiscoveryException {
+        PayloadCipher cipher = new PayloadCipher(EncryptionMode.AES_GCM, "secret");
+        ByteBuffer first = encrypt(cipher, PLAIN);
+        ByteBuffer second = encrypt(cipher, PLAIN);
+        assertFalse(Arrays.equals(drain(first), drain(second)));
+    }
+
+    @Test
+    public void testGcmRejectsTamperedCipherText() throws NetworkDiscoveryException {
+        PayloadCipher cipher = new PayloadCipher(EncryptionMode.AES_GCM, "secret");
+        ByteBuffer encrypted = encrypt(cipher, PLAIN);
+        int index = PayloadCipher.GCM_NONCE_LENGTH + 3;
+        encrypted.put(index, (byte) (encrypted.get(index) ^ 0x01));
+        assertRejected(cipher, encrypted);
+    }
+
+    @Test
+    public void testGcmRejectsTamperedNonceAndTag() throws NetworkDiscoveryException {
+        PayloadCipher cipher = new PayloadCipher(EncryptionMode.AES_GCM, "secret");
+        ByteBuffer encrypted = encrypt(cipher, PLAIN);
+        encrypted.put(0, (byte) (encrypted.get(0) ^ 0x01));
+        assertRejected(cipher, encrypted);
+        ByteBuffer tag = encrypt(cipher, PLAIN);
+        int last = tag.limit() - 1;
+        tag.put(last, (byte) (tag.get(last) ^ 0x01));
+        assertRejected(cipher, tag);
+    }
+
+    @Test
+    public void testGcmRejectsForeignKeyAndShortPayload() throws NetworkDiscoveryException {
+        ByteBuffer encrypted = encrypt(new PayloadCipher(EncryptionMode.AES_GCM, "secret"), PLAIN);
+        assertRejected(new PayloadCipher(EncryptionMode.AES_GCM, "other"), encrypted);
+        assertRejected(new PayloadCipher(EncryptionMode.AES_GCM, "secret"),
+                ByteBuffer.wrap(new byte[PayloadCipher.GCM_NONCE_LENGTH + PayloadCipher.GCM_TAG_LENGTH - 1]));
+    }
+
+    @Test
+    public void testEcbRejectsTamperedPadding() throws NetworkDiscoveryException {
+        //-- ECB has no integrity protection, only damage to the padding of the final block can be detected
+        PayloadCipher cipher = new PayloadCipher(EncryptionMode.AES_ECB, "secret");
+        ByteBuffer encrypted = encrypt(cipher, PLAIN);
+        assertRejected(new PayloadCipher(EncryptionMode.AES_ECB, "other"), encrypted.duplicate());
+        ByteBuffer truncated = encrypted.duplicate();
+        truncated.limit(truncated.limit() - 1);
+        assertRejected(cipher, truncated);
+    }
+
+    @Test
+    public void testEcbMatchesLegacyUtilities() throws Exception {
+        ByteBuffer encrypted = encrypt(new PayloadCipher(EncryptionMode.AES_ECB, "secret"), PLAIN);
+        assertArrayEquals(PLAIN, NetworkDiscoveryAgentUtils.AES_decrypt("secret", drain(encrypted)));
+    }
+
+    private static ByteBuffer encrypt(PayloadCipher cipher, byte[] plain) throws NetworkDiscoveryException {
+        ByteBuffer output = ByteBuffer.allocate(plain.length + cipher.getMaxOverhead());
+        cipher.encrypt(ByteBuffer.wrap(plain), output);
+        output.flip();
+        return output;
+    }
+
+    private static byte[] decrypt(PayloadCipher cipher, ByteBuffer encrypted) throws NetworkDiscoveryException {
+        cipher.decrypt(encrypted);
+        return drain(encrypted);
+    }
+
+    private static void assertRejected(PayloadCipher cipher, ByteBuffer encrypted){
+        try {
+            cipher.decrypt(encrypted);
+            fail("tampered payload was accepted by " + cipher.getMode());
+        } catch(NetworkDiscoveryException expected){
+        }
+    }
+
+    private static byte[] drain(ByteBuffer buffer){
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.codec;
+
+import org.junit.Test;
+import org.slj.network.discovery.NetworkDiscoveryException;
+import org.slj.network.discovery.model.BroadcastMessage;
+import org.slj.network.discovery.model.NetworkNode;
+import org.slj.network.discovery.model.NodeAttributes;
+import org.slj.network.discovery.model.NodeDigest;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MessageCodecTest {
+
+    @Test
+    public void testBinaryWritesVersion1WithoutDiscoveryPortOrAttributes() throws NetworkDiscoveryException {
+        BroadcastMessage message = message(node("a", 0, NodeAttributes.EMPTY), node("b", 0, NodeAttributes.EMPTY));
+        ByteBuffer buffer = encode(new BinaryMessageCodec(), message);
+        assertEquals(BinaryMessageCodec.VERSION_1, buffer.get(0));
+        assertMessageEquals(message, new BinaryMessageCodec().decode(buffer));
+    }
+
+    @Test
+    public void testBinaryWritesVersion2WithDiscoveryPort() throws NetworkDiscoveryException {
+        BroadcastMessage message = message(node("a", 0, NodeAttributes.EMPTY), node("b", 2553, NodeAttributes.EMPTY));
+        ByteBuffer buffer = encode(new BinaryMessageCodec(), message);
+        assertEquals(BinaryMessageCodec.VERSION_2, buffer.get(0));
+        assertMessageEquals(message, new BinaryMessageCodec().decode(buffer));
+    }
+
+    @Test
+    public void testBinaryWritesVersion3WithAttributes() throws NetworkDiscoveryException {
+        NodeAttributes attributes = NodeAttributes.builder().withString("zone", "eu-1").
+                withInt("weight", 5).withTag("canary").build();
+        BroadcastMessage message = message(node("a", 2552, attributes), node("b", 0, NodeAttributes.EMPTY),
+                node("c", 0, attributes));
+        ByteBuffer buffer = encode(new BinaryMessageCodec(), message);
+        assertEquals(BinaryMessageCodec.VERSION, buffer.get(0));
+        assertMessageEquals(message, new BinaryMessageCodec().decode(buffer));
+    }
+
+    @Test
+    public void testSerializationRoundTrip() throws NetworkDiscoveryException {
+        NodeAttributes attributes = NodeAttributes.builder().withString("zone", "eu-1").build();
+        BroadcastMessage message = message(node("a", 2552, attributes), node("b", 0, NodeAttributes.EMPTY));
+        ByteBuffer buffer = encode(new SerializationMessageCodec(), message);
+        assertTrue(SerializationMessageCodec.isSerialized(buffer));
+        assertMessageEquals(message, new SerializationMessageCodec().decode(buffer));
+    }
+
+    @Test
+    public void testBinaryIsNotMistakenForSerialization() throws NetworkDiscoveryException {
+        ByteBuffer buffer = encode(new BinaryMessageCodec(), message(node("a", 0, NodeAttributes.EMPTY)));
+        assertFalse(SerializationMessageCodec.isSerialized(buffer));
+    }
+
+    @Test
+    public void testMessageWithoutPeers() throws NetworkDiscoveryException {
+        BroadcastMessage message = message(node("a", 0, NodeAttributes.EMPTY));
+        message.setPeers(null);
+        BroadcastMessage decoded = new BinaryMessageCodec().decode(encode(new BinaryMessageCodec(), message));
+        assertNull(decoded.getPeers());
+        assertNodeEquals(message.getNode(), decoded.getNode());
+    }
+
+    @Test
+    public void testDigestsRoundTrip() throws NetworkDiscoveryException {
+        BroadcastMessage message = message(node("a", 0, NodeAttributes.EMPTY));
+        NetworkNode behind = node("b", 0, NodeAttributes.EMPTY);
+        behind.setEventTime(message.getNode().getEventTime() - 4000);
+        NetworkNode ahead = node("c", 0, NodeAttributes.EMPTY);
+        ahead.setEventTime(message.getNode().getEventTime() + 250);
+        message.setDigests(Arrays.asList(NodeDigest.of(behind), NodeDigest.of(ahead)));
+        message.setRefreshRequested(true);
+        for (MessageCodec codec : new MessageCodec[]{new BinaryMessageCodec(), new SerializationMessageCodec()}){
+            BroadcastMessage decoded = codec.decode(encode(codec, message));
+            assertTrue(decoded.isRefreshRequested());
+            assertEquals(2, decoded.getDigests().size());
+            for (int i = 0; i < 2; i++){
+                NodeDigest digest = message.getDigests().get(i);
+                assertEquals(digest.getName(), decoded.getDigests().get(i).getName());
+                assertEquals(digest.getEventTime(), decoded.getDigests().get(i).getEventTime());
+                assertEquals(digest.getVersion(), decoded.getDigests().get(i).getVersion());
+            }
+        }
+    }
+
+    @Test
+    public void testMessageWithoutDigestsHasNoTrailer() throws NetworkDiscoveryException {
+        BroadcastMessage message = message(node("a", 0, NodeAttributes.EMPTY));
+        BroadcastMessage decoded = new BinaryMessageCodec().decode(encode(new BinaryMessageCodec(), message));
+        assertNull(decoded.getDigests());
+        assertFalse(decoded.isRefreshRequested());
+    }
+
+    @Test(expected = NetworkDiscoveryException.class)
+    public void testBinaryRejectsDigestCountBeyondBuffer() throws NetworkDiscoveryException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        new BinaryMessageCodec().encode(message(node("a", 0, NodeAttributes.EMPTY)), buffer);
+        buffer.put((byte) 0);
+        buffer.put(new byte[]{(byte) 0xC0, (byte) 0x84, 0x3D});
+        buffer.flip();
+        new BinaryMessageCodec().decode(buffer);
+    }
+
+    @Test(expected = NetworkDiscoveryException.class)
+    public void testBinaryRejectsUnknownVersion() throws NetworkDiscoveryException {
+        ByteBuffer buffer = encode(new BinaryMessageCodec(), message(node("a", 0, NodeAttributes.EMPTY)));
+        buffer.put(0, (byte) 99);
+        new BinaryMessageCodec().decode(buffer);
+    }
+
+    @Test(expected = NetworkDiscoveryException.class)
+    public void testBinaryRejectsPeerCountBeyondBuffer() throws NetworkDiscoveryException {
+        BroadcastMessage message = message(node("a", 0, NodeAttributes.EMPTY));
+        message.setPeers(null);
+        ByteBuffer buffer = encode(new BinaryMessageCodec(), message);
+        //-- the peer count of 0 is the last byte, claim a million peers in a handful of bytes
+        ByteBuffer hostile = ByteBuffer.allocate(buffer.limit() + 8);
+        hostile.put(buffer.array(), 0, buffer.limit() - 1);
+        hostile.put(new byte[]{(byte) 0xC0, (byte) 0x84, 0x3D});
+        hostile.flip();
+        new BinaryMessageCodec().decode(hostile);
+    }
+
+    @Test(expected = NetworkDiscoveryException.class)
+    public void testBinaryRejectsTruncatedMessage() throws NetworkDiscoveryException {
+        ByteBuffer buffer = encode(new BinaryMessageCodec(), message(node("a", 0, NodeAttributes.EMPTY)));
+        buffer.limit(buffer.limit() / 2);
+        new BinaryMessageCodec().decode(buffer);
+    }
+
+    static BroadcastMessage message(NetworkNode node, NetworkNode... peers){
+        BroadcastMessage message = new BroadcastMessage(node);
+        message.setStatus(BroadcastMessage.PING);
+        message.setPeers(Arrays.asList(peers));
+        return message;
+    }
+
+    static NetworkNode node(String name, int discoveryPort, NodeAttributes attributes){
+        NetworkNode node = new NetworkNode();
+        node.setName(name);
+        node.setGroup("group");
+        node.setStatus(NetworkNode.HEALTHY);
+        node.setAddress("10.0.0.1");
+        node.setPort(8080);
+        node.setEventTime(1600000000000L);
+        node.setDiscoveryPort(discoveryPort);
+        node.setAttributes(attributes);
+        return node;
+    }
+
+    static ByteBuffer encode(MessageCodec codec, BroadcastMessage message) throws NetworkDiscoveryException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        codec.encode(message, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    static void assertMessageEquals(BroadcastMessage expected, BroadcastMessage actual){
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertNodeEquals(expected.getNode(), actual.getNode());
+        List<NetworkNode> peers = actual.getPeers();
+        assertEquals(expected.getPeers().size(), peers.size());
+        for (int i = 0; i < peers.size(); i++){
+            assertNodeEquals(expected.getPeers().get(i), peers.get(i));
+        }
+    }
+
+    static void assertNodeEquals(NetworkNode expected, NetworkNode actual){
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getGroup(), actual.getGroup());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getAddress(), actual.getAddress());
+        assertEquals(expected.getPort(), actual.getPort());
+        assertEquals(expected.getEventTime(), actual.getEventTime());
+        assertEquals(expected.getDiscoveryPort(), actual.getDiscoveryPort());
+        assertEquals(expected.getAttributes(), actual.getAttributes());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NetworkGraphDigestTest {
+
+    @Test
+    public void testDigestOfSameVersionAdvancesEventTimeInPlace() {
+        for (boolean compact : new boolean[]{false, true}){
+            NetworkGraph graph = graph(compact);
+            long version = graph.getSnapshot().getVersion();
+            assertFalse(graph.receiveDigests(digest("a", NetworkNode.HEALTHY, 20)));
+            assertEquals(20, graph.getNode("a").getEventTime());
+            assertEquals(version, graph.getSnapshot().getVersion());
+        }
+    }
+
+    @Test
+    public void testNewerDigestOfOtherVersionIsStale() {
+        for (boolean compact : new boolean[]{false, true}){
+            NetworkGraph graph = graph(compact);
+            assertTrue(graph.receiveDigests(digest("a", NetworkNode.UNHEALTHY, 20)));
+            assertEquals(10, graph.getNode("a").getEventTime());
+            assertEquals(NetworkNode.HEALTHY, graph.getNode("a").getStatus());
+        }
+    }
+
+    @Test
+    public void testOlderDigestIsIgnored() {
+        NetworkGraph graph = graph(false);
+        assertFalse(graph.receiveDigests(digest("a", NetworkNode.UNHEALTHY, 5)));
+        assertEquals(10, graph.getNode("a").getEventTime());
+    }
+
+    @Test
+    public void testDigestOfUnknownNodeIsStale() {
+        NetworkGraph graph = graph(false);
+        assertTrue(graph.receiveDigests(digest("b", NetworkNode.HEALTHY, 5)));
+        assertNull(graph.getNode("b"));
+    }
+
+    @Test
+    public void testDigestOfLocalNodeIsIgnored() {
+        assertFalse(graph(false).receiveDigests(digest("self", NetworkNode.HEALTHY, 5)));
+    }
+
+    @Test
+    public void testDigestOfRemovedNodeIsStaleOnlyWhenNewer() {
+        NetworkGraph graph = graph(false);
+        graph.receiveMessage(message(node("a", NetworkNode.HEALTHY, 40), BroadcastMessage.DEATH), false);
+        assertFalse(graph.receiveDigests(digest("a", NetworkNode.HEALTHY, 35)));
+        assertTrue(graph.receiveDigests(digest("a", NetworkNode.HEALTHY, 45)));
+    }
+
+    private static NetworkGraph graph(boolean compact){
+        NetworkGraph graph = new NetworkGraph("self", compact);
+        graph.receiveMessage(message(node("a", NetworkNode.HEALTHY, 10), BroadcastMessage.PING), false);
+        return graph;
+    }
+
+    private static List<NodeDigest> digest(String name, int status, long eventTime){
+        return Collections.singletonList(NodeDigest.of(node(name, status, eventTime)));
+    }
+
+    private static BroadcastMessage message(NetworkNode node, byte status){
+        BroadcastMessage message = new BroadcastMessage(node);
+        message.setStatus(status);
+        return message;
+    }
+
+    private static NetworkNode node(String name, int status, long eventTime){
+        NetworkNode node = new NetworkNode();
+        node.setName(name);
+        node.setGroup("group");
+        node.setStatus(status);
+        node.setAddress("10.0.0.1");
+        node.setPort(8080);
+        node.setEventTime(eventTime);
+        return node;
+    }
+}
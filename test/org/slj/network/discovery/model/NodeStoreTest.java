@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.*;
+
+public class NodeStoreTest {
+
+    @Test
+    public void testViewReadsThroughHeartbeat() {
+        NodeStore store = new NodeStore();
+        NetworkNode view = store.put(node("a", 100));
+        assertTrue(store.heartbeat(view, node("a", 200)));
+        assertEquals(200, view.getEventTime());
+        assertTrue(store.advance(view, 300));
+        assertEquals(300, view.getEventTime());
+        //-- event time never moves backwards
+        assertTrue(store.advance(view, 250));
+        assertEquals(300, view.getEventTime());
+    }
+
+    @Test
+    public void testHeartbeatCarryingStateIsRejected() {
+        NodeStore store = new NodeStore();
+        NetworkNode view = store.put(node("a", 100));
+        NetworkNode moved = node("a", 200);
+        moved.setPort(9090);
+        assertFalse(store.heartbeat(view, moved));
+        assertEquals(100, view.getEventTime());
+        assertFalse(store.heartbeat(node("a", 100), node("a", 200)));
+    }
+
+    @Test
+    public void testStaleViewSurvivesIdReuse() {
+        NodeStore store = new NodeStore();
+        NetworkNode earlier = store.put(node("a", 100));
+        NetworkNode view = store.put(node("a", 150));
+        assertTrue(store.heartbeat(view, node("a", 200)));
+        store.remove(view);
+
+        //-- released ids are reused before new ones are issued, so "b" takes the id released by "a"
+        NetworkNode reused = store.put(node("b", 900));
+
+        assertEquals("a", view.getName());
+        assertEquals(200, view.getEventTime());
+        assertEquals("a", earlier.getName());
+        assertNotEquals(900, earlier.getEventTime());
+        assertEquals(900, reused.getEventTime());
+
+        //-- the stale views must not write through to the node now holding the id
+        assertFalse(store.heartbeat(view, node("a", 1000)));
+        assertFalse(store.advance(earlier, 1000));
+        assertEquals(900, reused.getEventTime());
+        assertTrue(store.advance(reused, 950));
+        assertEquals(950, reused.getEventTime());
+        assertEquals(200, view.getEventTime());
+    }
+
+    @Test
+    public void testStaleViewSurvivesIdReuseAcrossPages() {
+        NodeStore store = new NodeStore();
+        NetworkNode[] views = new NetworkNode[NodeStore.PAGE_SIZE + 10];
+        for (int i = 0; i < views.length; i++){
+            views[i] = store.put(node("n" + i, i));
+        }
+        NetworkNode last = views[views.length - 1];
+        store.remove(last);
+        //-- the only released id sits on the second page
+        NetworkNode reused = store.put(node("other", 5000));
+        assertEquals(views.length - 1, last.getEventTime());
+        assertEquals("n" + (views.length - 1), last.getName());
+        assertEquals(5000, reused.getEventTime());
+    }
+
+    @Test
+    public void testSerializedViewIsPlainNode() throws Exception {
+        NodeStore store = new NodeStore();
+        NetworkNode view = store.put(node("a", 100));
+        store.advance(view, 400);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(view);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            NetworkNode copy = (NetworkNode) in.readObject();
+            assertEquals(NetworkNode.class, copy.getClass());
+            assertEquals(400, copy.getEventTime());
+            assertEquals("a", copy.getName());
+        }
+    }
+
+    private static NetworkNode node(String name, long eventTime){
+        NetworkNode node = new NetworkNode();
+        node.setName(name);
+        node.setGroup("group");
+        node.setStatus(NetworkNode.HEALTHY);
+        node.setAddress("10.0.0.1");
+        node.setPort(8080);
+        node.setDiscoveryPort(8081);
+        node.setAttributes(NodeAttributes.builder().withString("zone", "a").build());
+        node.setEventTime(eventTime);
+        return node;
+    }
+}
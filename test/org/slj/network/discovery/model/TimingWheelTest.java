@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.model;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+
+    //-- a wheel of 4 slots and 3 levels spans 64 ticks, so these deadlines land on every level and beyond the span
+    private static final long[] DEADLINES = {0, 1, 3, 4, 5, 15, 16, 17, 47, 63, 64, 65, 130, 200, 1000};
+
+    @Test
+    public void testExpiresAtDeadlineAcrossLevels() {
+        TimingWheel wheel = new TimingWheel(1, 4, 3, 0);
+        Map<TimingWheel.Timeout, Long> expiries = scheduleAll(wheel, 0, DEADLINES);
+        for (long now = 0; now <= 1100; now++){
+            advance(wheel, now, expiries);
+        }
+        assertEquals(0, wheel.size());
+        for (Map.Entry<TimingWheel.Timeout, Long> entry : expiries.entrySet()){
+            assertEquals("deadline " + entry.getKey().deadline, entry.getKey().deadline, (long) entry.getValue());
+        }
+    }
+
+    @Test
+    public void testExpiresAtDeadlineWhenScheduledMidRotation() {
+        //-- schedule once the wheel has turned, so cascades happen at offsets not aligned with the deadlines
+        TimingWheel wheel = new TimingWheel(1, 4, 3, 0);
+        Map<TimingWheel.Timeout, Long> expiries = new HashMap<>();
+        for (long now = 0; now < 37; now++){
+            advance(wheel, now, expiries);
+        }
+        expiries = scheduleAll(wheel, 37, DEADLINES);
+        for (long now = 37; now <= 1200; now++){
+            advance(wheel, now, expiries);
+        }
+        assertEquals(0, wheel.size());
+        for (Map.Entry<TimingWheel.Timeout, Long> entry : expiries.entrySet()){
+            assertEquals("deadline " + entry.getKey().deadline, entry.getKey().deadline, (long) entry.getValue());
+        }
+    }
+
+    @Test
+    public void testExpiresAllDueOnSingleAdvance() {
+        TimingWheel wheel = new TimingWheel(1, 4, 3, 0);
+        Map<TimingWheel.Timeout, Long> expiries = scheduleAll(wheel, 0, DEADLINES);
+        advance(wheel, 100, expiries);
+        for (Map.Entry<TimingWheel.Timeout, Long> entry : expiries.entrySet()){
+            if(entry.getKey().deadline <= 100){
+                assertEquals(Long.valueOf(100), entry.getValue());
+            } else {
+                assertNull("expired early " + entry.getKey().deadline, entry.getValue());
+                assertTrue(entry.getKey().scheduled);
+            }
+        }
+        assertEquals(3, wheel.size());
+    }
+
+    @Test
+    public void testExpiresWithinDeadlineTick() {
+        TimingWheel wheel = new TimingWheel(10, 4, 3, 5);
+        Map<TimingWheel.Timeout, Long> expiries = scheduleAll(wheel, 5, 0, 24, 25, 170, 636, 4995);
+        for (long now = 5; now <= 6000; now++){
+            advance(wheel, now, expiries);
+        }
+        for (Map.Entry<TimingWheel.Timeout, Long> entry : expiries.entrySet()){
+            long deadline = entry.getKey().deadline;
+            //-- due once the wheel reaches the tick holding the deadline, but never before the wheel started
+            assertEquals("deadline " + deadline, Math.max(deadline / 10 * 10, 5), (long) entry.getValue());
+        }
+    }
+
+    @Test
+    public void testPastDeadlineExpiresOnNextAdvance() {
+        TimingWheel wheel = new TimingWheel(1, 4, 3, 0);
+        Map<TimingWheel.Timeout, Long> expiries = new HashMap<>();
+        advance(wheel, 50, expiries);
+        expiries = scheduleAll(wheel, 50, -40);
+        advance(wheel, 51, expiries);
+        assertEquals(Long.valueOf(51), expiries.values().iterator().next());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRejectsScheduledTwice() {
+        TimingWheel wheel = new TimingWheel(1, 4, 3, 0);
+        TimingWheel.Timeout timeout = new TimingWheel.Timeout();
+        timeout.deadline = 10;
+        wheel.schedule(timeout);
+        wheel.schedule(timeout);
+    }
+
+    private static Map<TimingWheel.Timeout, Long> scheduleAll(TimingWheel wheel, long now, long... deadlines){
+        Map<TimingWheel.Timeout, Long> expiries = new HashMap<>();
+        for (long deadline : deadlines){
+            TimingWheel.Timeout timeout = new TimingWheel.Timeout();
+            timeout.deadline = now + deadline;
+            wheel.schedule(timeout);
+            expiries.put(timeout, null);
+        }
+        assertEquals(deadlines.length, wheel.size());
+        return expiries;
+    }
+
+    private static void advance(TimingWheel wheel, long now, Map<TimingWheel.Timeout, Long> expiries){
+        wheel.advance(now, (timeout, time) -> {
+            assertTrue("unknown timeout", expiries.containsKey(timeout));
+            assertNull("expired twice", expiries.put(timeout, time));
+            assertFalse(timeout.scheduled);
+        });
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.simulation;
+
+import org.junit.After;
+import org.junit.Test;
+import org.slj.network.discovery.NetworkDiscoveryException;
+import org.slj.network.discovery.TransportMode;
+import org.slj.network.discovery.model.GraphSnapshot;
+import org.slj.network.discovery.model.NetworkDiscoveryOptions;
+import org.slj.network.discovery.model.NetworkNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SimulationTest {
+
+    private static final int NODES = 6;
+    private static final long TIMEOUT = 180000;
+
+    private Simulation simulation;
+
+    @After
+    public void stop() {
+        if(simulation != null) simulation.stopAll();
+    }
+
+    @Test
+    public void testMulticastConvergesAndHealsPartition() throws NetworkDiscoveryException {
+        simulation = start(TransportMode.MULTICAST, 7);
+        assertTrue("did not converge", simulation.runUntilConverged(TIMEOUT) >= 0);
+
+        List<String> side = new ArrayList<>();
+        for (String nodeName : simulation.getNodeNames()){
+            if(side.size() < NODES / 2) side.add(nodeName);
+        }
+        simulation.partition(side);
+        //-- each side suspects then evicts the other
+        assertTrue("partition was not detected", simulation.runUntil(() -> sees(side.get(0), NODES / 2), TIMEOUT) >= 0);
+        assertFalse(simulation.isConverged());
+        assertTrue(simulation.getNetwork().getPacketsPartitioned() > 0);
+
+        simulation.heal();
+        assertTrue("did not converge once healed", simulation.runUntilConverged(TIMEOUT) >= 0);
+    }
+
+    @Test
+    public void testGossipConvergesAndEvictsFailedNode() throws NetworkDiscoveryException {
+        simulation = start(TransportMode.GOSSIP, 7);
+        assertTrue("did not converge", simulation.runUntilConverged(TIMEOUT) >= 0);
+
+        String failed = "n" + (NODES - 1);
+        simulation.kill(failed);
+        assertTrue("failed node was not evicted", simulation.runUntilConverged(TIMEOUT) >= 0);
+        for (String nodeName : simulation.getNodeNames()){
+            assertNull(simulation.getAgent(nodeName).getCurrentNetwork().getNode(failed));
+        }
+    }
+
+    @Test
+    public void testGracefulStopConverges() throws NetworkDiscoveryException {
+        simulation = start(TransportMode.MULTICAST, 11);
+        assertTrue("did not converge", simulation.runUntilConverged(TIMEOUT) >= 0);
+        simulation.stop("n0");
+        assertTrue("did not converge once stopped", simulation.runUntilConverged(TIMEOUT) >= 0);
+        assertEquals(NODES - 1, simulation.getNodeNames().size());
+    }
+
+    @Test
+    public void testRunIsDeterministicForSeed() throws NetworkDiscoveryException {
+        simulation = start(TransportMode.GOSSIP, 3);
+        long first = simulation.runUntilConverged(TIMEOUT);
+        long firstSent = simulation.getNetwork().getPacketsSent();
+        long firstBytes = simulation.getNetwork().getBytesSent();
+        simulation.stopAll();
+
+        simulation = start(TransportMode.GOSSIP, 3);
+        assertEquals(first, simulation.runUntilConverged(TIMEOUT));
+        assertEquals(firstSent, simulation.getNetwork().getPacketsSent());
+        assertEquals(firstBytes, simulation.getNetwork().getBytesSent());
+    }
+
+    private boolean sees(String nodeName, int size){
+        GraphSnapshot snapshot = simulation.getAgent(nodeName).getCurrentNetwork().getSnapshot();
+        if(snapshot.size() != size) return false;
+        for (String groupName : snapshot.getGroupNames()){
+            for (NetworkNode node : snapshot.getNodes(groupName, true)){
+                if(node.getStatus() == NetworkNode.SUSPECT) return false;
+            }
+        }
+        return true;
+    }
+
+    private static Simulation start(TransportMode mode, long seed) throws NetworkDiscoveryException {
+        SimulatedNetwork network = new SimulatedNetwork(seed).
+                withLossProbability(0.05).withDuplicationProbability(0.01).withLatencyMillis(1, 20);
+        Simulation simulation = new Simulation(network);
+        for (int i = 0; i < NODES; i++){
+            simulation.start("tg", "group" + (i % 2), "n" + i, options(mode));
+        }
+        return simulation;
+    }
+
+    private static NetworkDiscoveryOptions options(TransportMode mode){
+        NetworkDiscoveryOptions options = new NetworkDiscoveryOptions().
+                withMetricsMBeanEnabled(false).
+                withEncryptionSecret("secret").
+                withTransportMode(mode).
+                withNodeMarkedHealthyAfgterBirth(true);
+        if(mode == TransportMode.GOSSIP) options.withSeeds("10.0.0.1:" + SimulatedNetwork.DEFAULT_PORT);
+        return options;
+    }
+}
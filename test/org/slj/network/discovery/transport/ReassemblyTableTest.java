@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ *  Find me on GitHub:
+ *  https://github.com/simon622
+ *
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.slj.network.discovery.transport;
+
+import org.junit.Test;
+import org.slj.network.discovery.NetworkDiscoveryException;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class ReassemblyTableTest {
+
+    private static final InetSocketAddress SOURCE = new InetSocketAddress("10.0.0.1", 2552);
+    private static final InetSocketAddress OTHER = new InetSocketAddress("10.0.0.2", 2552);
+    private static final int PAYLOAD = Frame.MIN_FRAGMENT_PAYLOAD;
+
+    @Test
+    public void testReassemblesFragmentsOutOfOrder() throws NetworkDiscoveryException {
+        ReassemblyTable table = new ReassemblyTable(4, 4096, 1000);
+        byte[] message = message(PAYLOAD * 2 + 10);
+        assertNull(table.offer(SOURCE, fragment(1, 2, 3, message), 0));
+        assertNull(table.offer(SOURCE, fragment(1, 0, 3, message), 0));
+        ByteBuffer reassembled = table.offer(SOURCE, fragment(1, 1, 3, message), 0);
+        assertArrayEquals(message, drain(reassembled));
+        assertEquals(0, table.size());
+        assertEquals(1, table.getReassembledCount());
+    }
+
+    @Test
+    public void testDuplicateFragmentIsIgnored() throws NetworkDiscoveryException {
+        ReassemblyTable table = new ReassemblyTable(4, 4096, 1000);
+        byte[] message = message(PAYLOAD + 10);
+        assertNull(table.offer(SOURCE, fragment(1, 0, 2, message), 0));
+        assertNull(table.offer(SOURCE, fragment(1, 0, 2, message), 0));
+        assertArrayEquals(message, drain(table.offer(SOURCE, fragment(1, 1, 2, message), 0)));
+        assertEquals(1, table.getReassembledCount());
+    }
+
+    @Test
+    public void testIncompleteMessageExpires() throws NetworkDiscoveryException {
+        ReassemblyTable table = new ReassemblyTable(4, 4096, 1000);
+        byte[] message = message(PAYLOAD + 10);
+        assertNull(table.offer(SOURCE, fragment(1, 0, 2, message), 0));
+        assertEquals(1, table.size());
+        //-- the lost fragment never arrives, the entry is discarded on the next offer after the timeout
+        assertNull(table.offer(SOURCE, fragment(2, 0, 2, message), 1000));
+        assertEquals(1, table.size());
+        assertEquals(1, table.getDroppedCount());
+        //-- the late fragment of the expired message starts a new entry rather than completing it
+        assertNull(table.offer(SOURCE, fragment(1, 1, 2, message), 1000));
+        assertEquals(0, table.getReassembledCount());
+    }
+
+    @Test
+    public void testCapacityDiscardsEldest() throws NetworkDiscoveryException {
+        ReassemblyTable table = new ReassemblyTable(2, 4096, 1000);
+        byte[] message = message(PAYLOAD + 10);
+        for (int id = 1; id <= 3; id++){
+            assertNull(table.offer(SOURCE, fragment(id, 0, 2, message), 0));
+        }
+        assertEquals(2, table.size());
+        assertEquals(1, table.getDroppedCount());
+        assertNull(table.offer(SOURCE, fragment(1, 1, 2, message), 0));
+        assertArrayEquals(message, drain(table.offer(SOURCE, fragment(3, 1, 2, message), 0)));
+    }
+
+    @Test
+    public void testSourcesAreKeptApart() throws NetworkDiscoveryException {
+        ReassemblyTable table = new ReassemblyTable(4, 4096, 1000);
+        byte[] message = message(PAYLOAD + 10);
+        assertNull(table.offer(SOURCE, fragment(1, 0, 2, message), 0));
+        assertNull(table.offer(OTHER, fragment(1, 1, 2, message), 0));
+        assertEquals(2, table.size());
+    }
+
+    @Test(expected = NetworkDiscoveryException.class)
+    public void testRejectsZeroCount() throws NetworkDiscoveryException {
+        new ReassemblyTable(4, 4096, 1000).offer(SOURCE, fragment(1, 0, 0, message(10)), 0);
+    }
+
+    @Test(expected = NetworkDiscoveryException.class)
+    public void testRejectsIndexBeyondCount() throws NetworkDiscoveryException {
+        new ReassemblyTable(4, 4096, 1000).offer(SOURCE, fragment(1, 2, 2, message(PAYLOAD * 3)), 0);
+    }
+
+    @Test
+    public void testRejectsHostileCountBeforeAllocating() {
+        ReassemblyTable table = new ReassemblyTable(4, 4096, 1000);
+        try {
+            table.offer(SOURCE, fragment(1, 0xFFFE, 0xFFFF, message(PAYLOAD)), 0);
+            fail("a count beyond what the maximum message size allows was accepted");
+        } catch(NetworkDiscoveryException expected){
+        }
+        assertEquals(0, table.size());
+    }
+
+    @Test(expected = NetworkDiscoveryException.class)
+    public void testRejectsUndersizedFragment() throws NetworkDiscoveryException {
+        new ReassemblyTable(4, 4096, 1000).offer(SOURCE, fragment(1, 0, 2, message(20)), 0);
+    }
+
+    @Test
+    public void testRejectsChangedCount() throws NetworkDiscoveryException {
+        ReassemblyTable table = new ReassemblyTable(4, 4096, 1000);
+        byte[] message = message(PAYLOAD * 3);
+        assertNull(table.offer(SOURCE, fragment(1, 0, 2, message), 0));
+        try {
+            table.offer(SOURCE, fragment(1, 1, 3, message), 0);
+            fail("a fragment with a changed count was accepted");
+        } catch(NetworkDiscoveryException expected){
+        }
+        assertEquals(0, table.size());
+        assertEquals(1, table.getDroppedCount());
+    }
+
+    @Test
+    public void testRejectsMessageBeyondMaximumSize() throws NetworkDiscoveryException {
+        ReassemblyTable table = new ReassemblyTable(4, PAYLOAD + 100, 1000);
+        byte[] message = message(PAYLOAD + 200);
+        assertNull(table.offer(SOURCE, fragment(1, 0, 2, message), 0));
+        try {
+            table.offer(SOURCE, fragment(1, 1, 2, message), 0);
+            fail("a message beyond the maximum size was reassembled");
+        } catch(NetworkDiscoveryException expected){
+        }
+        assertEquals(0, table.size());
+    }
+
+    @Test(expected = NetworkDiscoveryException.class)
+    public void testRejectsTruncatedHeader() throws NetworkDiscoveryException {
+        new ReassemblyTable(4, 4096, 1000).offer(SOURCE, ByteBuffer.wrap(new byte[]{0, 0, 0, 1, 0}), 0);
+    }
+
+    private static byte[] message(int length){
+        byte[] message = new byte[length];
+        for (int i = 0; i < length; i++){
+            message[i] = (byte) i;
+        }
+        return message;
+    }
+
+    /**
+     * @return - the fragment header and the slice of the message the fragment carries, fragments other than the
+     * last each carry the minimum fragment payload
+     */
+    private static ByteBuffer fragment(int messageId, int index, int count, byte[] message){
+        int from = Math.min(index * PAYLOAD, message.length);
+        int to = index >= count - 1 ? message.length : Math.min(from + PAYLOAD, message.length);
+        ByteBuffer buffer = ByteBuffer.allocate(Frame.FRAGMENT_HEADER_LENGTH + to - from);
+        buffer.putInt(messageId);
+        buffer.putShort((short) index);
+        buffer.putShort((short) count);
+        buffer.put(message, from, to - from);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] drain(ByteBuffer buffer){
+        assertNotNull(buffer);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}